@@ -1,5 +1,9 @@
 package gr.auth.ee.mug.cfg.grammar;
 
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
 import java.util.ArrayList;
 
 /**
@@ -289,10 +293,49 @@ public class Alphabet {
 		descriptions.add(description);
 	}
 
+	/**
+	 * Add a symbol with a known id, as restored from a file. The id is not
+	 * checked; the caller is responsible for restoring a consistent alphabet.
+	 * 
+	 * @param id
+	 *            The symbol's id
+	 * @param symbol
+	 *            The symbol
+	 * @param description
+	 *            A description of the symbol
+	 */
+	void restoreSymbol(int id, String symbol, String description) {
+		if (isTerminal(id) || isEmptyStringSymbol(id)) {
+			noofTerminals++;
+		} else {
+			noofNonTerminals++;
+		}
+		addSymbol(id, symbol, description);
+	}
+
+	/**
+	 * Write the symbol table in the binary grammar format: the number of
+	 * symbols followed by, for each symbol, its id, its string representation
+	 * and its description (UTF-8, prefixed by the length in bytes; a length of
+	 * -1 denotes a {@code null} description).
+	 * 
+	 * @param out
+	 *            The output to write into
+	 * @throws IOException
+	 */
+	void writeBinary(DataOutput out) throws IOException {
+		out.writeInt(ids.size());
+		for (int i = 0; i < ids.size(); i++) {
+			out.writeInt(ids.get(i));
+			writeBinaryString(out, symbols.get(i));
+			writeBinaryString(out, descriptions.get(i));
+		}
+	}
+
 	/**
 	 * Create a new {@code Alphabet} from two {@code String}s containing
-	 * information for non-terminals and terminal. This function is only used by
-	 * {@code ContextFreeGrammar.newFromFile}.
+	 * information for non-terminals and terminal, in the format of
+	 * {@code ContextFreeGrammar.saveToFile}.
 	 * 
 	 * @param txtNonTerminals
 	 * @param txtTerminals
@@ -332,6 +375,104 @@ public class Alphabet {
 		return al;
 	}
 
+	/**
+	 * Create a new {@code Alphabet} from a symbol table written by
+	 * {@code writeBinary}. This function is only used by
+	 * {@code ContextFreeGrammar.newFromBinaryFile}.
+	 * 
+	 * @param buffer
+	 *            A buffer positioned at the start of the symbol table; on
+	 *            return it is positioned right after it
+	 * @return The alphabet
+	 */
+	static Alphabet readBinary(ByteBuffer buffer) {
+		Alphabet al = Alphabet.newAlphabetEmpty();
+
+		int noofSymbols = buffer.getInt();
+		al.ids.ensureCapacity(noofSymbols);
+		al.symbols.ensureCapacity(noofSymbols);
+		al.descriptions.ensureCapacity(noofSymbols);
+
+		for (int i = 0; i < noofSymbols; i++) {
+			int id = buffer.getInt();
+			String symbol = readBinaryString(buffer);
+			String description = readBinaryString(buffer);
+			al.restoreSymbol(id, symbol, description);
+		}
+
+		return al;
+	}
+
+	/**
+	 * Create a new {@code Alphabet} that contains no symbols at all (not even
+	 * the start symbol and the empty string symbol), to be populated with
+	 * {@code restoreSymbol}.
+	 * 
+	 * @return The alphabet
+	 */
+	static Alphabet newAlphabetEmpty() {
+		Alphabet al = Alphabet.newAlphabetBare();
+		al.noofNonTerminals = 0;
+		al.noofTerminals = 0;
+		return al;
+	}
+
+	/**
+	 * Create a new {@code Alphabet} with the same terminals and only some of
+	 * the non-terminals, renumbered. Each symbol is looked up once, so this
+	 * takes time linear in the size of the alphabet.
+	 * 
+	 * @param nonTerminalIdx
+	 *            The indexes of the non-terminals to keep; the i-th one
+	 *            becomes the i-th non-terminal of the new alphabet
+	 * @return The alphabet
+	 */
+	Alphabet newRestricted(int[] nonTerminalIdx) {
+
+		// Position of every symbol in the lists, by index
+		int[] nonTerminalPos = new int[noofNonTerminals];
+		int[] terminalPos = new int[noofTerminals];
+		for (int i = 0; i < ids.size(); i++) {
+			int id = ids.get(i);
+			if (isTerminal(id) || isEmptyStringSymbol(id)) {
+				terminalPos[id] = i;
+			} else {
+				nonTerminalPos[getIdx(id)] = i;
+			}
+		}
+
+		Alphabet al = Alphabet.newAlphabetEmpty();
+		for (int i = 0; i < nonTerminalIdx.length; i++) {
+			int pos = nonTerminalPos[nonTerminalIdx[i]];
+			al.restoreSymbol(getIdNonTerminal(i), symbols.get(pos), descriptions.get(pos));
+		}
+		for (int i = 0; i < noofTerminals; i++) {
+			int pos = terminalPos[i];
+			al.restoreSymbol(getIdTerminal(i), symbols.get(pos), descriptions.get(pos));
+		}
+		return al;
+	}
+
+	private static String readBinaryString(ByteBuffer buffer) {
+		int len = buffer.getInt();
+		if (len < 0) {
+			return null;
+		}
+		byte[] b = new byte[len];
+		buffer.get(b);
+		return new String(b, utf8);
+	}
+
+	private static void writeBinaryString(DataOutput out, String s) throws IOException {
+		if (s == null) {
+			out.writeInt(-1);
+		} else {
+			byte[] b = s.getBytes(utf8);
+			out.writeInt(b.length);
+			out.write(b);
+		}
+	}
+
 	private static Alphabet newAlphabetBare() {
 		Alphabet al = new Alphabet();
 		al.ids.clear();
@@ -340,6 +481,8 @@ public class Alphabet {
 		return al;
 	}
 
+	private static final Charset utf8 = Charset.forName("UTF-8");
+
 	/**
 	 * The id of the start symbol that is inserted automatically upon each
 	 * object's construction.
@@ -0,0 +1,38 @@
+package gr.auth.ee.mug.cfg.grammar;
+
+/**
+ * The strategies that {@code ContextFreeGrammar.chomskyNormal} can use to
+ * replace long rules (rules with more than two symbols on the right-hand
+ * side) by chains of binary rules. Every strategy introduces new intermediate
+ * non-terminals, each expanded by a single rule of probability 1, so all of
+ * them preserve the probabilities of the grammar; they differ in how many
+ * intermediate non-terminals and rules they create.
+ *
+ * @author Vasileios Papapanagiotou
+ */
+public enum Binarisation {
+
+	/**
+	 * Each long rule {@code A -> B1 B2 ... Bk} gets its own chain
+	 * {@code A -> B1 A_1}, {@code A_1 -> B2 A_2}, ...,
+	 * {@code A_k-2 -> Bk-1 Bk}; nothing is shared between rules.
+	 */
+	RIGHT,
+
+	/**
+	 * Left-factored: {@code A -> [B1..Bk-1] Bk}, {@code [B1..Bj] -> [B1..Bj-1] Bj}
+	 * and {@code [B1 B2] -> B1 B2}, where the intermediate non-terminal
+	 * {@code [B1..Bj]} stands for a right-hand side prefix and is shared by all
+	 * long rules that start with that prefix.
+	 */
+	LEFT_SHARED,
+
+	/**
+	 * Right-factored: {@code A -> B1 [B2..Bk]}, {@code [Bj..Bk] -> Bj [Bj+1..Bk]}
+	 * and {@code [Bk-1 Bk] -> Bk-1 Bk}, where the intermediate non-terminal
+	 * {@code [Bj..Bk]} stands for a right-hand side suffix and is shared by all
+	 * long rules that end with that suffix.
+	 */
+	RIGHT_SHARED
+
+}
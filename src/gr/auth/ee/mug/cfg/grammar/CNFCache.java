@@ -0,0 +1,165 @@
+package gr.auth.ee.mug.cfg.grammar;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * A persistent, on-disk cache of Chomsky normal form conversions.<br>
+ * <br>
+ * Each conversion is stored in the binary grammar format (see
+ * {@code ContextFreeGrammar.saveToBinaryFile}) in a file named after the
+ * fingerprint of the source grammar and the binarisation strategy. The stored
+ * alphabet is the alphabet of the converted grammar, which keeps every symbol
+ * of the source grammar under the same id and appends the symbols created by
+ * the conversion, so it also serves as the mapping between the two
+ * grammars.<br>
+ * <br>
+ * Converting an unchanged grammar a second time, even from a different
+ * process, only loads the stored file. Files are written to a temporary name
+ * first and then renamed, so concurrent processes sharing a directory never
+ * see partially written entries.<br>
+ * <br>
+ * The provenance of a conversion (see {@code CNFProvenance}) is not stored,
+ * so the grammars returned by the cache never have one, whether they were
+ * loaded or converted; {@code CNFTreeMapper} and {@code IncrementalCNF} need
+ * a grammar from {@code ContextFreeGrammar.chomskyNormal} itself.
+ *
+ * @author Vasileios Papapanagiotou
+ */
+public class CNFCache {
+
+	private final File directory;
+	private int noofHits = 0;
+	private int noofMisses = 0;
+
+	/**
+	 * Creates a cache that is stored in {@code directory}.
+	 *
+	 * @param directory
+	 *            The directory that holds the cached conversions; it is created
+	 *            if it does not exist
+	 * @throws IOException
+	 *             If the directory cannot be created
+	 */
+	public CNFCache(String directory) throws IOException {
+		this.directory = new File(directory);
+		if (!this.directory.isDirectory() && !this.directory.mkdirs()) {
+			throw new IOException("Cannot create cache directory '" + directory + "'");
+		}
+	}
+
+	/**
+	 * Equivalent to {@code chomskyNormal(cfg, Binarisation.RIGHT)}.
+	 *
+	 * @param cfg
+	 *            A context-free grammar
+	 * @return The context-free grammar in Chomsky normal-form, without
+	 *         provenance
+	 * @throws IOException
+	 *             If the conversion cannot be stored
+	 */
+	public ContextFreeGrammar chomskyNormal(ContextFreeGrammar cfg) throws IOException {
+		return chomskyNormal(cfg, Binarisation.RIGHT);
+	}
+
+	/**
+	 * Equivalent to {@code ContextFreeGrammar.chomskyNormal(cfg, binarisation)},
+	 * but the result is loaded from the cache if the same grammar has been
+	 * converted with the same strategy before, and stored in the cache
+	 * otherwise. Either way the result has no provenance
+	 * ({@code getProvenance()} returns {@code null}), since the provenance is
+	 * not stored in the cache.
+	 *
+	 * @param cfg
+	 *            A context-free grammar
+	 * @param binarisation
+	 *            The strategy used to replace long rules by binary ones
+	 * @return The context-free grammar in Chomsky normal-form, without
+	 *         provenance
+	 * @throws IOException
+	 *             If the conversion cannot be stored
+	 */
+	public ContextFreeGrammar chomskyNormal(ContextFreeGrammar cfg, Binarisation binarisation) throws IOException {
+
+		File file = getFile(cfg, binarisation);
+
+		if (file.isFile()) {
+			try {
+				ContextFreeGrammar cnf = ContextFreeGrammar.newFromBinaryFile(file.getPath());
+				synchronized (this) {
+					noofHits++;
+				}
+				return cnf;
+			} catch (IOException e) {
+				// Corrupt or outdated entry; convert again and overwrite it
+			}
+		}
+
+		synchronized (this) {
+			noofMisses++;
+		}
+
+		// A loaded entry has no provenance, so neither does a new one
+		ContextFreeGrammar cnf = ContextFreeGrammar.chomskyNormal(cfg, binarisation);
+		cnf.clearProvenance();
+
+		File tmp = File.createTempFile(file.getName(), ".tmp", directory);
+		try {
+			cnf.saveToBinaryFile(tmp.getPath());
+			if (!tmp.renameTo(file)) {
+				// Another process may have stored the same entry meanwhile
+				file.delete();
+				if (!tmp.renameTo(file)) {
+					throw new IOException("Cannot store cache entry '" + file.getPath() + "'");
+				}
+			}
+		} finally {
+			tmp.delete();
+		}
+
+		return cnf;
+	}
+
+	/**
+	 * @param cfg
+	 *            A context-free grammar
+	 * @param binarisation
+	 *            The strategy used to replace long rules by binary ones
+	 * @return If the conversion of {@code cfg} is in the cache
+	 */
+	public boolean contains(ContextFreeGrammar cfg, Binarisation binarisation) {
+		return getFile(cfg, binarisation).isFile();
+	}
+
+	/**
+	 * Removes the conversions of {@code cfg} (with any binarisation) from the
+	 * cache, if present.
+	 *
+	 * @param cfg
+	 *            A context-free grammar
+	 */
+	public void remove(ContextFreeGrammar cfg) {
+		for (Binarisation binarisation : Binarisation.values()) {
+			getFile(cfg, binarisation).delete();
+		}
+	}
+
+	/**
+	 * @return The number of conversions that were loaded from the cache
+	 */
+	public synchronized int getNoofHits() {
+		return noofHits;
+	}
+
+	/**
+	 * @return The number of conversions that had to be computed
+	 */
+	public synchronized int getNoofMisses() {
+		return noofMisses;
+	}
+
+	private File getFile(ContextFreeGrammar cfg, Binarisation binarisation) {
+		return new File(directory, cfg.fingerprint() + "-" + binarisation.name().toLowerCase() + ".cnf");
+	}
+
+}
@@ -0,0 +1,237 @@
+package gr.auth.ee.mug.cfg.grammar;
+
+import java.util.ArrayList;
+
+/**
+ * Records how {@code ContextFreeGrammar.chomskyNormal} derived each rule of a
+ * grammar in Chomsky normal form from the rules of the source grammar. The
+ * conversion goes through two intermediate grammars:
+ * <ol>
+ * <li>The <i>binarised</i> grammar, where long rules have been replaced by
+ * chains of binary rules (step 1). Each of its rules comes from a source rule,
+ * or expands an intermediate non-terminal, or is the rule {@code S -> S'} that
+ * is added when the start symbol has to be copied (see
+ * {@code getStartCopy}).</li>
+ * <li>The <i>unit</i> grammar, where erasing rules have been dropped and
+ * every binary rule with an erasable symbol has given a short rule with that
+ * symbol erased (step 2). Each of its rules comes from a rule of the binarised
+ * grammar, possibly with one symbol erased.</li>
+ * </ol>
+ * Finally, each rule {@code A -> X' Y'} of the converted grammar is the sum of
+ * one or more <i>contributions</i>, each one a binary unit rule
+ * {@code B -> X Y} combined with the short-rule derivations {@code A =>* B},
+ * {@code X =>* X'} and {@code Y =>* Y'} (step 3; {@code A} differs from
+ * {@code B} only when rules are lifted to the start symbol).
+ *
+ * @author Vasileios Papapanagiotou
+ */
+public class CNFProvenance {
+
+	/**
+	 * Origin of the rules of the binarised grammar that expand intermediate
+	 * non-terminals.
+	 */
+	public static final int intermediateOrigin = -1;
+
+	/**
+	 * Origin of the rule {@code S -> S'} of the binarised grammar.
+	 */
+	public static final int startOrigin = -2;
+
+	private ContextFreeGrammar source;
+	private ContextFreeGrammar binarised;
+	private final int[] binarisedOrigins;
+	private final int startCopy;
+	private final int[] erasables;
+	private final double[] erasablesProbabilities;
+	private final ArrayList<Rule> unitRules;
+	private final int[] unitOrigins;
+	private final int[] unitErased;
+	private final int[][] contributions;
+	private final double[][] shares;
+
+	CNFProvenance(ContextFreeGrammar source, ContextFreeGrammar binarised, int[] binarisedOrigins, int startCopy,
+			int[] erasables, double[] erasablesProbabilities, ArrayList<Rule> unitRules, int[] unitOrigins,
+			int[] unitErased, int[][] contributions, double[][] shares) {
+		this.source = source;
+		this.binarised = binarised;
+		this.binarisedOrigins = binarisedOrigins;
+		this.startCopy = startCopy;
+		this.erasables = erasables;
+		this.erasablesProbabilities = erasablesProbabilities;
+		this.unitRules = unitRules;
+		this.unitOrigins = unitOrigins;
+		this.unitErased = unitErased;
+		this.contributions = contributions;
+		this.shares = shares;
+	}
+
+	/**
+	 * @return The grammar that was converted (not a copy, and shared with the
+	 *         provenance of clones; it must not be modified while the
+	 *         provenance is in use)
+	 */
+	public ContextFreeGrammar getSource() {
+		return source;
+	}
+
+	/**
+	 * @return The grammar after step 1 (binarisation); its alphabet is the
+	 *         alphabet of the converted grammar
+	 */
+	public ContextFreeGrammar getBinarised() {
+		return binarised;
+	}
+
+	/**
+	 * @param i
+	 *            The index of a rule of the binarised grammar
+	 * @return The index of the source rule that it comes from,
+	 *         {@code intermediateOrigin} or {@code startOrigin}
+	 */
+	public int getBinarisedOrigin(int i) {
+		return binarisedOrigins[i];
+	}
+
+	/**
+	 * The start symbol is copied when it appears on a right-hand side and can
+	 * be replaced by a single non-terminal: its rules are moved to a new
+	 * non-terminal {@code S'}, every occurrence of S is replaced by S', and the
+	 * rule {@code S -> S'} is added. In trees of the source grammar, S' stands
+	 * for S.
+	 *
+	 * @return The id of S', or {@code Alphabet.idStart} if the start symbol was
+	 *         not copied
+	 */
+	public int getStartCopy() {
+		return startCopy;
+	}
+
+	/**
+	 * @return The number of erasable non-terminals of the binarised grammar
+	 */
+	public int getNoofErasables() {
+		return erasables.length;
+	}
+
+	/**
+	 * @param i
+	 *            An index less than {@code getNoofErasables()}
+	 * @return The id of the i-th erasable non-terminal
+	 */
+	public int getErasable(int i) {
+		return erasables[i];
+	}
+
+	/**
+	 * @param i
+	 *            An index less than {@code getNoofErasables()}
+	 * @return The probability that the i-th erasable non-terminal derives the
+	 *         empty string
+	 */
+	public double getErasableProbability(int i) {
+		return erasablesProbabilities[i];
+	}
+
+	/**
+	 * @return The number of rules of the unit grammar
+	 */
+	public int getNoofUnitRules() {
+		return unitRules.size();
+	}
+
+	/**
+	 * @param i
+	 *            The index of a rule of the unit grammar
+	 * @return The rule
+	 */
+	public Rule getUnitRule(int i) {
+		return unitRules.get(i);
+	}
+
+	/**
+	 * @param i
+	 *            The index of a rule of the unit grammar
+	 * @return The index of the rule of the binarised grammar that it comes
+	 *         from
+	 */
+	public int getUnitOrigin(int i) {
+		return unitOrigins[i];
+	}
+
+	/**
+	 * @param i
+	 *            The index of a rule of the unit grammar
+	 * @return The position of the right-hand side symbol of the binarised rule
+	 *         that was erased to obtain the unit rule, or {@code -1} if none
+	 */
+	public int getUnitErased(int i) {
+		return unitErased[i];
+	}
+
+	/**
+	 * @param i
+	 *            The index of a rule of the converted grammar
+	 * @return The number of contributions to the rule
+	 */
+	public int getNoofContributions(int i) {
+		return contributions[i].length;
+	}
+
+	/**
+	 * @param i
+	 *            The index of a rule of the converted grammar
+	 * @param j
+	 *            An index less than {@code getNoofContributions(i)}
+	 * @return The index of the binary unit rule of the j-th contribution
+	 */
+	public int getContribution(int i, int j) {
+		return contributions[i][j];
+	}
+
+	/**
+	 * @param i
+	 *            The index of a rule of the converted grammar
+	 * @param j
+	 *            An index less than {@code getNoofContributions(i)}
+	 * @return The part of the rule's probability that is due to the j-th
+	 *         contribution (the shares of a rule add up to its probability)
+	 */
+	public double getShare(int i, int j) {
+		return shares[i][j];
+	}
+
+	/**
+	 * @return A copy whose probabilities of erasing, unit rules and shares are
+	 *         its own; the source and binarised grammars are shared, and
+	 *         {@code IncrementalCNF} replaces them with {@code setGrammars}
+	 *         instead of editing them once they are shared
+	 */
+	CNFProvenance copy() {
+		double[][] sharesCopy = new double[shares.length][];
+		for (int i = 0; i < shares.length; i++) {
+			sharesCopy[i] = shares[i].clone();
+		}
+		return new CNFProvenance(source, binarised, binarisedOrigins, startCopy, erasables,
+				erasablesProbabilities.clone(), new ArrayList<>(unitRules), unitOrigins, unitErased, contributions,
+				sharesCopy);
+	}
+
+	void setGrammars(ContextFreeGrammar source, ContextFreeGrammar binarised) {
+		this.source = source;
+		this.binarised = binarised;
+	}
+
+	void setErasableProbability(int i, double pr) {
+		erasablesProbabilities[i] = pr;
+	}
+
+	void setShare(int i, int j, double share) {
+		shares[i][j] = share;
+	}
+
+	void setUnitRule(int i, Rule r) {
+		unitRules.set(i, r);
+	}
+
+}
@@ -1,26 +1,33 @@
 package gr.auth.ee.mug.cfg.grammar;
 
-import java.io.BufferedReader;
+import java.io.BufferedOutputStream;
 import java.io.BufferedWriter;
+import java.io.DataOutputStream;
 import java.io.File;
-import java.io.FileReader;
+import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
 
-import org.apache.commons.math3.fitting.leastsquares.LeastSquaresBuilder;
-import org.apache.commons.math3.fitting.leastsquares.LeastSquaresOptimizer.Optimum;
-import org.apache.commons.math3.fitting.leastsquares.LeastSquaresProblem;
-import org.apache.commons.math3.fitting.leastsquares.LevenbergMarquardtOptimizer;
 import org.apache.commons.math3.linear.Array2DRowRealMatrix;
 import org.apache.commons.math3.linear.ArrayRealVector;
 import org.apache.commons.math3.linear.DecompositionSolver;
 import org.apache.commons.math3.linear.LUDecomposition;
 import org.apache.commons.math3.linear.RealMatrix;
 
-import gr.auth.ee.mug.cfg.grammar.solvers.EmptyRulesCost;
-import gr.auth.ee.mug.cfg.grammar.solvers.EmptyRulesJacobian;
+import gr.auth.ee.mug.cfg.grammar.solvers.ErasablesSolver;
 
 /**
  * Class that represents a context-free grammar.<br>
@@ -35,6 +42,9 @@ public class ContextFreeGrammar {
 
 	private final Alphabet al;
 	private final ArrayList<Rule> rules = new ArrayList<>();
+	private Binarisation binarisation = null;
+	private int noofSourceNonTerminals = -1;
+	private CNFProvenance provenance = null;
 
 	/**
 	 * Creates a new context-free grammar based on alphabet {@code al}.<br>
@@ -64,6 +74,9 @@ public class ContextFreeGrammar {
 		for (int i = 0; i < rules.size(); i++) {
 			cfg.addRule(rules.get(i).clone());
 		}
+		cfg.binarisation = binarisation;
+		cfg.noofSourceNonTerminals = noofSourceNonTerminals;
+		cfg.provenance = provenance == null ? null : provenance.copy();
 		return cfg;
 	}
 
@@ -76,6 +89,32 @@ public class ContextFreeGrammar {
 		return al.clone();
 	}
 
+	/**
+	 * @return The strategy that {@code chomskyNormal} used to binarise long
+	 *         rules when it created this grammar, or {@code null} if the
+	 *         grammar was not created by {@code chomskyNormal}
+	 */
+	public Binarisation getBinarisation() {
+		return binarisation;
+	}
+
+	/**
+	 * @return How {@code chomskyNormal} derived the rules of this grammar from
+	 *         the rules of the source grammar, or {@code null} if the grammar
+	 *         was not created by {@code chomskyNormal} in this process (the
+	 *         provenance is not stored in files)
+	 */
+	public CNFProvenance getProvenance() {
+		return provenance;
+	}
+
+	/**
+	 * Forgets the provenance, as if the grammar had been loaded from a file.
+	 */
+	void clearProvenance() {
+		provenance = null;
+	}
+
 	/**
 	 * @return The number of rules currently in the grammar
 	 */
@@ -92,6 +131,92 @@ public class ContextFreeGrammar {
 		return rules.get(id);
 	}
 
+	/**
+	 * Creates a copy of the grammar with the same alphabet and rules (in the
+	 * same order) but new rule probabilities. The binarisation record of
+	 * {@code chomskyNormal} is kept; the provenance is not, since its shares
+	 * no longer add up to the rule probabilities.
+	 *
+	 * @param pr
+	 *            The new probabilities, {@code pr[i]} for the i-th rule
+	 * @return The new grammar
+	 */
+	public ContextFreeGrammar withProbabilities(double[] pr) {
+		ContextFreeGrammar cfg = new ContextFreeGrammar(al);
+		cfg.rules.ensureCapacity(rules.size());
+		for (int i = 0; i < rules.size(); i++) {
+			Rule r = rules.get(i);
+			int[] to = new int[r.getToLength()];
+			for (int j = 0; j < to.length; j++) {
+				to[j] = r.getTo(j);
+			}
+			cfg.rules.add(Rule.newOwning(r.getFrom(), to, pr[i]));
+		}
+		cfg.binarisation = binarisation;
+		cfg.noofSourceNonTerminals = noofSourceNonTerminals;
+		return cfg;
+	}
+
+	/**
+	 * Replaces a rule of the grammar.
+	 * 
+	 * @param id
+	 *            The rule's id
+	 * @param rule
+	 *            The new rule
+	 */
+	void setRule(int id, Rule rule) {
+		rules.set(id, rule);
+	}
+
+	/**
+	 * Computes the probabilities that the erasable non-terminals {@code E}
+	 * derive the empty string (see {@code chomskyNormal}).
+	 */
+	double[] getErasablesProbabilities(ArrayList<Integer> E) {
+		return getErasablesProbabilities(rules, E);
+	}
+
+	/**
+	 * Marks this grammar as binarised, with its intermediate non-terminals
+	 * after the first {@code noofSourceNonTerminals} ones (see
+	 * {@code isIntermediate}).
+	 */
+	void setBinarisation(Binarisation binarisation, int noofSourceNonTerminals) {
+		this.binarisation = binarisation;
+		this.noofSourceNonTerminals = noofSourceNonTerminals;
+	}
+
+	/**
+	 * Checks whether a symbol is one of the intermediate non-terminals that
+	 * {@code chomskyNormal} created to binarise long rules. In a parse tree,
+	 * such a node can be replaced by its children to recover the long rule.
+	 * 
+	 * @param id
+	 *            A symbol's id
+	 * @return If the symbol was created by the binarisation
+	 */
+	public boolean isIntermediate(int id) {
+		return binarisation != null && !al.isTerminal(id) && !al.isEmptyStringSymbol(id)
+				&& al.getIdx(id) >= noofSourceNonTerminals;
+	}
+
+	/**
+	 * @return If every rule of the grammar replaces a non-terminal by exactly
+	 *         two symbols, neither of which is the empty string symbol (this
+	 *         is the form produced by {@code chomskyNormal} and required by
+	 *         {@code CNFParser})
+	 */
+	public boolean isChomskyNormal() {
+		for (int i = 0; i < rules.size(); i++) {
+			Rule r = rules.get(i);
+			if (r.getToLength() != 2 || al.isEmptyStringSymbol(r.getTo(0)) || al.isEmptyStringSymbol(r.getTo(1))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Exposes the {@code printAlphabet} method.
 	 * 
@@ -190,69 +315,160 @@ public class ContextFreeGrammar {
 		fileWriter.close();
 	}
 
+	/**
+	 * Save grammar (alphabet and rules) in a binary file. The file can be
+	 * restored with {@code newFromBinaryFile}, which is much faster than
+	 * parsing the text format of {@code saveToFile}.<br>
+	 * <br>
+	 * The file consists of a header (magic number, format version, flags,
+	 * counts and the binarisation record of {@code chomskyNormal}), the symbol
+	 * table, the rules stored column-wise (probabilities,
+	 * left-hand sides, right-hand side lengths and the concatenated right-hand
+	 * sides) and a trailing CRC32 checksum of everything before it. Flag
+	 * {@code binaryFlagCompiled} is set if the grammar is in Chomsky normal
+	 * form.
+	 * 
+	 * @param filename
+	 *            The name of the binary file to write into
+	 * @throws IOException
+	 */
+	public void saveToBinaryFile(String filename) throws IOException {
+
+		CRC32 crc = new CRC32();
+		FileOutputStream fileOutputStream = new FileOutputStream(filename);
+		CheckedOutputStream checkedOutputStream = new CheckedOutputStream(
+				new BufferedOutputStream(fileOutputStream, 1 << 16), crc);
+		DataOutputStream out = new DataOutputStream(checkedOutputStream);
+
+		writeBinary(out);
+
+		// Checksum (not part of the checksum itself)
+		out.flush();
+		new DataOutputStream(fileOutputStream).writeLong(crc.getValue());
+
+		out.close();
+	}
+
+	/**
+	 * Computes a content fingerprint of the grammar: the SHA-256 digest of
+	 * its binary representation (see {@code saveToBinaryFile}), which covers
+	 * the alphabet (ids, symbols, descriptions) and the rules (in order,
+	 * including probabilities). Two grammars have the same fingerprint if and
+	 * only if (barring collisions) they are identical.
+	 * 
+	 * @return The fingerprint as a lower-case hexadecimal string
+	 */
+	public String fingerprint() {
+
+		MessageDigest md;
+		try {
+			md = MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			// Every Java platform is required to support SHA-256
+			throw new IllegalStateException(e);
+		}
+
+		OutputStream sink = new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+		};
+		DataOutputStream out = new DataOutputStream(
+				new BufferedOutputStream(new DigestOutputStream(sink, md), 1 << 16));
+		try {
+			writeBinary(out);
+			out.flush();
+		} catch (IOException e) {
+			// Cannot happen, nothing is written anywhere
+			throw new IllegalStateException(e);
+		}
+
+		byte[] digest = md.digest();
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < digest.length; i++) {
+			sb.append(String.format("%02x", digest[i]));
+		}
+		return sb.toString();
+	}
+
 	/**
 	 * Creates a new {@code ContextFreeGrammar} in Chomsky normal form.
+	 * Equivalent to {@code chomskyNormal(cfg, Binarisation.RIGHT)}.
 	 * 
 	 * @param cfg
 	 *            A context-free grammar
 	 * @return The context-free grammar in Chomsky normal-form.
 	 */
 	public static ContextFreeGrammar chomskyNormal(ContextFreeGrammar cfg) {
-		ContextFreeGrammar h = cfg.clone();
-
-		// Step 1: handle long rules
-		for (int i = h.rules.size() - 1; i >= 0; i--) {
-
-			// Escape if rule is not long
-			if (h.rules.get(i).getToLength() <= 2) {
-				continue;
-			}
+		return chomskyNormal(cfg, Binarisation.RIGHT);
+	}
 
-			// Useful renames
-			Rule r = h.rules.get(i);
-			int len = r.getToLength();
-			String sFrom = h.al.getSymbol(r.getFrom());
+	/**
+	 * Creates a new {@code ContextFreeGrammar} in Chomsky normal form.
+	 * 
+	 * @param cfg
+	 *            A context-free grammar
+	 * @param binarisation
+	 *            The strategy used to replace long rules by binary ones; it is
+	 *            recorded in the new grammar (see {@code getBinarisation} and
+	 *            {@code isIntermediate})
+	 * @return The context-free grammar in Chomsky normal-form.
+	 */
+	public static ContextFreeGrammar chomskyNormal(ContextFreeGrammar cfg, Binarisation binarisation) {
+		ContextFreeGrammar h = cfg.clone();
 
-			// Remove the long rule
-			h.rules.remove(i);
+		// Origin of each rule of h (see CNFProvenance)
+		ArrayList<Integer> origins = new ArrayList<>();
+		for (int i = 0; i < h.rules.size(); i++) {
+			origins.add(i);
+		}
 
-			// Create and add new non-terminal symbols
-			int[] ids = new int[len - 2];
-			for (int j = 0; j < ids.length; j++) {
-				ids[j] = h.al.addSymbol(sFrom + "_" + String.valueOf(j + 1), false, null);
+		// Step 0: if S appears on a right-hand side and can be replaced by a
+		// single non-terminal, move its rules to a copy S' and add S -> S';
+		// otherwise the rules that step 3 lifts to S would also apply to the
+		// occurrences of S on right-hand sides
+		int startCopy = Alphabet.idStart;
+		if (needsStartCopy(h.rules)) {
+			startCopy = h.al.addSymbol(h.al.getSymbol(Alphabet.idStart) + "'", false, null);
+			for (int i = 0; i < h.rules.size(); i++) {
+				h.rules.set(i, renameSymbol(h.rules.get(i), Alphabet.idStart, startCopy));
 			}
+			h.addRule(new Rule(Alphabet.idStart, new int[] { startCopy }, 1));
+			origins.add(CNFProvenance.startOrigin);
+		}
 
-			// Add first rule
-			h.addRule(new Rule(r.getFrom(), new int[] { r.getTo(0), ids[0] }, r.getProbability()));
-
-			// Add next rules
-			for (int j = 0; j < len - 3; j++) {
-				h.addRule(new Rule(ids[j], new int[] { r.getTo(j + 1), ids[j + 1] }, 1));
-			}
+		h.binarisation = binarisation;
+		h.noofSourceNonTerminals = h.al.getNoofNonTerminals();
 
-			// Add final rule
-			h.addRule(new Rule(ids[len - 3], new int[] { r.getTo(len - 2), r.getTo(len - 1) }, 1));
-		}
+		// Step 1: handle long rules
+		binarise(h, binarisation, origins);
+		ContextFreeGrammar hb = h.clone();
 
 		// Step 2: handle empty string rules
 
 		// Set E of erasable non-terminals
 		ArrayList<Integer> E = getErasables(h.rules);
+		HashMap<Integer, Integer> idxE = new HashMap<>();
+		for (int i = 0; i < E.size(); i++) {
+			idxE.put(E.get(i), i);
+		}
 
 		// Probabilities of erasing
 		double[] prE = getErasablesProbabilities(h.rules, E);
-		// new double[E.size()];
 
-		// Remove all empty string rules
-		for (int i = h.rules.size() - 1; i >= 0; i--) {
-			if (h.al.isEmptyStringSymbol(h.rules.get(i).getTo(0))) {
-				h.rules.remove(i);
+		// The unit rules: all rules except the empty string rules, and the
+		// short rules obtained by erasing one symbol of a rule of length 2
+		ArrayList<Rule> u = new ArrayList<>();
+		ArrayList<Integer> uOrigins = new ArrayList<>();
+		ArrayList<Integer> uErased = new ArrayList<>();
+		for (int i = 0; i < h.rules.size(); i++) {
+			if (!h.al.isEmptyStringSymbol(h.rules.get(i).getTo(0))) {
+				u.add(h.rules.get(i));
+				uOrigins.add(i);
+				uErased.add(-1);
 			}
 		}
-
-		// Add new short rules
-		int curHRulesSize = h.rules.size();
-		for (int i = 0; i < curHRulesSize; i++) {
+		for (int i = 0; i < h.rules.size(); i++) {
 			Rule r = h.rules.get(i);
 
 			// Escape if not a rule of length 2
@@ -260,217 +476,175 @@ public class ContextFreeGrammar {
 				continue;
 			}
 
-			if (E.contains(r.getTo(0))) {
-				// TODO if exists "r.getFrom() -> r.getTo(1)" just update prob,
-				// WARNING the TODO above is probably wrong, as this probability
-				// (obtained directly by the rule) is already added to the total
-				// else:
-				double pr = r.getProbability() * prE[E.indexOf(r.getTo(0))];
-				h.rules.add(new Rule(r.getFrom(), new int[] { r.getTo(1) }, pr));
-			}
-			if (E.contains(r.getTo(1))) {
-				// TODO if exists "r.getFrom() -> r.getTo(0)" just update prob,
-				// WARNING the TODO above is probably wrong, as this probability
-				// (obtained directly by the rule) is already added to the total
-				// else:
-				double pr = r.getProbability() * prE[E.indexOf(r.getTo(1))];
-				h.rules.add(new Rule(r.getFrom(), new int[] { r.getTo(0) }, pr));
+			for (int j = 0; j < 2; j++) {
+				Integer e = idxE.get(r.getTo(j));
+				if (e != null) {
+					double pr = r.getProbability() * prE[e];
+					u.add(new Rule(r.getFrom(), new int[] { r.getTo(1 - j) }, pr));
+					uOrigins.add(i);
+					uErased.add(j);
+				}
 			}
 		}
 
 		// Step 3: handle short rules
 
-		// Create sets D(A) and Di(A) for non-terminals A
+		// Create sets D(A) for non-terminals A
 		ArrayList<ArrayList<Integer>> nonTerminalsD = new ArrayList<>();
-		ArrayList<ArrayList<Integer>> nonTerminalsDi = new ArrayList<>();
 		for (int i = 0; i < h.al.getNoofNonTerminals(); i++) {
-			nonTerminalsD.add(getD(h.al.getIdNonTerminal(i), h.rules));
-			// nonTerminalsDi.add(getDi(i, h.rules));
+			nonTerminalsD.add(getD(h.al.getIdNonTerminal(i), u));
 		}
 
-		// Create sets D(a) and Di(A) for terminals
-		ArrayList<ArrayList<Integer>> terminalsD = new ArrayList<>();
-		ArrayList<ArrayList<Integer>> terminalsDi = new ArrayList<>();
-		for (int i = 0; i < h.al.getNoofTerminals(); i++) {
-			terminalsD.add(getD(h.al.getIdTerminal(i), h.rules));
-			// terminalsDi.add(getDi(i, h.rules));
-		}
-
-		DecompositionSolver decompSolver = getDerivationsProbabilitiesMatA(h.al, h.rules);
+		DecompositionSolver decompSolver = getDerivationsProbabilitiesMatA(h.al, u);
 
-		// Matrix of replacement probabilities
+		// Matrix of replacement probabilities; prDerivNonTerm[i][j] is the
+		// probability that the j-th non-terminal is replaced by the i-th one
+		// through one or more short rules, and prDerivTerm likewise for
+		// terminals
 		double[][] prDerivNonTerm = new double[h.al.getNoofNonTerminals()][];
 		double[][] prDerivTerm = new double[h.al.getNoofTerminals()][];
 
 		for (int i = 0; i < h.al.getNoofNonTerminals(); i++) {
 			int id = h.al.getIdNonTerminal(i);
-			double[] vecB = getDerivationsProbabilitiesVecB(h, id);
+			double[] vecB = getDerivationsProbabilitiesVecB(h.al, u, id);
 			prDerivNonTerm[i] = decompSolver.solve(new ArrayRealVector(vecB)).toArray();
 		}
 		for (int i = 0; i < h.al.getNoofTerminals(); i++) {
 			int id = h.al.getIdTerminal(i);
-			double[] vecB = getDerivationsProbabilitiesVecB(h, id);
+			double[] vecB = getDerivationsProbabilitiesVecB(h.al, u, id);
 			prDerivTerm[i] = decompSolver.solve(new ArrayRealVector(vecB)).toArray();
 		}
 
-		// Generate rules
-		curHRulesSize = h.rules.size();
-		for (int i = 0; i < curHRulesSize; i++) {
-			Rule r = h.rules.get(i);
+		// Generate rules: each binary rule B -> X Y gives A -> X' Y' for all X'
+		// in D(X) and Y' in D(Y), where A is B itself and, if B is in D(S),
+		// also S (the rule is lifted to the start symbol, since S has no
+		// parent that could replace it by B); rules that are generated more
+		// than once have their probabilities added
+		ArrayList<Integer> DS = nonTerminalsD.get(h.al.getIdx(Alphabet.idStart));
+		HashMap<Rule, Integer> cnfIdx = new HashMap<>();
+		ArrayList<Rule> cnfRules = new ArrayList<>();
+		ArrayList<ArrayList<Integer>> cnfContributions = new ArrayList<>();
+		ArrayList<ArrayList<Double>> cnfShares = new ArrayList<>();
+
+		for (int i = 0; i < u.size(); i++) {
+			Rule r = u.get(i);
 
 			// Escape if length is not 2
 			if (r.getToLength() != 2) {
 				continue;
 			}
 
-			ArrayList<Integer> al0;
-			ArrayList<Integer> al1;
-			int id0;
-			int id1;
-			int idx0;
-			int idx1;
+			int id0 = r.getTo(0);
+			int id1 = r.getTo(1);
+			ArrayList<Integer> al0 = h.al.isTerminal(id0) ? singleton(id0) : nonTerminalsD.get(h.al.getIdx(id0));
+			ArrayList<Integer> al1 = h.al.isTerminal(id1) ? singleton(id1) : nonTerminalsD.get(h.al.getIdx(id1));
 
-			id0 = r.getTo(0);
-			idx0 = h.al.getIdx(id0);
-			if (h.al.isTerminal(id0)) {
-				al0 = terminalsD.get(idx0);
-			} else {
-				al0 = nonTerminalsD.get(idx0);
-			}
-
-			id1 = r.getTo(1);
-			idx1 = h.al.getIdx(id1);
-			if (h.al.isTerminal(id1)) {
-				al1 = terminalsD.get(idx1);
-			} else {
-				al1 = nonTerminalsD.get(idx1);
-			}
-
-			for (int j0 = 0; j0 < al0.size(); j0++) {
-				for (int j1 = 0; j1 < al1.size(); j1++) {
-					// TODO if exists "r.getFrom() -> al0.get(j0) al1.get(j1)"
-					// just update prob, else
-
-					// skip if no actual replacement
-					if (id0 == al0.get(j0) & id1 == al1.get(j1)) {
+			for (int a = 0; a < 2; a++) {
+				int from;
+				double pa;
+				if (a == 0) {
+					if (r.getFrom() == Alphabet.idStart) {
 						continue;
 					}
-
-					// idx0 is replaced by idx0r
-					// idx1 is replaced by idx1r
-					int idx0r = h.al.getIdx(al0.get(j0));
-					int idx1r = h.al.getIdx(al1.get(j1));
-
-					double p0;
-					double p1;
-					if (h.al.isTerminal(al0.get(j0))) {
-						p0 = prDerivTerm[idx0r][idx0];
-					} else {
-						p0 = prDerivNonTerm[idx0r][idx0];
-					}
-					if (h.al.isTerminal(al1.get(j1))) {
-						p1 = prDerivTerm[idx1r][idx1];
-					} else {
-						p1 = prDerivNonTerm[idx1r][idx1];
-					}
-					double p = r.getProbability() * p0 * p1;
-
-					h.rules.add(new Rule(r.getFrom(), new int[] { al0.get(j0), al1.get(j1) }, p));
-				}
-			}
-		}
-
-		// Remove short rules
-		for (int i = h.rules.size() - 1; i >= 0; i--) {
-			if (h.rules.get(i).getToLength() == 1) {
-				h.rules.remove(i);
-			}
-		}
-
-		// Extra: remove duplicates
-		for (int i = h.rules.size() - 1; i >= 0; i--) {
-			for (int j = i - 1; j >= 0; j--) {
-				if (h.rules.get(i).equals(h.rules.get(j)) & i != j) {
-					h.rules.remove(i);
-					break;
-				}
-			}
-		}
-
-		// Add few last rules (from step 3)
-		int idxStart = h.al.getIdx(Alphabet.idStart);
-		for (int i = 0; i < h.rules.size(); i++) {
-			Rule r = h.rules.get(i);
-
-			if (nonTerminalsD.get(idxStart).contains(r.getFrom())) {
-
-				int[] rTo = new int[r.getToLength()];
-				for (int j = 0; j < rTo.length; j++) {
-					rTo[j] = r.getTo(j);
-				}
-
-				double p = r.getProbability();
-				if (h.al.isTerminal(r.getFrom())) {
-					p *= prDerivTerm[h.al.getIdx(r.getFrom())][h.al.getIdx(Alphabet.idStart)];
+					from = r.getFrom();
+					pa = 1;
 				} else {
-					p *= prDerivNonTerm[h.al.getIdx(r.getFrom())][h.al.getIdx(Alphabet.idStart)];
+					if (!DS.contains(r.getFrom())) {
+						continue;
+					}
+					from = Alphabet.idStart;
+					pa = getDerivationProbability(h.al, prDerivNonTerm, prDerivTerm, Alphabet.idStart, r.getFrom());
 				}
 
-				Rule r1 = new Rule(Alphabet.idStart, rTo, p);
-
-				if (!h.rules.contains(r1)) {
-					h.rules.add(r1);
+				for (int j0 = 0; j0 < al0.size(); j0++) {
+					double p0 = getDerivationProbability(h.al, prDerivNonTerm, prDerivTerm, id0, al0.get(j0));
+					for (int j1 = 0; j1 < al1.size(); j1++) {
+						double p1 = getDerivationProbability(h.al, prDerivNonTerm, prDerivTerm, id1, al1.get(j1));
+						double p = pa * r.getProbability() * p0 * p1;
+
+						Rule key = new Rule(from, new int[] { al0.get(j0), al1.get(j1) });
+						Integer c = cnfIdx.get(key);
+						if (c == null) {
+							c = cnfRules.size();
+							cnfIdx.put(key, c);
+							cnfRules.add(key);
+							cnfContributions.add(new ArrayList<Integer>());
+							cnfShares.add(new ArrayList<Double>());
+						}
+						cnfContributions.get(c).add(i);
+						cnfShares.get(c).add(p);
+					}
 				}
 			}
 		}
 
-		// Clean up
+		// Clean up: drop the rules of non-terminals (other than S) that do not
+		// appear on any right-hand side
+		boolean[] keep = new boolean[cnfRules.size()];
+		Arrays.fill(keep, true);
 		boolean flag = true;
 		while (flag) {
 			flag = false;
 
-			ArrayList<Integer> uselessIds = new ArrayList<>();
-
-			for (int i = 0; i < h.al.getNoofNonTerminals(); i++) {
-
-				int id = h.al.getIdNonTerminal(i);
-				if (id == Alphabet.idStart) {
-					continue;
-				}
-
-				boolean flagFound = false;
-
-				for (int j = 0; j < h.rules.size(); j++) {
-					Rule r = h.rules.get(j);
-
-					for (int k = 0; k < r.getToLength(); k++) {
-						if (r.getTo(k) == id) {
-							flagFound = true;
-							break;
+			int[] noofOccurrences = new int[h.al.getNoofNonTerminals()];
+			for (int j = 0; j < cnfRules.size(); j++) {
+				if (keep[j]) {
+					for (int k = 0; k < 2; k++) {
+						int id = cnfRules.get(j).getTo(k);
+						if (!h.al.isTerminal(id)) {
+							noofOccurrences[h.al.getIdx(id)]++;
 						}
 					}
 				}
-
-				if (!flagFound) {
-					uselessIds.add(id);
-				}
 			}
 
-			for (int j = h.rules.size() - 1; j >= 0; j--) {
-				if (uselessIds.contains(h.rules.get(j).getFrom())) {
-					h.rules.remove(j);
+			for (int j = 0; j < cnfRules.size(); j++) {
+				int from = cnfRules.get(j).getFrom();
+				if (keep[j] && from != Alphabet.idStart && noofOccurrences[h.al.getIdx(from)] == 0) {
+					keep[j] = false;
 					flag = true;
 				}
 			}
+		}
+
+		// Assemble the grammar and its provenance
+		h.rules.clear();
+		ArrayList<int[]> contributions = new ArrayList<>();
+		ArrayList<double[]> shares = new ArrayList<>();
+		for (int j = 0; j < cnfRules.size(); j++) {
+			if (!keep[j]) {
+				continue;
+			}
+			int n = cnfContributions.get(j).size();
+			int[] cj = new int[n];
+			double[] sj = new double[n];
+			double p = 0;
+			for (int k = 0; k < n; k++) {
+				cj[k] = cnfContributions.get(j).get(k);
+				sj[k] = cnfShares.get(j).get(k);
+				p += sj[k];
+			}
+			Rule r = cnfRules.get(j);
+			h.addRule(new Rule(r.getFrom(), new int[] { r.getTo(0), r.getTo(1) }, p));
+			contributions.add(cj);
+			shares.add(sj);
+		}
 
+		int[] erasables = new int[E.size()];
+		for (int i = 0; i < erasables.length; i++) {
+			erasables[i] = E.get(i);
 		}
 
+		h.provenance = new CNFProvenance(cfg, hb, toIntArray(origins), startCopy, erasables, prE, u,
+				toIntArray(uOrigins), toIntArray(uErased), contributions.toArray(new int[contributions.size()][]),
+				shares.toArray(new double[shares.size()][]));
+
 		return h;
 	}
 
 	/**
 	 * Create a new ContextFreeGrammar (including its alphabet) from a text
-	 * file.
+	 * file. The file is read by {@code StreamingReader}, one line at a time.
 	 * 
 	 * @param filename
 	 *            The name of the file that contains the description of the
@@ -479,58 +653,256 @@ public class ContextFreeGrammar {
 	 * @throws IOException
 	 */
 	public static ContextFreeGrammar newFromFile(String filename) throws IOException {
+		return StreamingReader.newFromFile(filename, null);
+	}
 
-		File file = new File(filename);
-		FileReader fileReader = new FileReader(file);
-		BufferedReader bufferedReader = new BufferedReader(fileReader);
-		String s;
+	/**
+	 * Create a new ContextFreeGrammar (including its alphabet) from a binary
+	 * file written by {@code saveToBinaryFile}. The file is memory-mapped and
+	 * the symbol and rule tables are read directly from it.
+	 * 
+	 * @param filename
+	 *            The name of the binary file
+	 * @return A new {@code ContextFreeGrammar}
+	 * @throws IOException
+	 *             If the file is not a grammar file, has an unsupported
+	 *             version, or fails the checksum
+	 */
+	public static ContextFreeGrammar newFromBinaryFile(String filename) throws IOException {
+
+		RandomAccessFile randomAccessFile = new RandomAccessFile(filename, "r");
+		FileChannel channel = randomAccessFile.getChannel();
+		MappedByteBuffer buffer;
+		try {
+			if (channel.size() < 28 || channel.size() > Integer.MAX_VALUE) {
+				throw new IOException("'" + filename + "' is not a binary grammar file");
+			}
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		} finally {
+			channel.close();
+			randomAccessFile.close();
+		}
 
-		String[] input1; // non-terminals;
-		String[] input2; // terminals;
-		String[] input3; // rules
+		// Verify the checksum
+		int len = buffer.limit() - 8;
+		CRC32 crc = new CRC32();
+		byte[] chunk = new byte[1 << 16];
+		buffer.position(0);
+		while (buffer.position() < len) {
+			int l = Math.min(chunk.length, len - buffer.position());
+			buffer.get(chunk, 0, l);
+			crc.update(chunk, 0, l);
+		}
+		if (buffer.getLong(len) != crc.getValue()) {
+			throw new IOException("'" + filename + "' is corrupt (checksum mismatch)");
+		}
 
-		s = bufferedReader.readLine();
-		int len1 = Integer.parseInt(s);
-		input1 = new String[len1];
+		// Header
+		buffer.position(0);
+		if (buffer.getInt() != binaryMagic) {
+			throw new IOException("'" + filename + "' is not a binary grammar file");
+		}
+		int version = buffer.getInt();
+		if (version < 1 || version > binaryVersion) {
+			throw new IOException("'" + filename + "' has unsupported version " + String.valueOf(version));
+		}
+		int flags = buffer.getInt();
+		int noofRules = buffer.getInt();
+		int noofRhs = buffer.getInt();
+		int binarisationOrdinal = -1;
+		int noofSourceNonTerminals = -1;
+		if (version >= 2) {
+			binarisationOrdinal = buffer.getInt();
+			noofSourceNonTerminals = buffer.getInt();
+		}
 
-		for (int i = 0; i < len1; i++) {
-			input1[i] = bufferedReader.readLine();
+		// Symbol table
+		Alphabet A = Alphabet.readBinary(buffer);
+		ContextFreeGrammar cfg = new ContextFreeGrammar(A);
+		cfg.rules.ensureCapacity(noofRules);
+		if (binarisationOrdinal >= 0 && binarisationOrdinal < Binarisation.values().length) {
+			cfg.binarisation = Binarisation.values()[binarisationOrdinal];
+			cfg.noofSourceNonTerminals = noofSourceNonTerminals;
 		}
 
-		s = bufferedReader.readLine();
-		int len2 = Integer.parseInt(s);
-		input2 = new String[len2];
+		// Rules
+		double[] pr = new double[noofRules];
+		int[] from = new int[noofRules];
+		int[] toLength = new int[noofRules];
+		int[] to = new int[noofRhs];
+		buffer.asDoubleBuffer().get(pr);
+		buffer.position(buffer.position() + 8 * noofRules);
+		ByteBuffer ints = buffer.slice();
+		ints.asIntBuffer().get(from);
+		ints.position(4 * noofRules);
+		ints.slice().asIntBuffer().get(toLength);
+		ints.position(8 * noofRules);
+		ints.slice().asIntBuffer().get(to);
+
+		int offset = 0;
+		for (int i = 0; i < noofRules; i++) {
+			cfg.rules.add(Rule.newOwning(from[i], Arrays.copyOfRange(to, offset, offset + toLength[i]), pr[i]));
+			offset += toLength[i];
+		}
 
-		for (int i = 0; i < len2; i++) {
-			input2[i] = bufferedReader.readLine();
+		if ((flags & binaryFlagCompiled) != 0 && !cfg.isChomskyNormal()) {
+			throw new IOException("'" + filename + "' is flagged as compiled but is not in Chomsky normal form");
 		}
 
-		s = bufferedReader.readLine();
-		int len3 = Integer.parseInt(s);
-		input3 = new String[len3];
+		return cfg;
+	}
 
-		for (int i = 0; i < len3; i++) {
-			input3[i] = bufferedReader.readLine();
+	private void writeBinary(DataOutputStream out) throws IOException {
+
+		int noofRhs = 0;
+		for (int i = 0; i < rules.size(); i++) {
+			noofRhs += rules.get(i).getToLength();
 		}
 
-		bufferedReader.close();
-		fileReader.close();
+		// Header
+		out.writeInt(binaryMagic);
+		out.writeInt(binaryVersion);
+		out.writeInt(isChomskyNormal() ? binaryFlagCompiled : 0);
+		out.writeInt(rules.size());
+		out.writeInt(noofRhs);
+		out.writeInt(binarisation == null ? -1 : binarisation.ordinal());
+		out.writeInt(noofSourceNonTerminals);
 
-		Alphabet A = Alphabet.newFromStrings(input1, input2);
-		ContextFreeGrammar cfg = new ContextFreeGrammar(A);
+		// Symbol table
+		al.writeBinary(out);
 
-		for (int i = 0; i < len3; i++) {
-			String[] ss = input3[i].split(" ");
-			double pr = Double.parseDouble(ss[0]);
-			int from = Integer.parseInt(ss[1]);
-			int[] to = new int[ss.length - 2];
-			for (int j = 0; j < to.length; j++) {
-				to[j] = Integer.parseInt(ss[2 + j]);
+		// Rules
+		for (int i = 0; i < rules.size(); i++) {
+			out.writeDouble(rules.get(i).getProbability());
+		}
+		for (int i = 0; i < rules.size(); i++) {
+			out.writeInt(rules.get(i).getFrom());
+		}
+		for (int i = 0; i < rules.size(); i++) {
+			out.writeInt(rules.get(i).getToLength());
+		}
+		for (int i = 0; i < rules.size(); i++) {
+			Rule r = rules.get(i);
+			for (int j = 0; j < r.getToLength(); j++) {
+				out.writeInt(r.getTo(j));
 			}
-			cfg.addRule(new Rule(from, to, pr));
 		}
+	}
 
-		return cfg;
+	/**
+	 * Replace the long rules of a grammar by binary rules (step 1 of
+	 * {@code chomskyNormal}).
+	 * 
+	 * @param h
+	 *            The grammar, which is modified in place
+	 * @param binarisation
+	 *            The strategy to use
+	 * @param origins
+	 *            The origins of the rules of {@code h}, updated along with the
+	 *            rules (see {@code CNFProvenance.getBinarisedOrigin})
+	 */
+	private static void binarise(ContextFreeGrammar h, Binarisation binarisation, ArrayList<Integer> origins) {
+
+		// Intermediate non-terminals of the shared strategies, by the
+		// right-hand side part they stand for
+		HashMap<String, Integer> shared = new HashMap<>();
+
+		for (int i = h.rules.size() - 1; i >= 0; i--) {
+
+			// Escape if rule is not long
+			if (h.rules.get(i).getToLength() <= 2) {
+				continue;
+			}
+
+			// Useful renames
+			Rule r = h.rules.get(i);
+			int len = r.getToLength();
+			int[] to = new int[len];
+			for (int j = 0; j < len; j++) {
+				to[j] = r.getTo(j);
+			}
+
+			// Remove the long rule
+			h.rules.remove(i);
+			int origin = origins.remove(i);
+
+			switch (binarisation) {
+			case LEFT_SHARED:
+				h.addRule(new Rule(r.getFrom(),
+						new int[] { getSharedId(h, shared, origins, to, 0, len - 1), to[len - 1] },
+						r.getProbability()));
+				origins.add(origin);
+				break;
+
+			case RIGHT_SHARED:
+				h.addRule(new Rule(r.getFrom(), new int[] { to[0], getSharedId(h, shared, origins, to, 1, len) },
+						r.getProbability()));
+				origins.add(origin);
+				break;
+
+			default:
+				String sFrom = h.al.getSymbol(r.getFrom());
+
+				// Create and add new non-terminal symbols
+				int[] ids = new int[len - 2];
+				for (int j = 0; j < ids.length; j++) {
+					ids[j] = h.al.addSymbol(sFrom + "_" + String.valueOf(j + 1), false, null);
+				}
+
+				// Add first rule
+				h.addRule(new Rule(r.getFrom(), new int[] { to[0], ids[0] }, r.getProbability()));
+				origins.add(origin);
+
+				// Add next rules
+				for (int j = 0; j < len - 3; j++) {
+					h.addRule(new Rule(ids[j], new int[] { to[j + 1], ids[j + 1] }, 1));
+					origins.add(CNFProvenance.intermediateOrigin);
+				}
+
+				// Add final rule
+				h.addRule(new Rule(ids[len - 3], new int[] { to[len - 2], to[len - 1] }, 1));
+				origins.add(CNFProvenance.intermediateOrigin);
+			}
+		}
+	}
+
+	/**
+	 * Get (creating it and its rules, if needed) the intermediate non-terminal
+	 * that stands for {@code to[from..until-1]} in a shared binarisation; a
+	 * prefix is factored to the left and a suffix to the right.
+	 */
+	private static int getSharedId(ContextFreeGrammar h, HashMap<String, Integer> shared,
+			ArrayList<Integer> origins, int[] to, int from, int until) {
+
+		boolean isPrefix = from == 0;
+
+		StringBuilder key = new StringBuilder(isPrefix ? "<" : ">");
+		StringBuilder symbol = new StringBuilder();
+		for (int j = from; j < until; j++) {
+			key.append(to[j]).append(' ');
+			symbol.append(j == from ? "" : "+").append(h.al.getSymbol(to[j]));
+		}
+
+		Integer id = shared.get(key.toString());
+		if (id != null) {
+			return id;
+		}
+
+		id = h.al.addSymbol(symbol.toString(), false, null);
+		shared.put(key.toString(), id);
+
+		int[] rTo;
+		if (until - from == 2) {
+			rTo = new int[] { to[from], to[from + 1] };
+		} else if (isPrefix) {
+			rTo = new int[] { getSharedId(h, shared, origins, to, from, until - 1), to[until - 1] };
+		} else {
+			rTo = new int[] { to[from], getSharedId(h, shared, origins, to, from + 1, until) };
+		}
+		h.addRule(new Rule(id, rTo, 1));
+		origins.add(CNFProvenance.intermediateOrigin);
+
+		return id;
 	}
 
 	/**
@@ -652,164 +1024,189 @@ public class ContextFreeGrammar {
 
 		int n = al.getNoofNonTerminals();
 
-		// Allocate matrix a and populate it
+		// Allocate matrix a and populate it: a[j][k] is the total probability
+		// of the short rules j -> k, minus 1 on the main diagonal
 		double[][] a = new double[n][n];
 		for (int j = 0; j < n; j++) {
-			for (int k = 0; k < n; k++) {
-
-				// initialize to zero
-				a[j][k] = 0;
-
-				if (j == k) {
-					// main diagonal is set to -1
-					a[j][k] = -1;
-
-				} else {
-					// search for rule: j -> k
-					for (int ri = 0; ri < rules.size(); ri++) {
-						Rule r = rules.get(ri);
-
-						// Escape if not short rule
-						if (r.getToLength() != 1) {
-							continue;
-						}
-
-						boolean b1 = r.getFrom() == al.getIdNonTerminal(j);
-						boolean b2 = r.getTo(0) == al.getIdNonTerminal(k);
-						if (b1 & b2) {
-							a[j][k] = r.getProbability();
-							break; // we assume/require each rule to be unique
-						}
-					} // ri
+			a[j][j] = -1;
+		}
+		for (int ri = 0; ri < rules.size(); ri++) {
+			Rule r = rules.get(ri);
 
-				}
-			} // k
-		} // j
+			// Escape if not short rule to a non-terminal
+			if (r.getToLength() != 1 || al.isTerminal(r.getTo(0)) || al.isEmptyStringSymbol(r.getTo(0))) {
+				continue;
+			}
 
-		// Allocate vector b and populate it
-		double[] b = new double[n];
-		for (int j = 0; j < n; j++) {
-			b[j] = 0;
+			a[al.getIdx(r.getFrom())][al.getIdx(r.getTo(0))] += r.getProbability();
 		}
 
 		RealMatrix matA = new Array2DRowRealMatrix(a, false);
 		return new LUDecomposition(matA).getSolver();
 	}
 
-	private static double[] getDerivationsProbabilitiesVecB(ContextFreeGrammar cfg, int id) {
-
-		Alphabet al = cfg.getAlphabet();
+	private static double[] getDerivationsProbabilitiesVecB(Alphabet al, ArrayList<Rule> rules, int id) {
 
 		// Allocate b and set to zero
 		double[] b = new double[al.getNoofNonTerminals()];
-		for (int i = 0; i < b.length; i++) {
-			b[i] = 0;
-		}
 
 		// Loop rules
-		for (int i = 0; i < cfg.rules.size(); i++) {
-			Rule r = cfg.rules.get(i);
+		for (int i = 0; i < rules.size(); i++) {
+			Rule r = rules.get(i);
 
 			if (r.getToLength() != 1) {
 				continue;
 			}
 
 			if (r.getTo(0) == id) {
-				b[al.getIdNonTerminal(r.getFrom())] = -r.getProbability();
+				b[al.getIdx(r.getFrom())] -= r.getProbability();
 			}
 		}
 
 		return b;
 	}
 
+	/**
+	 * The probability that symbol {@code from} is replaced by symbol
+	 * {@code to} through zero or more short rules.
+	 */
+	private static double getDerivationProbability(Alphabet al, double[][] prDerivNonTerm, double[][] prDerivTerm,
+			int from, int to) {
+		double p = from == to ? 1 : 0;
+		if (al.isTerminal(from)) {
+			return p;
+		}
+		if (al.isTerminal(to)) {
+			return p + prDerivTerm[al.getIdx(to)][al.getIdx(from)];
+		}
+		return p + prDerivNonTerm[al.getIdx(to)][al.getIdx(from)];
+	}
+
 	private static double[] getErasablesProbabilities(ArrayList<Rule> rules, ArrayList<Integer> E) {
 
 		if (E.isEmpty()) {
 			return new double[0];
 		}
 
-		final int n = E.size();
-		final double[] C = new double[n];
-		final double[][] B = new double[n][n];
-		final double[][][] A = new double[n][n][n];
-
-		// First fill vector C
-		// C[i] contains the probability of erasing E.get(i) directly,
-		// Pr{ E.get(i) => e }
-		for (int i = 0; i < n; i++) {
-			C[i] = 0;
-			for (int j = 0; j < rules.size(); j++) {
-				Rule r = rules.get(j);
-				if (r.getFrom() == E.get(i) & r.getToLength() == 1 & r.getTo(0) == Alphabet.idEmptyString) {
-					C[i] = r.getProbability();
-					break;
+		// Position of each erasable in E
+		HashMap<Integer, Integer> idxE = new HashMap<>();
+		for (int i = 0; i < E.size(); i++) {
+			idxE.put(E.get(i), i);
+		}
+
+		// Only rules that can erase their left-hand side take part in the
+		// system; each such rule becomes a single term of the polynomial of
+		// its left-hand side:
+		// E_i -> e gives a constant, E_i -> E_j a linear term and
+		// E_i -> E_j E_k a quadratic term
+		ErasablesSolver solver = new ErasablesSolver(E.size());
+		for (int l = 0; l < rules.size(); l++) {
+			Rule r = rules.get(l);
+
+			Integer i = idxE.get(r.getFrom());
+			if (i == null) {
+				continue;
+			}
+
+			if (r.getToLength() == 1 && r.getTo(0) == Alphabet.idEmptyString) {
+				solver.addConstant(i, r.getProbability());
+
+			} else if (r.getToLength() == 1) {
+				Integer j = idxE.get(r.getTo(0));
+				if (j != null) {
+					solver.addLinear(i, j, r.getProbability());
+				}
+
+			} else if (r.getToLength() == 2) {
+				Integer j = idxE.get(r.getTo(0));
+				Integer k = idxE.get(r.getTo(1));
+				if (j != null && k != null) {
+					solver.addQuadratic(i, j, k, r.getProbability());
 				}
 			}
 		}
 
-		// Now fill matrix B
-		for (int i = 0; i < n; i++) {
-			for (int j = 0; j < n; j++) {
-				// B[i][j] contains the probability Pr{ E.get(i) => E.get(j) }
-				if (i == j) {
-					B[i][j] = -1; // Set to -1 instead of 0 to save having to do
-									// B = B - I at the end
-				} else {
-					for (int k = 0; k < rules.size(); k++) {
-						Rule r = rules.get(k);
-						if (r.getFrom() == E.get(i) & r.getToLength() == 1 & r.getTo(0) == E.get(j)) {
-							B[i][j] = r.getProbability();
-							break;
-						}
-					}
-				}
+		return solver.solve();
+	}
+
+	/**
+	 * Checks whether the start symbol appears on a right-hand side and has a
+	 * rule that can be reduced to a single non-terminal by erasing the other
+	 * symbols.
+	 */
+	private static boolean needsStartCopy(ArrayList<Rule> rules) {
+
+		boolean onRhs = false;
+		for (int i = 0; i < rules.size() && !onRhs; i++) {
+			Rule r = rules.get(i);
+			for (int j = 0; j < r.getToLength(); j++) {
+				onRhs |= r.getTo(j) == Alphabet.idStart;
 			}
 		}
+		if (!onRhs) {
+			return false;
+		}
 
-		// Now fill matrices A
-		for (int i = 0; i < n; i++) {
-			for (int j = 0; j < n; j++) {
-				for (int k = 0; k < n; k++) {
-					// A[i][j][k] contains the probability Pr{ E.get(i)
-					// =>
-					// E.get(j) E.get(k) }
-					A[i][j][k] = 0;
-					for (int l = 0; l < rules.size(); l++) {
-						Rule r = rules.get(l);
-						if (r.getFrom() == E.get(i) & r.getToLength() == 2
-								&& r.getTo(0) == E.get(j) & r.getTo(1) == E.get(k)) {
-							A[i][j][k] = r.getProbability();
-							break;
-						}
-					}
+		ArrayList<Integer> E = getErasables(rules);
+		for (int i = 0; i < rules.size(); i++) {
+			Rule r = rules.get(i);
+			if (r.getFrom() != Alphabet.idStart) {
+				continue;
+			}
+
+			// Symbols that cannot be erased, and erasable non-terminals
+			int noofKept = 0;
+			int noofErasable = 0;
+			boolean keptIsNonTerminal = false;
+			for (int j = 0; j < r.getToLength(); j++) {
+				int id = r.getTo(j);
+				if (id == Alphabet.idEmptyString) {
+					continue;
+				}
+				if (E.contains(id)) {
+					noofErasable++;
+				} else {
+					noofKept++;
+					keptIsNonTerminal = id < 0;
 				}
 			}
+			if (noofKept == 1 && keptIsNonTerminal || noofKept == 0 && noofErasable > 0) {
+				return true;
+			}
 		}
 
-		// Start working on solving
-
-		EmptyRulesCost erc = new EmptyRulesCost(n, A, B, C);
-		EmptyRulesJacobian erj = new EmptyRulesJacobian(n, A, B, C);
+		return false;
+	}
 
-		double[] zeros = new double[n];
-		double[] halves = new double[n];
-		for (int i = 0; i < n; i++) {
-			zeros[i] = 0;
-			halves[i] = 0.5;
+	private static Rule renameSymbol(Rule r, int id, int newId) {
+		int[] to = new int[r.getToLength()];
+		for (int j = 0; j < to.length; j++) {
+			to[j] = r.getTo(j) == id ? newId : r.getTo(j);
 		}
+		return new Rule(r.getFrom() == id ? newId : r.getFrom(), to, r.getProbability());
+	}
 
-		LeastSquaresBuilder lsb = new LeastSquaresBuilder();
-		lsb.model(erc, erj);
-		lsb.start(halves);
-		lsb.target(zeros);
-		lsb.maxEvaluations(1000);
-		lsb.maxIterations(1000);
-		LeastSquaresProblem lsp = lsb.build();
-
-		LevenbergMarquardtOptimizer lmOpt = new LevenbergMarquardtOptimizer();
-		Optimum o = lmOpt.optimize(lsp);
+	private static ArrayList<Integer> singleton(int id) {
+		ArrayList<Integer> l = new ArrayList<>();
+		l.add(id);
+		return l;
+	}
 
-		return o.getPoint().toArray();
+	private static int[] toIntArray(ArrayList<Integer> l) {
+		int[] a = new int[l.size()];
+		for (int i = 0; i < a.length; i++) {
+			a[i] = l.get(i);
+		}
+		return a;
 	}
 
+	/**
+	 * Flag of the binary grammar format; set when the grammar is in Chomsky
+	 * normal form.
+	 */
+	public static final int binaryFlagCompiled = 1;
+
+	private static final int binaryMagic = 0x50434647; // "PCFG"
+	private static final int binaryVersion = 2;
+
 }
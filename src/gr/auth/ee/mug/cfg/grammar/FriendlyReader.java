@@ -1,9 +1,5 @@
 package gr.auth.ee.mug.cfg.grammar;
 
-import java.io.BufferedReader;
-import java.io.File;
-import java.io.FileReader;
-
 public class FriendlyReader {
 
 	/**
@@ -72,38 +68,19 @@ public class FriendlyReader {
 
 	}
 
+	/**
+	 * Reads a grammar from a text file that contains the number of symbols,
+	 * the symbols (as in {@code addSymbols}), the number of rules and the
+	 * rules (as in {@code addRules}). The file is read by
+	 * {@code StreamingReader}, one line at a time.
+	 * 
+	 * @param filename
+	 *            The name of the file
+	 * @return A new {@code ContextFreeGrammar}
+	 * @throws Exception
+	 */
 	public static ContextFreeGrammar readGrammar(String filename) throws Exception {
-
-		File file = new File(filename);
-		FileReader fileReader = new FileReader(file);
-		BufferedReader bufferedReader = new BufferedReader(fileReader);
-		String s;
-
-		s = bufferedReader.readLine();
-		int len1 = Integer.parseInt(s);
-		String[] input1 = new String[len1];
-
-		for (int i = 0; i < len1; i++) {
-			input1[i] = bufferedReader.readLine();
-		}
-
-		s = bufferedReader.readLine();
-		int len2 = Integer.parseInt(s);
-		String[] input2 = new String[len2];
-
-		for (int i = 0; i < len2; i++) {
-			input2[i] = bufferedReader.readLine();
-		}
-
-		bufferedReader.close();
-		fileReader.close();
-
-		Alphabet A = new Alphabet();
-		addSymbols(A, input1);
-		ContextFreeGrammar G = new ContextFreeGrammar(A);
-		addRules(G, input2);
-
-		return G;
+		return StreamingReader.readGrammar(filename, null);
 	}
 
 }
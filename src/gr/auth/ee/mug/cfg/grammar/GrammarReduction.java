@@ -0,0 +1,277 @@
+package gr.auth.ee.mug.cfg.grammar;
+
+import java.util.ArrayList;
+
+/**
+ * Removes the useless symbols and rules of a {@code ContextFreeGrammar}: the
+ * non-terminals that cannot derive a string of terminals (non-generating), the
+ * non-terminals that cannot appear in a derivation from the start symbol
+ * (unreachable), and every rule that uses them. The parse trees of the reduced
+ * grammar are exactly the parse trees of the original one.<br>
+ * <br>
+ * Both passes run in time linear in the size of the grammar. Terminals keep
+ * their ids, so strings can be parsed with the reduced grammar unchanged;
+ * the remaining non-terminals are renumbered in their original order, and the
+ * maps between the old and new ids (of symbols and of rules) are kept.
+ *
+ * @author Vasileios Papapanagiotou
+ */
+public class GrammarReduction {
+
+	/**
+	 * The grammar that was passed to the constructor.
+	 */
+	public final ContextFreeGrammar original;
+
+	/**
+	 * The reduced grammar. Its alphabet contains all the terminals and the
+	 * useful non-terminals of the original alphabet; it has no rules if the
+	 * original grammar generates no string at all.
+	 */
+	public final ContextFreeGrammar reduced;
+
+	private final Alphabet originalAl;
+	private final Alphabet reducedAl;
+	private final int[] originalNonTerminalIdx;
+	private final int[] reducedNonTerminalIdx;
+	private final int[] originalRuleId;
+	private final int[] reducedRuleId;
+	private final boolean[] generating;
+	private final boolean[] reachable;
+
+	/**
+	 * Reduces a grammar.
+	 *
+	 * @param cfg
+	 *            A context-free grammar (it is not modified)
+	 */
+	public GrammarReduction(ContextFreeGrammar cfg) {
+		original = cfg;
+		Alphabet al = cfg.getAlphabet();
+		originalAl = al;
+		int n = al.getNoofNonTerminals();
+		int m = cfg.getNoofRules();
+
+		// For each non-terminal, the rules with it on the right-hand side (once
+		// per occurrence) and the rules with it on the left-hand side
+		ArrayList<ArrayList<Integer>> occurrences = new ArrayList<>(n);
+		ArrayList<ArrayList<Integer>> rulesFrom = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			occurrences.add(new ArrayList<Integer>());
+			rulesFrom.add(new ArrayList<Integer>());
+		}
+
+		// Number of non-terminal occurrences of each rule that are not known
+		// to be generating yet
+		int[] pending = new int[m];
+		for (int j = 0; j < m; j++) {
+			Rule r = cfg.getRule(j);
+			rulesFrom.get(al.getIdx(r.getFrom())).add(j);
+			for (int k = 0; k < r.getToLength(); k++) {
+				int id = r.getTo(k);
+				if (!al.isTerminal(id) && !al.isEmptyStringSymbol(id)) {
+					occurrences.get(al.getIdx(id)).add(j);
+					pending[j]++;
+				}
+			}
+		}
+
+		// Generating non-terminals: a rule with no pending occurrences makes
+		// its left-hand side generating
+		generating = new boolean[n];
+		int[] queue = new int[n];
+		int head = 0;
+		int tail = 0;
+		for (int j = 0; j < m; j++) {
+			int a = al.getIdx(cfg.getRule(j).getFrom());
+			if (pending[j] == 0 && !generating[a]) {
+				generating[a] = true;
+				queue[tail++] = a;
+			}
+		}
+		while (head < tail) {
+			ArrayList<Integer> rules = occurrences.get(queue[head++]);
+			for (int i = 0; i < rules.size(); i++) {
+				int j = rules.get(i);
+				int a = al.getIdx(cfg.getRule(j).getFrom());
+				if (--pending[j] == 0 && !generating[a]) {
+					generating[a] = true;
+					queue[tail++] = a;
+				}
+			}
+		}
+
+		// Reachable non-terminals, through the generating rules only
+		reachable = new boolean[n];
+		int s = al.getIdx(Alphabet.idStart);
+		head = 0;
+		tail = 0;
+		if (generating[s]) {
+			reachable[s] = true;
+			queue[tail++] = s;
+		}
+		while (head < tail) {
+			ArrayList<Integer> rules = rulesFrom.get(queue[head++]);
+			for (int i = 0; i < rules.size(); i++) {
+				Rule r = cfg.getRule(rules.get(i));
+				if (pending[rules.get(i)] != 0) {
+					continue;
+				}
+				for (int k = 0; k < r.getToLength(); k++) {
+					int id = r.getTo(k);
+					if (!al.isTerminal(id) && !al.isEmptyStringSymbol(id) && !reachable[al.getIdx(id)]) {
+						reachable[al.getIdx(id)] = true;
+						queue[tail++] = al.getIdx(id);
+					}
+				}
+			}
+		}
+
+		// Renumber the non-terminals; the start symbol is always kept
+		reducedNonTerminalIdx = new int[n];
+		int noofKept = 0;
+		for (int i = 0; i < n; i++) {
+			reducedNonTerminalIdx[i] = i == s || reachable[i] ? noofKept++ : -1;
+		}
+		originalNonTerminalIdx = new int[noofKept];
+		for (int i = 0; i < n; i++) {
+			if (reducedNonTerminalIdx[i] >= 0) {
+				originalNonTerminalIdx[reducedNonTerminalIdx[i]] = i;
+			}
+		}
+
+		// The reduced alphabet: same terminals, kept non-terminals
+		Alphabet A = al.newRestricted(originalNonTerminalIdx);
+
+		// The rules that only use kept symbols
+		reduced = new ContextFreeGrammar(A);
+		reducedAl = A;
+		reducedRuleId = new int[m];
+		ArrayList<Integer> kept = new ArrayList<>();
+		for (int j = 0; j < m; j++) {
+			Rule r = cfg.getRule(j);
+			if (pending[j] != 0 || !reachable[al.getIdx(r.getFrom())]) {
+				reducedRuleId[j] = noRuleId;
+				continue;
+			}
+			int[] to = new int[r.getToLength()];
+			for (int k = 0; k < to.length; k++) {
+				to[k] = getReducedId(r.getTo(k));
+			}
+			reducedRuleId[j] = kept.size();
+			kept.add(j);
+			reduced.addRule(Rule.newOwning(getReducedId(r.getFrom()), to, r.getProbability()));
+		}
+		originalRuleId = new int[kept.size()];
+		for (int j = 0; j < originalRuleId.length; j++) {
+			originalRuleId[j] = kept.get(j);
+		}
+
+		// Intermediate non-terminals stay after the source ones
+		if (cfg.getBinarisation() != null) {
+			int noofSource = 0;
+			for (int i = 0; i < noofKept; i++) {
+				if (!cfg.isIntermediate(al.getIdNonTerminal(originalNonTerminalIdx[i]))) {
+					noofSource++;
+				}
+			}
+			reduced.setBinarisation(cfg.getBinarisation(), noofSource);
+		}
+	}
+
+	/**
+	 * @return {@code false} if the original grammar generates no string at all
+	 */
+	public boolean canGenerate() {
+		return generating[originalAl.getIdx(Alphabet.idStart)];
+	}
+
+	/**
+	 * @return The number of non-terminals that were removed
+	 */
+	public int getNoofRemovedNonTerminals() {
+		return reducedNonTerminalIdx.length - originalNonTerminalIdx.length;
+	}
+
+	/**
+	 * @return The number of rules that were removed
+	 */
+	public int getNoofRemovedRules() {
+		return reducedRuleId.length - originalRuleId.length;
+	}
+
+	/**
+	 * @param id
+	 *            The id of a symbol of the reduced grammar
+	 * @return The id of the same symbol in the original grammar
+	 */
+	public int getOriginalId(int id) {
+		if (id >= 0) {
+			return id;
+		}
+		return originalAl.getIdNonTerminal(originalNonTerminalIdx[reducedAl.getIdx(id)]);
+	}
+
+	/**
+	 * @param id
+	 *            The id of a symbol of the original grammar
+	 * @return The id of the same symbol in the reduced grammar, or
+	 *         {@code noSymbolId} if it was removed
+	 */
+	public int getReducedId(int id) {
+		if (id >= 0) {
+			return id;
+		}
+		int idx = reducedNonTerminalIdx[originalAl.getIdx(id)];
+		return idx < 0 ? noSymbolId : reducedAl.getIdNonTerminal(idx);
+	}
+
+	/**
+	 * @param i
+	 *            The index of a rule of the reduced grammar
+	 * @return The index of the same rule in the original grammar
+	 */
+	public int getOriginalRuleId(int i) {
+		return originalRuleId[i];
+	}
+
+	/**
+	 * @param i
+	 *            The index of a rule of the original grammar
+	 * @return The index of the same rule in the reduced grammar, or
+	 *         {@code noRuleId} if it was removed
+	 */
+	public int getReducedRuleId(int i) {
+		return reducedRuleId[i];
+	}
+
+	/**
+	 * @param id
+	 *            The id of a non-terminal of the original grammar
+	 * @return If the non-terminal derives at least one string of terminals
+	 */
+	public boolean isGenerating(int id) {
+		return generating[originalAl.getIdx(id)];
+	}
+
+	/**
+	 * @param id
+	 *            The id of a non-terminal of the original grammar
+	 * @return If the non-terminal appears in at least one complete derivation
+	 *         from the start symbol
+	 */
+	public boolean isReachable(int id) {
+		return reachable[originalAl.getIdx(id)];
+	}
+
+	/**
+	 * Returned by {@code getReducedId} for removed symbols.
+	 */
+	public static final int noSymbolId = Integer.MIN_VALUE;
+
+	/**
+	 * Returned by {@code getReducedRuleId} for removed rules.
+	 */
+	public static final int noRuleId = -1;
+
+}
@@ -0,0 +1,446 @@
+package gr.auth.ee.mug.cfg.grammar;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.LUDecomposition;
+
+/**
+ * Keeps a grammar and its Chomsky normal form in step while the rule
+ * probabilities of the grammar change, without converting it again.<br>
+ * <br>
+ * A probability edit is followed through the provenance of the conversion
+ * (see {@code CNFProvenance}): the binarised rule that carries it, the
+ * probabilities of erasing (solved again only if the rule can erase its
+ * left-hand side), the affected unit rules, the matrix of short-rule
+ * derivation probabilities (a rank-one update, in time quadratic in the number
+ * of non-terminals instead of cubic) and, finally, only the rules of the
+ * converted grammar whose contributions depend on any of these.<br>
+ * <br>
+ * Structural changes (adding rules) may change the erasable symbols, the
+ * binarisation and the set of converted rules, so they convert the whole
+ * grammar again.
+ *
+ * @author Vasileios Papapanagiotou
+ */
+public class IncrementalCNF {
+
+	private ContextFreeGrammar source;
+	private final Binarisation binarisation;
+
+	// The converted grammar that edits update in place, and the copy of it
+	// handed out since the last edit; the copies share the source and
+	// binarised grammars of the provenance, which are copied before the next
+	// edit if shared is set
+	private ContextFreeGrammar cnf;
+	private ContextFreeGrammar snapshot;
+	private boolean shared = false;
+	private CNFProvenance provenance;
+	private ContextFreeGrammar binarised;
+	private Alphabet al;
+
+	// Binarised rule that carries the probability of each source rule
+	private int[] binarisedOfSource;
+
+	// Unit rules of each binarised rule, and unit rules that erase each
+	// erasable non-terminal
+	private ArrayList<ArrayList<Integer>> unitRulesOfBinarised;
+	private ArrayList<ArrayList<Integer>> unitRulesOfErasable;
+	private HashMap<Integer, Integer> idxE;
+	private ArrayList<Integer> E;
+
+	// Converted rules with a contribution of each binary unit rule, and
+	// converted rules whose shares read each row of the derivation matrices
+	private ArrayList<ArrayList<Integer>> rulesOfUnitRule;
+	private ArrayList<ArrayList<Integer>> rulesOfRow;
+
+	// Q[j][k] is the probability that the j-th non-terminal is replaced by the
+	// k-th one through zero or more short rules, and QT[j][t] the probability
+	// that it is replaced by the t-th terminal through one or more
+	private double[][] Q;
+	private double[][] QT;
+
+	private int noofRebuilds = 0;
+	private int noofRecomputedRules = 0;
+
+	/**
+	 * Equivalent to {@code IncrementalCNF(cfg, Binarisation.RIGHT)}.
+	 *
+	 * @param cfg
+	 *            A context-free grammar
+	 */
+	public IncrementalCNF(ContextFreeGrammar cfg) {
+		this(cfg, Binarisation.RIGHT);
+	}
+
+	/**
+	 * Converts a grammar to Chomsky normal form and prepares for incremental
+	 * updates.
+	 *
+	 * @param cfg
+	 *            A context-free grammar (it is copied, and the copy is the one
+	 *            that is edited)
+	 * @param binarisation
+	 *            The strategy used to replace long rules by binary ones
+	 */
+	public IncrementalCNF(ContextFreeGrammar cfg, Binarisation binarisation) {
+		source = cfg.clone();
+		this.binarisation = binarisation;
+		rebuild();
+	}
+
+	/**
+	 * @return The source grammar with all edits applied; it must not be
+	 *         modified directly, and the first edit after {@code getGrammar()}
+	 *         replaces it with a copy (the grammar handed out keeps it), so it
+	 *         should be taken again after edits
+	 */
+	public ContextFreeGrammar getSource() {
+		return source;
+	}
+
+	/**
+	 * @return The grammar in Chomsky normal form, with its provenance, as of
+	 *         the last edit; it is a copy that later edits leave unchanged
+	 *         (and that must not be modified directly)
+	 */
+	public ContextFreeGrammar getGrammar() {
+		if (snapshot == null) {
+			snapshot = cnf.clone();
+			shared = true;
+		}
+		return snapshot;
+	}
+
+	/**
+	 * @return The number of full conversions so far
+	 */
+	public int getNoofRebuilds() {
+		return noofRebuilds;
+	}
+
+	/**
+	 * @return The number of rules of the converted grammar that were
+	 *         recomputed by probability edits so far
+	 */
+	public int getNoofRecomputedRules() {
+		return noofRecomputedRules;
+	}
+
+	/**
+	 * Adds a rule to the source grammar and converts it again.
+	 *
+	 * @param rule
+	 *            The rule to be added
+	 */
+	public void addRule(Rule rule) {
+		if (shared) {
+			source = source.clone();
+		}
+		source.addRule(rule);
+		rebuild();
+	}
+
+	/**
+	 * Converts the source grammar again. Besides structural changes, this also
+	 * discards the rounding errors that many rank-one updates accumulate.
+	 */
+	public void rebuild() {
+
+		cnf = ContextFreeGrammar.chomskyNormal(source, binarisation);
+		snapshot = null;
+		shared = false;
+		provenance = cnf.getProvenance();
+		binarised = provenance.getBinarised();
+		al = binarised.getAlphabet();
+		noofRebuilds++;
+
+		int n = al.getNoofNonTerminals();
+
+		binarisedOfSource = new int[source.getNoofRules()];
+		for (int i = 0; i < binarised.getNoofRules(); i++) {
+			int origin = provenance.getBinarisedOrigin(i);
+			if (origin >= 0) {
+				binarisedOfSource[origin] = i;
+			}
+		}
+
+		E = new ArrayList<>();
+		idxE = new HashMap<>();
+		for (int i = 0; i < provenance.getNoofErasables(); i++) {
+			E.add(provenance.getErasable(i));
+			idxE.put(provenance.getErasable(i), i);
+		}
+
+		unitRulesOfBinarised = newLists(binarised.getNoofRules());
+		unitRulesOfErasable = newLists(E.size());
+		rulesOfUnitRule = newLists(provenance.getNoofUnitRules());
+		for (int u = 0; u < provenance.getNoofUnitRules(); u++) {
+			int b = provenance.getUnitOrigin(u);
+			unitRulesOfBinarised.get(b).add(u);
+			int erased = provenance.getUnitErased(u);
+			if (erased != -1) {
+				unitRulesOfErasable.get(idxE.get(binarised.getRule(b).getTo(erased))).add(u);
+			}
+		}
+
+		rulesOfRow = newLists(n);
+		for (int i = 0; i < cnf.getNoofRules(); i++) {
+			boolean lifted = cnf.getRule(i).getFrom() == Alphabet.idStart;
+			if (lifted) {
+				rulesOfRow.get(al.getIdx(Alphabet.idStart)).add(i);
+			}
+			for (int j = 0; j < provenance.getNoofContributions(i); j++) {
+				int u = provenance.getContribution(i, j);
+				rulesOfUnitRule.get(u).add(i);
+				Rule ur = provenance.getUnitRule(u);
+				for (int k = 0; k < 2; k++) {
+					if (!al.isTerminal(ur.getTo(k))) {
+						rulesOfRow.get(al.getIdx(ur.getTo(k))).add(i);
+					}
+				}
+			}
+		}
+
+		computeDerivations();
+	}
+
+	/**
+	 * Changes the probability of a rule of the source grammar and updates the
+	 * converted grammar.
+	 *
+	 * @param ruleId
+	 *            The index of the rule in the source grammar
+	 * @param pr
+	 *            The new probability
+	 */
+	public void setProbability(int ruleId, double pr) {
+
+		if (shared) {
+			source = source.clone();
+			binarised = binarised.clone();
+			provenance.setGrammars(source, binarised);
+			shared = false;
+		}
+		Rule r = source.getRule(ruleId);
+		source.setRule(ruleId, new Rule(r.getFrom(), toArray(r), pr));
+		snapshot = null;
+
+		int b = binarisedOfSource[ruleId];
+		Rule br = binarised.getRule(b);
+		binarised.setRule(b, new Rule(br.getFrom(), toArray(br), pr));
+
+		// Unit rules to update
+		ArrayList<Integer> changed = new ArrayList<>(unitRulesOfBinarised.get(b));
+
+		// Probabilities of erasing, if the rule can erase its left-hand side
+		if (isErasing(br)) {
+			double[] prE = binarised.getErasablesProbabilities(E);
+			for (int i = 0; i < prE.length; i++) {
+				if (prE[i] != provenance.getErasableProbability(i)) {
+					provenance.setErasableProbability(i, prE[i]);
+					changed.addAll(unitRulesOfErasable.get(i));
+				}
+			}
+		}
+
+		boolean[] dirtyRows = new boolean[al.getNoofNonTerminals()];
+		boolean[] dirtyRules = new boolean[cnf.getNoofRules()];
+
+		for (int i = 0; i < changed.size(); i++) {
+			int u = changed.get(i);
+			Rule ur = provenance.getUnitRule(u);
+			double p = binarised.getRule(provenance.getUnitOrigin(u)).getProbability();
+			int erased = provenance.getUnitErased(u);
+			if (erased != -1) {
+				Rule ub = binarised.getRule(provenance.getUnitOrigin(u));
+				p *= provenance.getErasableProbability(idxE.get(ub.getTo(erased)));
+			}
+			double delta = p - ur.getProbability();
+			if (delta == 0) {
+				continue;
+			}
+			provenance.setUnitRule(u, new Rule(ur.getFrom(), toArray(ur), p));
+
+			if (ur.getToLength() == 2) {
+				mark(rulesOfUnitRule.get(u), dirtyRules);
+			} else {
+				updateDerivations(ur.getFrom(), ur.getTo(0), delta, dirtyRows);
+			}
+		}
+
+		for (int k = 0; k < dirtyRows.length; k++) {
+			if (dirtyRows[k]) {
+				mark(rulesOfRow.get(k), dirtyRules);
+			}
+		}
+
+		for (int i = 0; i < dirtyRules.length; i++) {
+			if (dirtyRules[i]) {
+				recomputeRule(i);
+			}
+		}
+	}
+
+	private void computeDerivations() {
+
+		int n = al.getNoofNonTerminals();
+		int nt = al.getNoofTerminals();
+
+		// a = I - M, where M sums the short rules between non-terminals, and T
+		// sums the short rules from non-terminals to terminals
+		double[][] a = new double[n][n];
+		double[][] T = new double[n][nt];
+		for (int j = 0; j < n; j++) {
+			a[j][j] = 1;
+		}
+		for (int u = 0; u < provenance.getNoofUnitRules(); u++) {
+			Rule ur = provenance.getUnitRule(u);
+			if (ur.getToLength() != 1) {
+				continue;
+			}
+			int from = al.getIdx(ur.getFrom());
+			if (al.isTerminal(ur.getTo(0))) {
+				T[from][al.getIdx(ur.getTo(0))] += ur.getProbability();
+			} else {
+				a[from][al.getIdx(ur.getTo(0))] -= ur.getProbability();
+			}
+		}
+
+		Q = new LUDecomposition(new Array2DRowRealMatrix(a, false)).getSolver().getInverse().getData();
+		QT = new double[n][nt];
+		for (int j = 0; j < n; j++) {
+			for (int k = 0; k < n; k++) {
+				if (Q[j][k] != 0) {
+					for (int t = 0; t < nt; t++) {
+						QT[j][t] += Q[j][k] * T[k][t];
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Rank-one (Sherman-Morrison) update of the derivation matrices after the
+	 * probability of the short rules {@code from -> to} changed by
+	 * {@code delta}.
+	 */
+	private void updateDerivations(int from, int to, double delta, boolean[] dirtyRows) {
+
+		int n = Q.length;
+		int a = al.getIdx(from);
+
+		// Rows that can reach the changed rule
+		double[] col = new double[n];
+		for (int j = 0; j < n; j++) {
+			col[j] = Q[j][a];
+			dirtyRows[j] |= col[j] != 0;
+		}
+
+		if (al.isTerminal(to)) {
+			int t = al.getIdx(to);
+			for (int j = 0; j < n; j++) {
+				QT[j][t] += delta * col[j];
+			}
+			return;
+		}
+
+		int x = al.getIdx(to);
+		double denominator = 1 - delta * Q[x][a];
+		if (Math.abs(denominator) < minDenominator) {
+			computeDerivations();
+			for (int j = 0; j < n; j++) {
+				dirtyRows[j] = true;
+			}
+			return;
+		}
+
+		double c = delta / denominator;
+		double[] row = Q[x].clone();
+		double[] rowT = QT[x].clone();
+		for (int j = 0; j < n; j++) {
+			if (col[j] == 0) {
+				continue;
+			}
+			double cj = c * col[j];
+			for (int k = 0; k < n; k++) {
+				Q[j][k] += cj * row[k];
+			}
+			for (int t = 0; t < rowT.length; t++) {
+				QT[j][t] += cj * rowT[t];
+			}
+		}
+	}
+
+	/**
+	 * The probability that symbol {@code from} is replaced by symbol
+	 * {@code to} through zero or more short rules.
+	 */
+	private double getDerivationProbability(int from, int to) {
+		if (al.isTerminal(from)) {
+			return from == to ? 1 : 0;
+		}
+		if (al.isTerminal(to)) {
+			return QT[al.getIdx(from)][al.getIdx(to)];
+		}
+		return Q[al.getIdx(from)][al.getIdx(to)];
+	}
+
+	private void recomputeRule(int i) {
+		Rule r = cnf.getRule(i);
+		boolean lifted = r.getFrom() == Alphabet.idStart;
+		double p = 0;
+		for (int j = 0; j < provenance.getNoofContributions(i); j++) {
+			Rule ur = provenance.getUnitRule(provenance.getContribution(i, j));
+			double share = lifted ? getDerivationProbability(Alphabet.idStart, ur.getFrom()) : 1;
+			share *= ur.getProbability();
+			share *= getDerivationProbability(ur.getTo(0), r.getTo(0));
+			share *= getDerivationProbability(ur.getTo(1), r.getTo(1));
+			provenance.setShare(i, j, share);
+			p += share;
+		}
+		cnf.setRule(i, new Rule(r.getFrom(), toArray(r), p));
+		noofRecomputedRules++;
+	}
+
+	/**
+	 * @return If the binarised rule takes part in the probabilities of erasing
+	 */
+	private boolean isErasing(Rule r) {
+		if (!idxE.containsKey(r.getFrom())) {
+			return false;
+		}
+		for (int k = 0; k < r.getToLength(); k++) {
+			if (r.getTo(k) != Alphabet.idEmptyString && !idxE.containsKey(r.getTo(k))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static void mark(ArrayList<Integer> rules, boolean[] dirty) {
+		for (int i = 0; i < rules.size(); i++) {
+			dirty[rules.get(i)] = true;
+		}
+	}
+
+	private static ArrayList<ArrayList<Integer>> newLists(int n) {
+		ArrayList<ArrayList<Integer>> lists = new ArrayList<>(n);
+		for (int i = 0; i < n; i++) {
+			lists.add(new ArrayList<Integer>());
+		}
+		return lists;
+	}
+
+	private static int[] toArray(Rule r) {
+		int[] to = new int[r.getToLength()];
+		for (int k = 0; k < to.length; k++) {
+			to[k] = r.getTo(k);
+		}
+		return to;
+	}
+
+	private static final double minDenominator = 1e-8;
+
+}
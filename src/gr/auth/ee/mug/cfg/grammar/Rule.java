@@ -44,6 +44,25 @@ public class Rule {
 		this.pr = pr;
 	}
 
+	/**
+	 * Creates a new rule of the form A -> B1 B2 ... Bk, with or without a copy
+	 * of the right-hand side.
+	 * 
+	 * @param from
+	 *            The id of 'A' in the grammar's alphabet.
+	 * @param to
+	 *            The ids of 'B1', ..., 'Bk'
+	 * @param pr
+	 *            The probability of the rule
+	 * @param copy
+	 *            If {@code to} is cloned; if not, the rule owns it
+	 */
+	private Rule(int from, int[] to, double pr, boolean copy) {
+		this.from = from;
+		this.to = copy ? to.clone() : to;
+		this.pr = pr;
+	}
+
 	@Override
 	public Rule clone() {
 		return new Rule(from, to.clone(), pr);
@@ -80,6 +99,16 @@ public class Rule {
 		return true;
 	}
 
+	@Override
+	public int hashCode() {
+		// Consistent with equals: the probability is not taken into account
+		int h = from;
+		for (int i = 0; i < to.length; i++) {
+			h = 31 * h + to[i];
+		}
+		return h;
+	}
+
 	/**
 	 * @return The id of symbol A
 	 */
@@ -121,4 +150,22 @@ public class Rule {
 		return s + "\n";
 	}
 
+	/**
+	 * Creates a new rule that takes ownership of {@code to} instead of cloning
+	 * it. Used by the grammar loaders, which already build a fresh array for
+	 * each rule.
+	 * 
+	 * @param from
+	 *            The id of 'A' in the grammar's alphabet.
+	 * @param to
+	 *            An array of length k, where the i-th element is the id of 'Bi'
+	 *            in the grammar's alphabet; it must not be modified afterwards
+	 * @param pr
+	 *            The probability of the rule
+	 * @return The rule
+	 */
+	static Rule newOwning(int from, int[] to, double pr) {
+		return new Rule(from, to, pr, false);
+	}
+
 }
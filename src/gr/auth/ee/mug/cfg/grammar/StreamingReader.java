@@ -0,0 +1,296 @@
+package gr.auth.ee.mug.cfg.grammar;
+
+import java.io.BufferedReader;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+
+import gr.auth.ee.mug.cfg.tools.ProgressInterface;
+
+/**
+ * Reads grammars from text files one line at a time, building the symbols and
+ * the rules while reading. Only the grammar being built and the current line
+ * are kept in memory, and numbers are parsed in place, without splitting lines
+ * into intermediate arrays.<br>
+ * <br>
+ * Both text formats of the toolbox are supported: the one of
+ * {@code FriendlyReader.readGrammar} and the one of
+ * {@code ContextFreeGrammar.saveToFile}.
+ *
+ * @author Vasileios Papapanagiotou
+ */
+public class StreamingReader {
+
+	/**
+	 * Reads a grammar in the format of {@code FriendlyReader.readGrammar}: the
+	 * number of symbols, one line per symbol ({@code %i %s %s}), the number of
+	 * rules and one line per rule ({@code %f %s %s ...}).
+	 *
+	 * @param filename
+	 *            The name of the file
+	 * @param progress
+	 *            Receives the progress of the symbols and the rules (can be
+	 *            {@code null})
+	 * @return A new {@code ContextFreeGrammar}
+	 * @throws IOException
+	 *             If the file cannot be read or is malformed
+	 */
+	public static ContextFreeGrammar readGrammar(String filename, ProgressInterface progress) throws IOException {
+
+		LineScanner ls = new LineScanner(filename);
+		try {
+			// Symbols
+			Alphabet A = new Alphabet();
+			HashMap<String, Integer> symbolIds = new HashMap<>();
+			putSymbolId(A, symbolIds, A.getSymbol(Alphabet.idStart), Alphabet.idStart);
+			putSymbolId(A, symbolIds, A.getSymbol(Alphabet.idEmptyString), Alphabet.idEmptyString);
+
+			int len1 = ls.nextCount();
+			for (int i = 0; i < len1; i++) {
+				ls.nextLine();
+				boolean isTerminal = ls.nextInt() == 1;
+				String symbol = ls.next();
+				String description = ls.rest();
+				putSymbolId(A, symbolIds, symbol, A.addSymbol(symbol, isTerminal, description));
+				report(progress, taskSymbols, i + 1, len1);
+			}
+
+			// Rules
+			ContextFreeGrammar G = new ContextFreeGrammar(A);
+			int len2 = ls.nextCount();
+			for (int i = 0; i < len2; i++) {
+				ls.nextLine();
+				double p = ls.nextDouble();
+				int from = ls.nextSymbolId(symbolIds);
+				int to = 0;
+				while (ls.hasNext()) {
+					ls.push(to++, ls.nextSymbolId(symbolIds));
+				}
+				G.addRule(Rule.newOwning(from, ls.pushed(to), p));
+				report(progress, taskRules, i + 1, len2);
+			}
+
+			return G;
+		} finally {
+			ls.close();
+		}
+	}
+
+	/**
+	 * Reads a grammar in the format of {@code ContextFreeGrammar.saveToFile}.
+	 *
+	 * @param filename
+	 *            The name of the file
+	 * @param progress
+	 *            Receives the progress of the symbols and the rules (can be
+	 *            {@code null})
+	 * @return A new {@code ContextFreeGrammar}
+	 * @throws IOException
+	 *             If the file cannot be read or is malformed
+	 */
+	public static ContextFreeGrammar newFromFile(String filename, ProgressInterface progress) throws IOException {
+
+		LineScanner ls = new LineScanner(filename);
+		try {
+			// Symbols
+			Alphabet A = Alphabet.newAlphabetEmpty();
+
+			int len1 = ls.nextCount();
+			for (int i = 0; i < len1; i++) {
+				restoreSymbol(A, ls);
+				report(progress, taskSymbols, i + 1, -1);
+			}
+
+			int len2 = ls.nextCount();
+			for (int i = 0; i < len2; i++) {
+				restoreSymbol(A, ls);
+				report(progress, taskSymbols, len1 + i + 1, len1 + len2);
+			}
+
+			// Rules
+			ContextFreeGrammar cfg = new ContextFreeGrammar(A);
+			int len3 = ls.nextCount();
+			for (int i = 0; i < len3; i++) {
+				ls.nextLine();
+				double pr = ls.nextDouble();
+				int from = ls.nextInt();
+				int to = 0;
+				while (ls.hasNext()) {
+					ls.push(to++, ls.nextInt());
+				}
+				cfg.addRule(Rule.newOwning(from, ls.pushed(to), pr));
+				report(progress, taskRules, i + 1, len3);
+			}
+
+			return cfg;
+		} finally {
+			ls.close();
+		}
+	}
+
+	private static void putSymbolId(Alphabet A, HashMap<String, Integer> symbolIds, String symbol, int id) {
+		// Same precedence as Alphabet.findSymbolId: non-terminals first, then
+		// the first symbol that was added
+		Integer old = symbolIds.get(symbol);
+		if (old == null || A.isTerminal(old) && !A.isTerminal(id)) {
+			symbolIds.put(symbol, id);
+		}
+	}
+
+	private static void report(ProgressInterface progress, String task, long done, long total) {
+		if (progress != null && (done % progressStep == 0 || done == total)) {
+			progress.progress(task, done, total);
+		}
+	}
+
+	private static void restoreSymbol(Alphabet A, LineScanner ls) throws IOException {
+		ls.nextLine();
+		int id = ls.nextInt();
+		String symbol = ls.next();
+		String description = ls.rest();
+		if ("null".equals(description)) { // proper null restoration ("null"
+											// becomes null)
+			description = null;
+		}
+		A.restoreSymbol(id, symbol, description);
+	}
+
+	/**
+	 * Reads a file line by line and splits the current line into
+	 * space-separated tokens on demand.
+	 */
+	private static class LineScanner {
+
+		private final String filename;
+		private final BufferedReader bufferedReader;
+		private String line;
+		private int lineNo = 0;
+		private int pos;
+		private int[] buffer = new int[8];
+
+		public LineScanner(String filename) throws IOException {
+			this.filename = filename;
+			bufferedReader = new BufferedReader(new FileReader(filename), 1 << 16);
+		}
+
+		public void close() throws IOException {
+			bufferedReader.close();
+		}
+
+		public boolean hasNext() {
+			skipSpaces();
+			return pos < line.length();
+		}
+
+		public String next() throws IOException {
+			skipSpaces();
+			int start = pos;
+			while (pos < line.length() && line.charAt(pos) != ' ') {
+				pos++;
+			}
+			if (start == pos) {
+				throw error("unexpected end of line");
+			}
+			return line.substring(start, pos);
+		}
+
+		public int nextCount() throws IOException {
+			nextLine();
+			int n = nextInt();
+			if (n < 0) {
+				throw error("negative count");
+			}
+			return n;
+		}
+
+		public double nextDouble() throws IOException {
+			String s = next();
+			try {
+				return Double.parseDouble(s);
+			} catch (NumberFormatException e) {
+				throw error("'" + s + "' is not a number");
+			}
+		}
+
+		public int nextInt() throws IOException {
+			skipSpaces();
+			int start = pos;
+			boolean negative = false;
+			if (pos < line.length() && (line.charAt(pos) == '-' || line.charAt(pos) == '+')) {
+				negative = line.charAt(pos) == '-';
+				pos++;
+			}
+			long x = 0;
+			int digits = 0;
+			while (pos < line.length() && line.charAt(pos) != ' ') {
+				char c = line.charAt(pos++);
+				if (c < '0' || c > '9' || x > Integer.MAX_VALUE) {
+					throw error("'" + line.substring(start, pos) + "' is not an integer");
+				}
+				x = 10 * x + (c - '0');
+				digits++;
+			}
+			if (digits == 0 || x > (negative ? 1L + Integer.MAX_VALUE : Integer.MAX_VALUE)) {
+				throw error("'" + line.substring(start, pos) + "' is not an integer");
+			}
+			return (int) (negative ? -x : x);
+		}
+
+		public void nextLine() throws IOException {
+			line = bufferedReader.readLine();
+			lineNo++;
+			pos = 0;
+			if (line == null) {
+				throw error("unexpected end of file");
+			}
+		}
+
+		public int nextSymbolId(HashMap<String, Integer> symbolIds) throws IOException {
+			String s = next();
+			Integer id = symbolIds.get(s);
+			if (id == null) {
+				throw error("symbol '" + s + "' not found in alphabet");
+			}
+			return id;
+		}
+
+		/**
+		 * @return What follows the single space after the current token, or
+		 *         {@code null} if the line ends right after it
+		 */
+		public String rest() {
+			if (pos >= line.length()) {
+				return null;
+			}
+			return line.substring(pos + 1);
+		}
+
+		public void push(int i, int x) {
+			if (i == buffer.length) {
+				buffer = Arrays.copyOf(buffer, 2 * buffer.length);
+			}
+			buffer[i] = x;
+		}
+
+		public int[] pushed(int len) {
+			return Arrays.copyOf(buffer, len);
+		}
+
+		private IOException error(String message) {
+			return new IOException(filename + ":" + String.valueOf(lineNo) + ": " + message);
+		}
+
+		private void skipSpaces() {
+			while (pos < line.length() && line.charAt(pos) == ' ') {
+				pos++;
+			}
+		}
+
+	}
+
+	private static final long progressStep = 1 << 16;
+	private static final String taskRules = "rules";
+	private static final String taskSymbols = "symbols";
+
+}
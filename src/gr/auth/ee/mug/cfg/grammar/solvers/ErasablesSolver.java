@@ -0,0 +1,239 @@
+package gr.auth.ee.mug.cfg.grammar.solvers;
+
+import java.util.ArrayList;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.ArrayRealVector;
+import org.apache.commons.math3.linear.LUDecomposition;
+import org.apache.commons.math3.linear.RealVector;
+import org.apache.commons.math3.linear.SingularMatrixException;
+
+/**
+ * This class solves the monotone polynomial system that gives the probability
+ * of erasing for erasable non-terminals. This action is part of the function
+ * that transforms a context-free grammar to Chomsky normal form.<br>
+ * <br>
+ * The system is {@code x = f(x)}, where
+ * {@code f_i(x) = C[i] + sum B[i][j] x[j] + sum A[i][j][k] x[j] x[k]}, and only
+ * the non-zero coefficients are stored (one term per rule). The probabilities
+ * of erasing are the least non-negative fixed point of {@code f}, which is
+ * approached from {@code x = 0} by Kleene iteration, accelerated with Newton
+ * steps {@code x += (I - f'(x))^-1 (f(x) - x)} (Etessami and Yannakakis).
+ * Both kinds of step are monotone, so the iterates never overshoot the least
+ * fixed point.
+ *
+ * @author Vasileios Papapanagiotou
+ */
+public class ErasablesSolver {
+
+	/**
+	 * The default convergence tolerance (maximum absolute change of any
+	 * probability between two successive iterations).
+	 */
+	public static final double defaultTolerance = 1e-12;
+
+	/**
+	 * The default maximum number of iterations.
+	 */
+	public static final int defaultMaxIterations = 1000;
+
+	private final int n;
+	private final double tolerance;
+	private final int maxIterations;
+
+	private final double[] C;
+	private final ArrayList<int[]> linearIdx = new ArrayList<>();
+	private final ArrayList<Double> linearPr = new ArrayList<>();
+	private final ArrayList<int[]> quadraticIdx = new ArrayList<>();
+	private final ArrayList<Double> quadraticPr = new ArrayList<>();
+
+	private int noofIterations = 0;
+
+	/**
+	 * Creates a new solver with the default tolerance and maximum number of
+	 * iterations.
+	 *
+	 * @param n
+	 *            The number of erasable non-terminals
+	 */
+	public ErasablesSolver(int n) {
+		this(n, defaultTolerance, defaultMaxIterations);
+	}
+
+	/**
+	 * Creates a new solver.
+	 *
+	 * @param n
+	 *            The number of erasable non-terminals
+	 * @param tolerance
+	 *            Iterations stop when no probability changes by more than
+	 *            {@code tolerance}
+	 * @param maxIterations
+	 *            Iterations stop after {@code maxIterations} steps even if the
+	 *            tolerance has not been reached
+	 */
+	public ErasablesSolver(int n, double tolerance, int maxIterations) {
+		this.n = n;
+		this.tolerance = tolerance;
+		this.maxIterations = maxIterations;
+		C = new double[n];
+	}
+
+	/**
+	 * Adds a rule {@code E_i -> e}.
+	 *
+	 * @param i
+	 *            The index of the erasable
+	 * @param pr
+	 *            The probability of the rule
+	 */
+	public void addConstant(int i, double pr) {
+		C[i] += pr;
+	}
+
+	/**
+	 * Adds a rule {@code E_i -> E_j}.
+	 *
+	 * @param i
+	 *            The index of the erasable that is replaced
+	 * @param j
+	 *            The index of the erasable that replaces it
+	 * @param pr
+	 *            The probability of the rule
+	 */
+	public void addLinear(int i, int j, double pr) {
+		linearIdx.add(new int[] { i, j });
+		linearPr.add(pr);
+	}
+
+	/**
+	 * Adds a rule {@code E_i -> E_j E_k}.
+	 *
+	 * @param i
+	 *            The index of the erasable that is replaced
+	 * @param j
+	 *            The index of the first erasable that replaces it
+	 * @param k
+	 *            The index of the second erasable that replaces it
+	 * @param pr
+	 *            The probability of the rule
+	 */
+	public void addQuadratic(int i, int j, int k, double pr) {
+		quadraticIdx.add(new int[] { i, j, k });
+		quadraticPr.add(pr);
+	}
+
+	/**
+	 * @return The number of iterations performed by the last call to
+	 *         {@code solve}
+	 */
+	public int getNoofIterations() {
+		return noofIterations;
+	}
+
+	/**
+	 * Computes the least fixed point of the system.
+	 *
+	 * @return An array where the i-th element is the probability of erasing
+	 *         the i-th erasable
+	 */
+	public double[] solve() {
+
+		// Flatten the sparse terms once
+		final int nl = linearPr.size();
+		final int[] li = new int[nl];
+		final int[] lj = new int[nl];
+		final double[] lp = new double[nl];
+		for (int t = 0; t < nl; t++) {
+			li[t] = linearIdx.get(t)[0];
+			lj[t] = linearIdx.get(t)[1];
+			lp[t] = linearPr.get(t);
+		}
+		final int nq = quadraticPr.size();
+		final int[] qi = new int[nq];
+		final int[] qj = new int[nq];
+		final int[] qk = new int[nq];
+		final double[] qp = new double[nq];
+		for (int t = 0; t < nq; t++) {
+			qi[t] = quadraticIdx.get(t)[0];
+			qj[t] = quadraticIdx.get(t)[1];
+			qk[t] = quadraticIdx.get(t)[2];
+			qp[t] = quadraticPr.get(t);
+		}
+
+		double[] x = new double[n];
+		double[] fx = new double[n];
+
+		noofIterations = 0;
+		while (noofIterations < maxIterations) {
+			noofIterations++;
+
+			// fx = f(x)
+			System.arraycopy(C, 0, fx, 0, n);
+			for (int t = 0; t < nl; t++) {
+				fx[li[t]] += lp[t] * x[lj[t]];
+			}
+			for (int t = 0; t < nq; t++) {
+				fx[qi[t]] += qp[t] * x[qj[t]] * x[qk[t]];
+			}
+
+			// Newton step; fall back to the Kleene step x = f(x) if I - f'(x)
+			// is singular or the step leaves [0, 1]
+			double[] xn = newtonStep(x, fx, li, lj, lp, qi, qj, qk, qp);
+			if (xn == null) {
+				xn = fx.clone();
+			}
+
+			double delta = 0;
+			for (int i = 0; i < n; i++) {
+				delta = Math.max(delta, Math.abs(xn[i] - x[i]));
+			}
+			x = xn;
+
+			if (delta <= tolerance) {
+				break;
+			}
+		}
+
+		return x;
+	}
+
+	private double[] newtonStep(double[] x, double[] fx, int[] li, int[] lj, double[] lp, int[] qi, int[] qj,
+			int[] qk, double[] qp) {
+
+		// m = I - f'(x)
+		double[][] m = new double[n][n];
+		for (int i = 0; i < n; i++) {
+			m[i][i] = 1;
+		}
+		for (int t = 0; t < li.length; t++) {
+			m[li[t]][lj[t]] -= lp[t];
+		}
+		for (int t = 0; t < qi.length; t++) {
+			m[qi[t]][qj[t]] -= qp[t] * x[qk[t]];
+			m[qi[t]][qk[t]] -= qp[t] * x[qj[t]];
+		}
+
+		double[] r = new double[n];
+		for (int i = 0; i < n; i++) {
+			r[i] = fx[i] - x[i];
+		}
+
+		RealVector d;
+		try {
+			d = new LUDecomposition(new Array2DRowRealMatrix(m, false)).getSolver().solve(new ArrayRealVector(r, false));
+		} catch (SingularMatrixException ex) {
+			return null;
+		}
+
+		double[] xn = new double[n];
+		for (int i = 0; i < n; i++) {
+			xn[i] = x[i] + d.getEntry(i);
+			if (Double.isNaN(xn[i]) || xn[i] < x[i] - tolerance || xn[i] > 1 + tolerance) {
+				return null;
+			}
+		}
+		return xn;
+	}
+
+}
@@ -0,0 +1,321 @@
+package gr.auth.ee.mug.cfg.parsers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+
+import gr.auth.ee.mug.cfg.dottools.TreeNode;
+import gr.auth.ee.mug.cfg.grammar.ContextFreeGrammar;
+import gr.auth.ee.mug.cfg.parsers.cnfparser.CNFGrammarIndex;
+import gr.auth.ee.mug.cfg.parsers.cnfparser.CNFRecognizer;
+import gr.auth.ee.mug.cfg.parsers.cnfparser.CNFTreeMapper;
+import gr.auth.ee.mug.cfg.parsers.cnfparser.ChartWorkspace;
+import gr.auth.ee.mug.cfg.parsers.cnfparser.InsideOutside;
+import gr.auth.ee.mug.cfg.parsers.cnfparser.ViterbiParser;
+
+/**
+ * Parses many strings with one grammar. The grammar is prepared once: it is
+ * converted to Chomsky normal form if it is not already, and indexed. Every
+ * string is then recognised with {@code CNFRecognizer} and, if it is
+ * generated, parsed with {@code InsideOutside} (its probability) and
+ * {@code ViterbiParser} (its most probable tree), in the
+ * {@code ChartWorkspace} of the thread.<br>
+ * <br>
+ * If the grammar had to be converted, the best tree is the most probable tree
+ * of the converted grammar, mapped back to the given grammar with
+ * {@code CNFTreeMapper}. As with {@code CNFParser}, strings of one symbol are
+ * not recognised, since the rules in Chomsky normal form are binary.<br>
+ * <br>
+ * Strings are parsed on a fixed pool of threads, and the results are returned
+ * in the order of the strings. A batch parser can be used by several threads
+ * at once; {@code shutdown()} stops its pool.<br>
+ * <br>
+ * With a {@code ParseResultCache}, strings that were parsed before are not
+ * parsed again.
+ *
+ * @author Vasileios Papapanagiotou
+ */
+public class BatchParser {
+
+	/**
+	 * The grammar that was passed to the constructor.
+	 */
+	public final ContextFreeGrammar cfg;
+
+	/**
+	 * The grammar in Chomsky normal form that the strings are parsed with.
+	 */
+	public final ContextFreeGrammar cnf;
+
+	private final CNFGrammarIndex index;
+	private final CNFRecognizer recognizer;
+	private final CNFTreeMapper mapper;
+	private final int noofThreads;
+	private ExecutorService executor = null;
+	private boolean bestTree = true;
+	private ParseResultCache cache = null;
+	private String fingerprint = null;
+
+	/**
+	 * @param cfg
+	 *            A context-free grammar
+	 * @param noofThreads
+	 *            The number of threads that parse the strings
+	 */
+	public BatchParser(ContextFreeGrammar cfg, int noofThreads) {
+		this.cfg = cfg;
+		this.noofThreads = noofThreads;
+		if (cfg.isChomskyNormal()) {
+			cnf = cfg;
+			mapper = null;
+		} else {
+			cnf = ContextFreeGrammar.chomskyNormal(cfg);
+			mapper = new CNFTreeMapper(cnf);
+		}
+		index = new CNFGrammarIndex(cnf);
+		recognizer = new CNFRecognizer(index);
+	}
+
+	/**
+	 * @param bestTree
+	 *            If the most probable parse tree is built (by default it is)
+	 */
+	public void setBestTree(boolean bestTree) {
+		this.bestTree = bestTree;
+	}
+
+	/**
+	 * @param cache
+	 *            The cache that results are looked up in and stored to, or
+	 *            {@code null} for none; it can be shared with other parsers
+	 */
+	public synchronized void setCache(ParseResultCache cache) {
+		if (cache != null && fingerprint == null) {
+			fingerprint = cfg.fingerprint();
+		}
+		this.cache = cache;
+	}
+
+	/**
+	 * Parses a string in the calling thread.
+	 *
+	 * @param stringIDs
+	 *            The ids of the terminals of the string
+	 * @return The result
+	 */
+	public ParseResult parse(int[] stringIDs) {
+		return parse(stringIDs, bestTree);
+	}
+
+	/**
+	 * Parses a string in the calling thread.
+	 *
+	 * @param stringIDs
+	 *            The ids of the terminals of the string
+	 * @param bestTree
+	 *            If the most probable parse tree is built
+	 * @return The result
+	 */
+	public ParseResult parse(int[] stringIDs, boolean bestTree) {
+		return parse(stringIDs, bestTree, null);
+	}
+
+	/**
+	 * Parses a string in the calling thread, within a budget. The charts and
+	 * cells of the recognizer, of the inside pass and of the Viterbi parse are
+	 * all charged to it; if it is exceeded, the result says so.
+	 *
+	 * @param stringIDs
+	 *            The ids of the terminals of the string
+	 * @param bestTree
+	 *            If the most probable parse tree is built
+	 * @param budget
+	 *            The limits of the parse, or {@code null} for none
+	 * @return The result
+	 */
+	public ParseResult parse(int[] stringIDs, boolean bestTree, ParseBudget budget) {
+
+		ParseResultCache cache;
+		synchronized (this) {
+			cache = this.cache;
+		}
+		if (cache == null) {
+			return compute(stringIDs, bestTree, budget);
+		}
+		ParseResult cached = cache.get(fingerprint, stringIDs, bestTree);
+		if (cached != null) {
+			return new ParseResult(stringIDs, cached.recognised, cached.probability, cached.bestProbability,
+					bestTree ? cached.bestTree : null);
+		}
+		ParseResult result = compute(stringIDs, bestTree, budget);
+		cache.put(fingerprint, result);
+		return result;
+	}
+
+	private ParseResult compute(int[] stringIDs, boolean bestTree, ParseBudget budget) {
+		ChartWorkspace ws = ChartWorkspace.local();
+		try {
+			return compute(stringIDs, bestTree, budget, ws);
+		} finally {
+			// The result holds nothing of the chart
+			ws.trim();
+		}
+	}
+
+	private ParseResult compute(int[] stringIDs, boolean bestTree, ParseBudget budget, ChartWorkspace ws) {
+
+		boolean recognised = recognizer.canGenerate(stringIDs, ws, budget);
+		if (budget != null && budget.isExceeded()) {
+			return ParseResult.exceeded(stringIDs, budget);
+		}
+		if (!recognised) {
+			return new ParseResult(stringIDs, false, 0, 0, null);
+		}
+
+		double probability = new InsideOutside(index, stringIDs, ws, budget).probability;
+		ViterbiParser viterbi = new ViterbiParser(index, stringIDs, ws, budget);
+		if (budget != null && budget.isExceeded()) {
+			return ParseResult.exceeded(stringIDs, budget);
+		}
+		TreeNode tree = null;
+		if (bestTree && viterbi.probability > 0) {
+			tree = viterbi.getTreeRoot();
+			if (mapper != null) {
+				synchronized (mapper) {
+					tree = mapper.map(tree);
+				}
+			}
+		}
+		return new ParseResult(stringIDs, true, probability, viterbi.probability, tree, null,
+				budget == null ? 0 : budget.getNoofItems());
+	}
+
+	/**
+	 * Parses strings on the pool.
+	 *
+	 * @param strings
+	 *            The strings (arrays of terminal ids)
+	 * @return The results, in the order of the strings
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 *             If parsing failed in one of the threads
+	 */
+	public ParseResult[] parse(final int[][] strings) throws InterruptedException, ExecutionException {
+
+		final ParseResult[] results = new ParseResult[strings.length];
+		ArrayList<Future<Void>> futures = new ArrayList<>();
+		for (int b = 0; b < strings.length; b += blockSize) {
+			final int from = b;
+			final int until = Math.min(strings.length, b + blockSize);
+			futures.add(getExecutor().submit(new Callable<Void>() {
+				@Override
+				public Void call() {
+					for (int i = from; i < until; i++) {
+						results[i] = parse(strings[i]);
+					}
+					return null;
+				}
+			}));
+		}
+		for (int i = 0; i < futures.size(); i++) {
+			futures.get(i).get();
+		}
+		return results;
+	}
+
+	/**
+	 * Parses a stream of strings on the pool. Strings are read from
+	 * {@code strings} as results are taken, a few per thread ahead, so the
+	 * stream does not have to fit in memory.
+	 *
+	 * @param strings
+	 *            The strings (arrays of terminal ids)
+	 * @return The results, in the order of the strings; {@code next()} throws
+	 *         an {@code IllegalStateException} if parsing failed or the
+	 *         calling thread was interrupted
+	 */
+	public Iterator<ParseResult> parse(final Iterator<int[]> strings) {
+
+		return new Iterator<ParseResult>() {
+
+			private final ArrayDeque<Future<ParseResult>> pending = new ArrayDeque<>();
+
+			@Override
+			public boolean hasNext() {
+				fill();
+				return !pending.isEmpty();
+			}
+
+			@Override
+			public ParseResult next() {
+				fill();
+				if (pending.isEmpty()) {
+					throw new NoSuchElementException();
+				}
+				try {
+					return pending.poll().get();
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+					throw new IllegalStateException(e);
+				} catch (ExecutionException e) {
+					throw new IllegalStateException(e.getCause());
+				}
+			}
+
+			@Override
+			public void remove() {
+				throw new UnsupportedOperationException();
+			}
+
+			private void fill() {
+				while (pending.size() < noofThreads * aheadPerThread && strings.hasNext()) {
+					final int[] s = strings.next();
+					pending.add(getExecutor().submit(new Callable<ParseResult>() {
+						@Override
+						public ParseResult call() {
+							return parse(s);
+						}
+					}));
+				}
+			}
+
+		};
+	}
+
+	/**
+	 * Stops the threads of the pool. Strings that are being parsed are
+	 * interrupted; the parser can still parse in the calling thread.
+	 */
+	public synchronized void shutdown() {
+		if (executor != null) {
+			executor.shutdownNow();
+			executor = null;
+		}
+	}
+
+	private synchronized ExecutorService getExecutor() {
+		if (executor == null) {
+			executor = Executors.newFixedThreadPool(noofThreads, new ThreadFactory() {
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "BatchParser");
+					t.setDaemon(true);
+					return t;
+				}
+			});
+		}
+		return executor;
+	}
+
+	private static final int blockSize = 16;
+
+	private static final int aheadPerThread = 4;
+
+}
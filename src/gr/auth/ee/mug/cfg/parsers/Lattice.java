@@ -0,0 +1,157 @@
+package gr.auth.ee.mug.cfg.parsers;
+
+import java.util.Arrays;
+
+/**
+ * A word lattice: a directed acyclic graph whose edges are labelled with
+ * terminals and weights, standing for all the strings along its paths. Nodes
+ * are numbered {@code 0 .. getNoofNodes() - 1} in an order where every edge
+ * goes from a lower to a higher node; paths start at node 0 and end at the
+ * last node. The weight of a path is the product of the weights of its edges
+ * (e.g. the probabilities of a recogniser's candidates).<br>
+ * <br>
+ * A confusion network, with a list of candidates at each position, is the
+ * lattice whose edges all go from node i to node i + 1; a string is the
+ * confusion network with one candidate of weight 1 at each position.
+ *
+ * @author Vasileios Papapanagiotou
+ */
+public class Lattice {
+
+	private final int noofNodes;
+	private int[] from = new int[16];
+	private int[] to = new int[16];
+	private int[] terminal = new int[16];
+	private double[] weight = new double[16];
+	private int noofEdges = 0;
+
+	/**
+	 * Creates a lattice without edges.
+	 *
+	 * @param noofNodes
+	 *            The number of nodes, at least 1
+	 */
+	public Lattice(int noofNodes) {
+		if (noofNodes < 1) {
+			throw new IllegalArgumentException("A lattice needs at least one node");
+		}
+		this.noofNodes = noofNodes;
+	}
+
+	/**
+	 * Adds an edge.
+	 *
+	 * @param from
+	 *            The node the edge leaves
+	 * @param to
+	 *            The node the edge enters, greater than {@code from}
+	 * @param terminalId
+	 *            The id of the terminal of the edge
+	 * @param weight
+	 *            The weight of the edge
+	 * @throws IllegalArgumentException
+	 *             If the nodes are not in order or out of range
+	 */
+	public void addEdge(int from, int to, int terminalId, double weight) {
+		if (from < 0 || to >= noofNodes || from >= to) {
+			throw new IllegalArgumentException("Invalid edge " + from + " -> " + to);
+		}
+		if (noofEdges == this.from.length) {
+			int size = noofEdges * 2;
+			this.from = Arrays.copyOf(this.from, size);
+			this.to = Arrays.copyOf(this.to, size);
+			this.terminal = Arrays.copyOf(this.terminal, size);
+			this.weight = Arrays.copyOf(this.weight, size);
+		}
+		this.from[noofEdges] = from;
+		this.to[noofEdges] = to;
+		this.terminal[noofEdges] = terminalId;
+		this.weight[noofEdges] = weight;
+		noofEdges++;
+	}
+
+	/**
+	 * @return The number of nodes
+	 */
+	public int getNoofNodes() {
+		return noofNodes;
+	}
+
+	/**
+	 * @return The number of edges
+	 */
+	public int getNoofEdges() {
+		return noofEdges;
+	}
+
+	/**
+	 * @param e
+	 *            The index of an edge, in the order edges were added
+	 * @return The node the edge leaves
+	 */
+	public int getFrom(int e) {
+		return from[e];
+	}
+
+	/**
+	 * @param e
+	 *            The index of an edge, in the order edges were added
+	 * @return The node the edge enters
+	 */
+	public int getTo(int e) {
+		return to[e];
+	}
+
+	/**
+	 * @param e
+	 *            The index of an edge, in the order edges were added
+	 * @return The id of the terminal of the edge
+	 */
+	public int getTerminal(int e) {
+		return terminal[e];
+	}
+
+	/**
+	 * @param e
+	 *            The index of an edge, in the order edges were added
+	 * @return The weight of the edge
+	 */
+	public double getWeight(int e) {
+		return weight[e];
+	}
+
+	/**
+	 * Creates the lattice of a single string, with weights 1.
+	 *
+	 * @param stringIDs
+	 *            The ids of the terminals of the string
+	 * @return The lattice
+	 */
+	public static Lattice newFromString(int[] stringIDs) {
+		Lattice lattice = new Lattice(stringIDs.length + 1);
+		for (int i = 0; i < stringIDs.length; i++) {
+			lattice.addEdge(i, i + 1, stringIDs[i], 1);
+		}
+		return lattice;
+	}
+
+	/**
+	 * Creates a confusion network.
+	 *
+	 * @param terminalIds
+	 *            For every position, the ids of its candidate terminals
+	 * @param weights
+	 *            For every position, the weights of its candidates
+	 * @return The lattice
+	 */
+	public static Lattice newConfusionNetwork(int[][] terminalIds, double[][] weights) {
+		Lattice lattice = new Lattice(terminalIds.length + 1);
+		for (int i = 0; i < terminalIds.length; i++) {
+			for (int k = 0; k < terminalIds[i].length; k++) {
+				lattice.addEdge(i, i + 1, terminalIds[i][k], weights[i][k]);
+			}
+		}
+		return lattice;
+	}
+
+}
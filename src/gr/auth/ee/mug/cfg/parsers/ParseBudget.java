@@ -0,0 +1,179 @@
+package gr.auth.ee.mug.cfg.parsers;
+
+/**
+ * The limits of one parse: a maximum amount of work (items), a wall-clock
+ * deadline and a cancellation flag that another thread can raise. A parser
+ * given a budget charges its work to it in its inner loops, and stops as soon
+ * as the budget is exceeded, with the result it has so far marked as
+ * incomplete.<br>
+ * <br>
+ * The item parsers charge every item they create. The chart algorithms charge
+ * the entries of their chart (cells times symbols) before they allocate it,
+ * so that a chart too large for the budget is never allocated, and then one
+ * item per cell they fill; for them the maximum bounds memory as well as
+ * time.<br>
+ * <br>
+ * A budget is exceeded for good, and counts the work of every parse it is
+ * given to, so a budget shared by several parses limits them together; only
+ * {@code cancel()} may be called while another thread charges it.
+ *
+ * @author Vasileios Papapanagiotou
+ */
+public class ParseBudget {
+
+	/**
+	 * The limits a budget can exceed.
+	 */
+	public enum Limit {
+
+		/**
+		 * The maximum number of items, or a chart too large to allocate.
+		 */
+		ITEMS,
+
+		/**
+		 * The deadline.
+		 */
+		DEADLINE,
+
+		/**
+		 * The budget was cancelled.
+		 */
+		CANCELLED
+
+	}
+
+	private final long maxItems;
+	private final long deadline;
+	private volatile boolean cancelled = false;
+	private volatile Limit exceeded = null;
+	private long noofItems = 0;
+	private int noofCharges = 0;
+	private long noofItemsAtCheck = 0;
+
+	/**
+	 * Creates a budget without limits, which can only be cancelled.
+	 */
+	public ParseBudget() {
+		this(Long.MAX_VALUE, Long.MAX_VALUE);
+	}
+
+	/**
+	 * @param maxItems
+	 *            The maximum number of items
+	 * @param deadline
+	 *            The time (as given by {@code System.currentTimeMillis}) by
+	 *            which the parse must end
+	 */
+	public ParseBudget(long maxItems, long deadline) {
+		this.maxItems = maxItems;
+		this.deadline = deadline;
+	}
+
+	/**
+	 * Creates a budget whose deadline is some time from now.
+	 *
+	 * @param maxItems
+	 *            The maximum number of items
+	 * @param timeout
+	 *            The time in milliseconds the parse may take
+	 * @return The budget
+	 */
+	public static ParseBudget withTimeout(long maxItems, long timeout) {
+		return new ParseBudget(maxItems, System.currentTimeMillis() + timeout);
+	}
+
+	/**
+	 * Cancels the budget; the parse that uses it stops at its next check. It
+	 * can be called from any thread.
+	 */
+	public void cancel() {
+		cancelled = true;
+	}
+
+	/**
+	 * Charges work to the budget. The clock and the cancellation flag are
+	 * looked at once every few charges, or every few thousand items, so a call
+	 * is cheap enough for inner loops.
+	 *
+	 * @param items
+	 *            The number of items created since the last charge
+	 *            (may be 0, to only check the clock)
+	 * @return {@code true} if the parse can go on, {@code false} if the budget
+	 *         is exceeded
+	 */
+	public boolean charge(long items) {
+		if (exceeded != null) {
+			return false;
+		}
+		noofItems += items;
+		if (noofItems > maxItems) {
+			exceeded = Limit.ITEMS;
+			return false;
+		}
+		if ((++noofCharges & checkMask) == 0 || noofItems - noofItemsAtCheck >= checkItems) {
+			noofItemsAtCheck = noofItems;
+			return check();
+		}
+		return true;
+	}
+
+	/**
+	 * Exceeds the maximum number of items, whatever it is, for work that
+	 * cannot be done at all (such as a chart larger than an array can hold).
+	 */
+	public void exceedItems() {
+		if (exceeded == null) {
+			exceeded = Limit.ITEMS;
+		}
+	}
+
+	/**
+	 * Looks at the clock and the cancellation flag now, without charging any
+	 * work.
+	 *
+	 * @return {@code true} if the parse can go on, {@code false} if the budget
+	 *         is exceeded
+	 */
+	public boolean check() {
+		if (exceeded != null) {
+			return false;
+		}
+		if (cancelled) {
+			exceeded = Limit.CANCELLED;
+			return false;
+		}
+		if (System.currentTimeMillis() > deadline) {
+			exceeded = Limit.DEADLINE;
+			return false;
+		}
+		return true;
+	}
+
+	/**
+	 * @return The limit that was exceeded, or {@code null} if none was
+	 */
+	public Limit getExceeded() {
+		return exceeded;
+	}
+
+	/**
+	 * @return If a limit was exceeded
+	 */
+	public boolean isExceeded() {
+		return exceeded != null;
+	}
+
+	/**
+	 * @return The number of items charged so far
+	 */
+	public long getNoofItems() {
+		return noofItems;
+	}
+
+	// The clock is read once every checkMask + 1 charges, or checkItems items
+	private static final int checkMask = 63;
+
+	private static final long checkItems = 4096;
+
+}
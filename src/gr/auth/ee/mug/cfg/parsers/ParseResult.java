@@ -0,0 +1,117 @@
+package gr.auth.ee.mug.cfg.parsers;
+
+import gr.auth.ee.mug.cfg.dottools.TreeNode;
+
+/**
+ * The result of parsing one string: whether the grammar generates it, its
+ * probability and its most probable parse tree.
+ *
+ * @author Vasileios Papapanagiotou
+ */
+public class ParseResult {
+
+	/**
+	 * The string that was parsed.
+	 */
+	public final int[] stringIDs;
+
+	/**
+	 * If the grammar can generate the string.
+	 */
+	public final boolean recognised;
+
+	/**
+	 * The total probability of all the parse trees of the string.
+	 */
+	public final double probability;
+
+	/**
+	 * The probability of the most probable parse tree.
+	 */
+	public final double bestProbability;
+
+	/**
+	 * The most probable parse tree, or {@code null} if the string was not
+	 * recognised or the tree was not asked for.
+	 */
+	public final TreeNode bestTree;
+
+	/**
+	 * The limit of the budget that stopped parsing, or {@code null} if the
+	 * string was parsed to the end; if it is not {@code null}, the other fields
+	 * are those of a string that was not recognised.
+	 */
+	public final ParseBudget.Limit exceeded;
+
+	/**
+	 * The number of items charged to the budget of the parse, or zero if it
+	 * had none.
+	 */
+	public final long noofItems;
+
+	/**
+	 * @param stringIDs
+	 *            The string that was parsed
+	 * @param recognised
+	 *            If the grammar can generate the string
+	 * @param probability
+	 *            The total probability of the parse trees
+	 * @param bestProbability
+	 *            The probability of the most probable parse tree
+	 * @param bestTree
+	 *            The most probable parse tree, or {@code null}
+	 */
+	public ParseResult(int[] stringIDs, boolean recognised, double probability, double bestProbability,
+			TreeNode bestTree) {
+		this(stringIDs, recognised, probability, bestProbability, bestTree, null, 0);
+	}
+
+	/**
+	 * @param stringIDs
+	 *            The string that was parsed
+	 * @param recognised
+	 *            If the grammar can generate the string
+	 * @param probability
+	 *            The total probability of the parse trees
+	 * @param bestProbability
+	 *            The probability of the most probable parse tree
+	 * @param bestTree
+	 *            The most probable parse tree, or {@code null}
+	 * @param exceeded
+	 *            The limit of the budget that stopped parsing, or {@code null}
+	 * @param noofItems
+	 *            The number of items charged to the budget
+	 */
+	public ParseResult(int[] stringIDs, boolean recognised, double probability, double bestProbability,
+			TreeNode bestTree, ParseBudget.Limit exceeded, long noofItems) {
+		this.stringIDs = stringIDs;
+		this.recognised = recognised;
+		this.probability = probability;
+		this.bestProbability = bestProbability;
+		this.bestTree = bestTree;
+		this.exceeded = exceeded;
+		this.noofItems = noofItems;
+	}
+
+	/**
+	 * Creates the result of a parse that was stopped by its budget.
+	 *
+	 * @param stringIDs
+	 *            The string that was parsed
+	 * @param budget
+	 *            The exceeded budget
+	 * @return The result
+	 */
+	public static ParseResult exceeded(int[] stringIDs, ParseBudget budget) {
+		return new ParseResult(stringIDs, false, 0, 0, null, budget.getExceeded(), budget.getNoofItems());
+	}
+
+	@Override
+	public String toString() {
+		if (exceeded != null) {
+			return "budget exceeded (" + exceeded + ", " + noofItems + " items)";
+		}
+		return recognised ? String.valueOf(probability) : "not recognised";
+	}
+
+}
@@ -0,0 +1,200 @@
+package gr.auth.ee.mug.cfg.parsers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import gr.auth.ee.mug.cfg.dottools.TreeNode;
+
+/**
+ * An in-memory cache of parse results, keyed by the fingerprint of a grammar
+ * (see {@code ContextFreeGrammar.fingerprint}) and a string, so one cache can
+ * serve several grammars.<br>
+ * <br>
+ * The cache is bounded by weight: an entry weighs one unit plus one per
+ * symbol of its string and one per node of its tree, roughly the number of
+ * objects it holds. When the total weight exceeds the maximum, the least
+ * recently used entries are evicted. Results of parses stopped by a budget
+ * are not stored. Cached trees are shared by all the lookups that return
+ * them, and must not be modified. A cache can be used by several threads at
+ * once.
+ *
+ * @author Vasileios Papapanagiotou
+ */
+public class ParseResultCache {
+
+	private final long maxWeight;
+	private final LinkedHashMap<Key, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+	private long weight = 0;
+	private long noofHits = 0;
+	private long noofMisses = 0;
+	private long noofEvictions = 0;
+
+	/**
+	 * @param maxWeight
+	 *            The maximum total weight of the entries
+	 */
+	public ParseResultCache(long maxWeight) {
+		this.maxWeight = maxWeight;
+	}
+
+	/**
+	 * Looks up the result of a string. A result without a tree does not
+	 * answer a lookup that needs one, and counts as a miss.
+	 *
+	 * @param fingerprint
+	 *            The fingerprint of the grammar
+	 * @param stringIDs
+	 *            The ids of the terminals of the string
+	 * @param bestTree
+	 *            If the result must hold the most probable parse tree
+	 * @return The cached result, or {@code null} if there is none
+	 */
+	public synchronized ParseResult get(String fingerprint, int[] stringIDs, boolean bestTree) {
+		Entry e = entries.get(new Key(fingerprint, stringIDs));
+		if (e == null || (bestTree && e.result.recognised && e.result.bestTree == null)) {
+			noofMisses++;
+			return null;
+		}
+		noofHits++;
+		return e.result;
+	}
+
+	/**
+	 * Stores the result of a string, replacing any previous one, and evicts
+	 * the least recently used entries if the cache is too heavy. Results of
+	 * parses stopped by a budget are ignored.
+	 *
+	 * @param fingerprint
+	 *            The fingerprint of the grammar
+	 * @param result
+	 *            The result
+	 */
+	public void put(String fingerprint, ParseResult result) {
+		if (result.exceeded != null) {
+			return;
+		}
+		// The string is copied, since the caller may reuse its array
+		Key key = new Key(fingerprint, result.stringIDs.clone());
+		long w = 1 + result.stringIDs.length + (result.bestTree == null ? 0 : countNodes(result.bestTree));
+		if (w > maxWeight) {
+			return;
+		}
+		synchronized (this) {
+			Entry old = entries.put(key, new Entry(result, w));
+			if (old != null) {
+				weight -= old.weight;
+			}
+			weight += w;
+			Iterator<Entry> it = entries.values().iterator();
+			while (weight > maxWeight) {
+				weight -= it.next().weight;
+				it.remove();
+				noofEvictions++;
+			}
+		}
+	}
+
+	/**
+	 * Removes all the entries; the counters are kept.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		weight = 0;
+	}
+
+	/**
+	 * @return The number of entries
+	 */
+	public synchronized int getSize() {
+		return entries.size();
+	}
+
+	/**
+	 * @return The total weight of the entries
+	 */
+	public synchronized long getWeight() {
+		return weight;
+	}
+
+	/**
+	 * @return The number of lookups that were answered
+	 */
+	public synchronized long getNoofHits() {
+		return noofHits;
+	}
+
+	/**
+	 * @return The number of lookups that were not answered
+	 */
+	public synchronized long getNoofMisses() {
+		return noofMisses;
+	}
+
+	/**
+	 * @return The number of entries evicted to respect the maximum weight
+	 */
+	public synchronized long getNoofEvictions() {
+		return noofEvictions;
+	}
+
+	private static long countNodes(TreeNode root) {
+		long count = 0;
+		ArrayList<TreeNode> stack = new ArrayList<>();
+		stack.add(root);
+		while (!stack.isEmpty()) {
+			TreeNode node = stack.remove(stack.size() - 1);
+			count++;
+			stack.addAll(node.children);
+		}
+		return count;
+	}
+
+	/**
+	 * A grammar fingerprint and a string.
+	 */
+	private static class Key {
+
+		final String fingerprint;
+		final int[] stringIDs;
+		final int hash;
+
+		Key(String fingerprint, int[] stringIDs) {
+			this.fingerprint = fingerprint;
+			this.stringIDs = stringIDs;
+			hash = 31 * fingerprint.hashCode() + Arrays.hashCode(stringIDs);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object o) {
+			if (!(o instanceof Key)) {
+				return false;
+			}
+			Key k = (Key) o;
+			return hash == k.hash && Arrays.equals(stringIDs, k.stringIDs) && fingerprint.equals(k.fingerprint);
+		}
+
+	}
+
+	/**
+	 * A cached result with its weight.
+	 */
+	private static class Entry {
+
+		final ParseResult result;
+		final long weight;
+
+		Entry(ParseResult result, long weight) {
+			this.result = result;
+			this.weight = weight;
+		}
+
+	}
+
+}
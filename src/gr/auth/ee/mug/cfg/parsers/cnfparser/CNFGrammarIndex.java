@@ -0,0 +1,122 @@
+package gr.auth.ee.mug.cfg.parsers.cnfparser;
+
+import gr.auth.ee.mug.cfg.grammar.Alphabet;
+import gr.auth.ee.mug.cfg.grammar.ContextFreeGrammar;
+import gr.auth.ee.mug.cfg.grammar.Rule;
+
+/**
+ * The rules of a grammar in Chomsky normal form, stored column-wise and
+ * grouped by the left symbol of their right-hand side, for chart algorithms
+ * that work on symbol scores instead of individual parse trees.<br>
+ * <br>
+ * Symbols are addressed by <i>keys</i>: the non-terminals take keys
+ * {@code 0 .. getNoofNonTerminals() - 1} (their indices) and the terminals the
+ * keys that follow.
+ *
+ * @author Vasileios Papapanagiotou
+ */
+public class CNFGrammarIndex {
+
+	/**
+	 * The grammar that was passed to the constructor.
+	 */
+	public final ContextFreeGrammar cfg;
+
+	final Alphabet al;
+	final int noofNonTerminals;
+	final int noofKeys;
+
+	// Rule columns (keys of the symbols, probabilities)
+	final int[] from;
+	final int[] left;
+	final int[] right;
+	final double[] pr;
+
+	// Rule ids grouped by left key: byLeft[leftStart[b] .. leftStart[b + 1])
+	final int[] leftStart;
+	final int[] byLeft;
+
+	/**
+	 * Indexes the rules of a grammar.
+	 *
+	 * @param cfg
+	 *            A context-free grammar in Chomsky normal form
+	 * @throws IllegalArgumentException
+	 *             If the grammar is not in Chomsky normal form
+	 */
+	public CNFGrammarIndex(ContextFreeGrammar cfg) {
+		if (!cfg.isChomskyNormal()) {
+			throw new IllegalArgumentException("The grammar is not in Chomsky normal form");
+		}
+		this.cfg = cfg;
+		al = cfg.getAlphabet();
+		noofNonTerminals = al.getNoofNonTerminals();
+		noofKeys = noofNonTerminals + al.getNoofTerminals();
+
+		int m = cfg.getNoofRules();
+		from = new int[m];
+		left = new int[m];
+		right = new int[m];
+		pr = new double[m];
+		leftStart = new int[noofKeys + 1];
+		for (int i = 0; i < m; i++) {
+			Rule r = cfg.getRule(i);
+			from[i] = getKey(r.getFrom());
+			left[i] = getKey(r.getTo(0));
+			right[i] = getKey(r.getTo(1));
+			pr[i] = r.getProbability();
+			leftStart[left[i] + 1]++;
+		}
+
+		// Counting sort by left key
+		for (int b = 0; b < noofKeys; b++) {
+			leftStart[b + 1] += leftStart[b];
+		}
+		byLeft = new int[m];
+		int[] next = leftStart.clone();
+		for (int i = 0; i < m; i++) {
+			byLeft[next[left[i]]++] = i;
+		}
+	}
+
+	/**
+	 * @param id
+	 *            The id of a symbol of the grammar
+	 * @return The key of the symbol
+	 */
+	public int getKey(int id) {
+		return al.isTerminal(id) ? noofNonTerminals + al.getIdx(id) : al.getIdx(id);
+	}
+
+	/**
+	 * @param key
+	 *            The key of a symbol
+	 * @return The id of the symbol
+	 */
+	public int getId(int key) {
+		return key < noofNonTerminals ? al.getIdNonTerminal(key) : al.getIdTerminal(key - noofNonTerminals);
+	}
+
+	/**
+	 * @return The number of symbol keys
+	 */
+	public int getNoofKeys() {
+		return noofKeys;
+	}
+
+	/**
+	 * @return The number of non-terminals (the keys below it are
+	 *         non-terminals)
+	 */
+	public int getNoofNonTerminals() {
+		return noofNonTerminals;
+	}
+
+	/**
+	 * @return The number of rules
+	 */
+	public int getNoofRules() {
+		return pr.length;
+	}
+
+}
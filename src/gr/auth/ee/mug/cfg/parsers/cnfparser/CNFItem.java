@@ -14,8 +14,8 @@ import gr.auth.ee.mug.cfg.parsers.ParserItemInterface;
 public class CNFItem implements ParserItemInterface {
 
 	/**
-	 * A unique id for each {@code CNFItem} object (for the java process). It is
-	 * used to ease the effort of creating a DOT plot.
+	 * A unique id for each {@code CNFItem} object of a parse, given by the
+	 * parser. It is used to ease the effort of creating a DOT plot.
 	 */
 	public final long id;
 
@@ -46,8 +46,9 @@ public class CNFItem implements ParserItemInterface {
 
 	/**
 	 * Create a new entry. All other parameters are set to defaults, however
-	 * this is NOT equivalent to {@code new CNFItem(symbolID, -1, -1, -1, -1)}, as
-	 * the {@code id} attribute is set to {@code -1}.
+	 * this is NOT equivalent to
+	 * {@code new CNFItem(id, symbolID, -1, -1, -1, -1)}, as the {@code id}
+	 * attribute is set to {@code -1}.
 	 * 
 	 * @param symbolID
 	 *            The symbol's is of the {@code CNFItem}
@@ -58,12 +59,14 @@ public class CNFItem implements ParserItemInterface {
 		li3 = -1;
 		ri3 = -1;
 		ruleID = -1;
-		id = -1; // maxID++;
+		id = -1;
 	}
 
 	/**
 	 * Create a new entry.
 	 * 
+	 * @param id
+	 *            The id of the entry, unique within the parse
 	 * @param symbolID
 	 *            The symbol's id of the {@code CNFItem}
 	 * @param k
@@ -75,13 +78,13 @@ public class CNFItem implements ParserItemInterface {
 	 * @param ruleID
 	 *            The index of the rule in the rules of the grammar
 	 */
-	public CNFItem(int symbolID, int k, int li3, int ri3, int ruleID) {
+	public CNFItem(long id, int symbolID, int k, int li3, int ri3, int ruleID) {
+		this.id = id;
 		this.symbolID = symbolID;
 		this.k = k;
 		this.li3 = li3;
 		this.ri3 = ri3;
 		this.ruleID = ruleID;
-		id = maxID++;
 	}
 
 	@Override
@@ -120,6 +123,4 @@ public class CNFItem implements ParserItemInterface {
 		return String.valueOf(symbolID);
 	}
 
-	private static long maxID = 0;
-
 }
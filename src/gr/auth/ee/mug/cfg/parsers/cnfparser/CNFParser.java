@@ -6,6 +6,7 @@ import gr.auth.ee.mug.cfg.dottools.TreeNode;
 import gr.auth.ee.mug.cfg.grammar.Alphabet;
 import gr.auth.ee.mug.cfg.grammar.ContextFreeGrammar;
 import gr.auth.ee.mug.cfg.grammar.Rule;
+import gr.auth.ee.mug.cfg.parsers.ParseBudget;
 import gr.auth.ee.mug.cfg.parsers.ParserInterface;
 import gr.auth.ee.mug.cfg.tools.Utilities;
 
@@ -39,9 +40,18 @@ public class CNFParser implements ParserInterface {
 	 */
 	public final int noofTrees;
 
+	/**
+	 * A flag indicating if parsing was stopped because the budget that was
+	 * passed to the constructor was exceeded; if so, the string is not
+	 * recognised and there are no trees.
+	 */
+	public final boolean budgetExceeded;
+
 	private final Alphabet A;
 	private ArrayList<ArrayList<ArrayList<CNFItem>>> N;
 	private int n;
+	private long noofItems = 0;
+	private final ParseBudget budget;
 
 	/**
 	 * Initializes a parser for a grammar and a string, and performs the
@@ -57,10 +67,28 @@ public class CNFParser implements ParserInterface {
 	 *            {@code max stringIDs[i] <= A.getNoofTerminals()}
 	 */
 	public CNFParser(ContextFreeGrammar G, int[] stringIDs) {
+		this(G, stringIDs, null);
+	}
+
+	/**
+	 * Initializes a parser for a grammar and a string, and performs the
+	 * parsing within a budget; every item of the matrix is charged to it.
+	 * 
+	 * @param cfg
+	 *            A context-free grammar in Chomsky normal form
+	 * @param stringIDs
+	 *            An array of integers, where the {@code stringIDs[i]}
+	 *            corresponds to the i-th symbols id
+	 * @param budget
+	 *            The limits of the parse, or {@code null} for none
+	 */
+	public CNFParser(ContextFreeGrammar G, int[] stringIDs, ParseBudget budget) {
 		this.cfg = G;
 		this.stringIDs = stringIDs;
+		this.budget = budget;
 		A = G.getAlphabet();
 		parse();
+		budgetExceeded = budget != null && budget.isExceeded();
 		canGenerate = canGenerate();
 		noofTrees = getNoofTrees();
 	}
@@ -70,6 +98,9 @@ public class CNFParser implements ParserInterface {
 	 */
 	@Override
 	public boolean canGenerate() {
+		if (budgetExceeded) {
+			return false;
+		}
 		CNFItem e = new CNFItem(Alphabet.idStart);
 		return N.get(n - 1).get(0).contains(e);
 	}
@@ -79,6 +110,9 @@ public class CNFParser implements ParserInterface {
 	 */
 	@Override
 	public int getNoofTrees() {
+		if (budgetExceeded) {
+			return 0;
+		}
 		int count = 0;
 		CNFItem e = new CNFItem(Alphabet.idStart);
 		for (int i = 0; i < N.get(n - 1).get(0).size(); i++) {
@@ -89,6 +123,14 @@ public class CNFParser implements ParserInterface {
 		return count;
 	}
 
+	/**
+	 * @return The number of items in the matrix; if the budget was exceeded,
+	 *         the number created before parsing stopped
+	 */
+	public long getNoofItems() {
+		return noofItems;
+	}
+
 	@Override
 	public TreeNode getTreeRoot(int treeID) {
 		TreeNode root = new TreeNode();
@@ -118,7 +160,7 @@ public class CNFParser implements ParserInterface {
 
 		// Initialize
 		for (int i = 0; i < n; i++) {
-			CNFItem e = new CNFItem(stringIDs[i], -1, -1, -1, -1);
+			CNFItem e = new CNFItem(noofItems++, stringIDs[i], -1, -1, -1, -1);
 			N.get(i).get(i).add(e);
 		}
 
@@ -139,12 +181,21 @@ public class CNFParser implements ParserInterface {
 						ArrayList<Integer> idx0 = Utilities.indexOfAll(N.get(k).get(i), e0);
 						ArrayList<Integer> idx1 = Utilities.indexOfAll(N.get(i + s).get(k + 1), e1);
 
+						// Charge the search (and the time spent on it)
+						if (budget != null && !budget.charge(0)) {
+							return;
+						}
+
 						// Add a new entry for each index pair
 						for (int idx0i = 0; idx0i < idx0.size(); idx0i++) {
 							for (int idx1i = 0; idx1i < idx1.size(); idx1i++) {
-								CNFItem e = new CNFItem(r.getFrom(), k, idx0.get(idx0i), idx1.get(idx1i), j);
+								CNFItem e = new CNFItem(noofItems++, r.getFrom(), k, idx0.get(idx0i), idx1.get(idx1i),
+										j);
 								N.get(i + s).get(i).add(e);
 							}
+							if (budget != null && !budget.charge(idx1.size())) {
+								return;
+							}
 						}
 					} // End for each rule
 				} // end for k
@@ -0,0 +1,204 @@
+package gr.auth.ee.mug.cfg.parsers.cnfparser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import gr.auth.ee.mug.cfg.grammar.Alphabet;
+import gr.auth.ee.mug.cfg.parsers.ParseBudget;
+
+/**
+ * A recognizer for a grammar in Chomsky normal form: it only answers whether
+ * the grammar can generate a string, without building parse trees.<br>
+ * <br>
+ * Each cell of the CKY chart is a bitset of symbol keys, packed in
+ * {@code long} words. The rules are grouped by their left child and then by
+ * their left-hand side, and each group keeps the bit mask of its right
+ * children, so a group is applied to a pair of cells with one AND per word.
+ * The top cell only looks for the start symbol, and stops as soon as it finds
+ * it. As with {@code CNFParser}, rules are used regardless of their
+ * probability.<br>
+ * <br>
+ * A recognizer holds no state between strings and can be shared by several
+ * threads; the chart is kept in the {@code ChartWorkspace} of the calling
+ * thread, unless one is given.
+ *
+ * @author Vasileios Papapanagiotou
+ */
+public class CNFRecognizer {
+
+	/**
+	 * The indexed grammar that was passed to the constructor.
+	 */
+	public final CNFGrammarIndex g;
+
+	private final int noofWords;
+	private final int startKey;
+
+	// For left key b, the groups groupStart[b] .. groupStart[b + 1] - 1: group
+	// q has left-hand side groupFrom[q] and its right children are the bits of
+	// groupMask[q * noofWords .. (q + 1) * noofWords)
+	private final int[] groupStart;
+	private final int[] groupFrom;
+	private final long[] groupMask;
+
+	/**
+	 * @param g
+	 *            An indexed grammar in Chomsky normal form
+	 */
+	public CNFRecognizer(CNFGrammarIndex g) {
+		this.g = g;
+		noofWords = (g.noofKeys + 63) / 64;
+		startKey = g.getKey(Alphabet.idStart);
+
+		groupStart = new int[g.noofKeys + 1];
+		ArrayList<Integer> from = new ArrayList<>();
+		ArrayList<long[]> masks = new ArrayList<>();
+		int[] groupOf = new int[g.noofKeys];
+		for (int b = 0; b < g.noofKeys; b++) {
+			groupStart[b] = from.size();
+			for (int q = g.leftStart[b]; q < g.leftStart[b + 1]; q++) {
+				int r = g.byLeft[q];
+				int a = g.from[r];
+				int group = groupOf[a] - 1;
+				if (group < groupStart[b]) {
+					group = from.size();
+					groupOf[a] = group + 1;
+					from.add(a);
+					masks.add(new long[noofWords]);
+				}
+				int c = g.right[r];
+				masks.get(group)[c >>> 6] |= 1L << c;
+			}
+		}
+		groupStart[g.noofKeys] = from.size();
+
+		groupFrom = new int[from.size()];
+		groupMask = new long[from.size() * noofWords];
+		for (int q = 0; q < groupFrom.length; q++) {
+			groupFrom[q] = from.get(q);
+			System.arraycopy(masks.get(q), 0, groupMask, q * noofWords, noofWords);
+		}
+	}
+
+	/**
+	 * @param stringIDs
+	 *            The ids of the terminals of the string
+	 * @return If the grammar can generate the string
+	 */
+	public boolean canGenerate(int[] stringIDs) {
+		ChartWorkspace ws = ChartWorkspace.local();
+		boolean recognised = canGenerate(stringIDs, ws);
+		ws.trim();
+		return recognised;
+	}
+
+	/**
+	 * @param stringIDs
+	 *            The ids of the terminals of the string
+	 * @param ws
+	 *            The workspace that holds the chart
+	 * @return If the grammar can generate the string
+	 */
+	public boolean canGenerate(int[] stringIDs, ChartWorkspace ws) {
+		return canGenerate(stringIDs, ws, null);
+	}
+
+	/**
+	 * @param stringIDs
+	 *            The ids of the terminals of the string
+	 * @param ws
+	 *            The workspace that holds the chart
+	 * @param budget
+	 *            The limits of the recognition, or {@code null} for none;
+	 *            the words of the chart are charged to it before it is
+	 *            allocated, and then every cell
+	 * @return If the grammar can generate the string; {@code false} if the
+	 *         budget was exceeded
+	 */
+	public boolean canGenerate(int[] stringIDs, ChartWorkspace ws, ParseBudget budget) {
+
+		int n = stringIDs.length;
+		if (n == 0) {
+			return false;
+		}
+		int W = noofWords;
+
+		// Cell (i, j) is chart[(i * n + j) * W ..], and is empty unless
+		// filled[i * n + j]; it is cleared when first filled
+		if (!ChartWorkspace.reserve((long) n * n * W, budget)) {
+			return false;
+		}
+		ws.resetBits(n * n, W);
+		long[] chart = ws.bits;
+		boolean[] filled = ws.bitsFilled;
+
+		for (int i = 0; i < n; i++) {
+			int key = g.getKey(stringIDs[i]);
+			if (key < g.noofNonTerminals || key >= g.noofKeys) {
+				return false;
+			}
+			int cell = (i * n + i) * W;
+			Arrays.fill(chart, cell, cell + W, 0);
+			chart[cell + (key >>> 6)] = 1L << key;
+			filled[i * n + i] = true;
+		}
+
+		for (int s = 1; s < n; s++) {
+			boolean top = s == n - 1;
+			for (int i = 0; i < n - s; i++) {
+				int j = i + s;
+				int cell = (i * n + j) * W;
+				if (budget != null && !budget.charge(1)) {
+					return false;
+				}
+				for (int k = i; k < j; k++) {
+					if (!filled[i * n + k] || !filled[(k + 1) * n + j]) {
+						continue;
+					}
+					int leftCell = (i * n + k) * W;
+					int rightCell = ((k + 1) * n + j) * W;
+					for (int w = 0; w < W; w++) {
+						long bits = chart[leftCell + w];
+						while (bits != 0) {
+							int b = (w << 6) + Long.numberOfTrailingZeros(bits);
+							bits &= bits - 1;
+							for (int q = groupStart[b]; q < groupStart[b + 1]; q++) {
+								int a = groupFrom[q];
+								if (top && a != startKey) {
+									continue;
+								}
+								long bit = 1L << a;
+								if (filled[i * n + j] && (chart[cell + (a >>> 6)] & bit) != 0) {
+									continue;
+								}
+								if (intersects(groupMask, q * W, chart, rightCell, W)) {
+									if (top) {
+										return true;
+									}
+									if (!filled[i * n + j]) {
+										Arrays.fill(chart, cell, cell + W, 0);
+										filled[i * n + j] = true;
+									}
+									chart[cell + (a >>> 6)] |= bit;
+								}
+							}
+						}
+					}
+				}
+			}
+		}
+
+		// The rules are binary, so no string of one symbol is generated
+		return false;
+	}
+
+	private static boolean intersects(long[] a, int from, long[] b, int bFrom, int length) {
+		for (int w = 0; w < length; w++) {
+			if ((a[from + w] & b[bFrom + w]) != 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+}
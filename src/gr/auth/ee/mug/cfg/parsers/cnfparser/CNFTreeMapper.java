@@ -0,0 +1,345 @@
+package gr.auth.ee.mug.cfg.parsers.cnfparser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import gr.auth.ee.mug.cfg.dottools.DummyItem;
+import gr.auth.ee.mug.cfg.dottools.TreeNode;
+import gr.auth.ee.mug.cfg.grammar.Alphabet;
+import gr.auth.ee.mug.cfg.grammar.CNFProvenance;
+import gr.auth.ee.mug.cfg.grammar.ContextFreeGrammar;
+import gr.auth.ee.mug.cfg.grammar.Rule;
+import gr.auth.ee.mug.cfg.parsers.ParserInterface;
+
+/**
+ * Maps parse trees of a grammar in Chomsky normal form back to parse trees of
+ * the grammar it was converted from, using the provenance recorded by
+ * {@code ContextFreeGrammar.chomskyNormal}.<br>
+ * <br>
+ * A rule of the converted grammar usually sums several derivations of the
+ * source grammar; each node is expanded with the most probable one: the
+ * contribution with the largest share, the most probable chains of short rules
+ * and the most probable derivations of the empty string for the erased
+ * symbols. The returned trees hold {@code DummyItem}s whose rule ids refer to
+ * the rules of the source grammar and whose symbol ids are ids of the source
+ * alphabet, so they can be used with {@code Tree2DOT} and
+ * {@code TreeNode.reduceProduct} on the source grammar. Nodes that derive the
+ * empty string have no children.
+ *
+ * @author Vasileios Papapanagiotou
+ */
+public class CNFTreeMapper {
+
+	private final ContextFreeGrammar cnf;
+	private final CNFProvenance provenance;
+	private final Alphabet al;
+	private final ContextFreeGrammar binarised;
+
+	// Best contribution of each rule of the converted grammar
+	private final int[] bestContribution;
+
+	// Short unit rules that leave each symbol
+	private final ArrayList<ArrayList<Integer>> unitRulesFrom = new ArrayList<>();
+
+	// Best chains of short rules, per first symbol: the last unit rule of the
+	// best chain to each symbol
+	private final HashMap<Integer, int[]> bestChains = new HashMap<>();
+
+	// Best rule of the binarised grammar for erasing each non-terminal
+	private final int[] bestErasingRule;
+
+	private long nextId;
+
+	/**
+	 * @param cnf
+	 *            A grammar returned by {@code ContextFreeGrammar.chomskyNormal}
+	 * @throws IllegalArgumentException
+	 *             If {@code cnf} has no provenance
+	 */
+	public CNFTreeMapper(ContextFreeGrammar cnf) {
+		this.cnf = cnf;
+		provenance = cnf.getProvenance();
+		if (provenance == null) {
+			throw new IllegalArgumentException("The grammar was not created by chomskyNormal");
+		}
+		binarised = provenance.getBinarised();
+		al = binarised.getAlphabet();
+
+		bestContribution = new int[cnf.getNoofRules()];
+		for (int i = 0; i < bestContribution.length; i++) {
+			for (int j = 1; j < provenance.getNoofContributions(i); j++) {
+				if (provenance.getShare(i, j) > provenance.getShare(i, bestContribution[i])) {
+					bestContribution[i] = j;
+				}
+			}
+		}
+
+		for (int i = 0; i < getNoofKeys(); i++) {
+			unitRulesFrom.add(new ArrayList<Integer>());
+		}
+		for (int i = 0; i < provenance.getNoofUnitRules(); i++) {
+			Rule r = provenance.getUnitRule(i);
+			if (r.getToLength() == 1) {
+				unitRulesFrom.get(getKey(r.getFrom())).add(i);
+			}
+		}
+
+		bestErasingRule = getBestErasingRules();
+	}
+
+	/**
+	 * @param cnfRoot
+	 *            The root of a parse tree of the converted grammar, as returned
+	 *            by {@code CNFParser.getTreeRoot}
+	 * @return The root of the corresponding parse tree of the source grammar
+	 */
+	public TreeNode map(TreeNode cnfRoot) {
+
+		Node root = expand(cnfRoot);
+
+		// The start copy stands for the start symbol
+		if (root.rule >= 0 && provenance.getBinarisedOrigin(root.rule) == CNFProvenance.startOrigin) {
+			root = root.children.get(0);
+		}
+
+		nextId = 0;
+		return toTreeNode(root);
+	}
+
+	/**
+	 * A node of a parse tree of the binarised grammar.
+	 */
+	private static class Node {
+
+		final int symbol;
+		final int rule;
+		final ArrayList<Node> children = new ArrayList<>();
+
+		Node(int symbol, int rule) {
+			this.symbol = symbol;
+			this.rule = rule;
+		}
+
+	}
+
+	private Node expand(TreeNode cnfNode) {
+
+		int symbol = cnfNode.o.getSymbolId();
+		if (al.isTerminal(symbol)) {
+			return new Node(symbol, ParserInterface.noRuleId);
+		}
+
+		// The unit rule B -> X Y of the best contribution to A -> X' Y'
+		int ruleId = cnfNode.o.getRuleId();
+		Rule r = cnf.getRule(ruleId);
+		int u = provenance.getContribution(ruleId, bestContribution[ruleId]);
+		Rule ur = provenance.getUnitRule(u);
+
+		// B -> X Y, then X =>* X' and Y =>* Y'
+		Node node = new Node(ur.getFrom(), provenance.getUnitOrigin(u));
+		for (int j = 0; j < 2; j++) {
+			Node child = expand(cnfNode.children.get(j));
+			node.children.add(getChain(ur.getTo(j), r.getTo(j), child));
+		}
+
+		// A =>* B
+		return getChain(r.getFrom(), ur.getFrom(), node);
+	}
+
+	/**
+	 * @return The best chain of short rules from symbol {@code from} to the
+	 *         symbol of {@code tail}, ending at {@code tail}
+	 */
+	private Node getChain(int from, int to, Node tail) {
+
+		if (from == to) {
+			return tail;
+		}
+
+		int[] last = bestChains.get(from);
+		if (last == null) {
+			last = getBestChains(from);
+			bestChains.put(from, last);
+		}
+
+		// Walk the chain backwards
+		Node node = tail;
+		int id = to;
+		while (id != from) {
+			int u = last[getKey(id)];
+			Rule ur = provenance.getUnitRule(u);
+			int b = provenance.getUnitOrigin(u);
+			Node parent = new Node(ur.getFrom(), b);
+			int erased = provenance.getUnitErased(u);
+			if (erased == -1) {
+				parent.children.add(node);
+			} else {
+				Rule br = binarised.getRule(b);
+				for (int j = 0; j < br.getToLength(); j++) {
+					parent.children.add(j == erased ? getErasure(br.getTo(j)) : node);
+				}
+			}
+			node = parent;
+			id = ur.getFrom();
+		}
+
+		return node;
+	}
+
+	/**
+	 * Dijkstra's algorithm over the short unit rules, maximizing the product
+	 * of probabilities.
+	 */
+	private int[] getBestChains(int from) {
+
+		int n = getNoofKeys();
+		double[] pr = new double[n];
+		int[] last = new int[n];
+		boolean[] done = new boolean[n];
+		int[] symbol = new int[n];
+		for (int i = 0; i < n; i++) {
+			pr[i] = -1;
+			last[i] = -1;
+		}
+		pr[getKey(from)] = 1;
+		symbol[getKey(from)] = from;
+
+		while (true) {
+			int k = -1;
+			for (int i = 0; i < n; i++) {
+				if (!done[i] && pr[i] >= 0 && (k == -1 || pr[i] > pr[k])) {
+					k = i;
+				}
+			}
+			if (k == -1) {
+				break;
+			}
+			done[k] = true;
+
+			if (al.isTerminal(symbol[k])) {
+				continue;
+			}
+			ArrayList<Integer> us = unitRulesFrom.get(k);
+			for (int i = 0; i < us.size(); i++) {
+				Rule ur = provenance.getUnitRule(us.get(i));
+				int t = getKey(ur.getTo(0));
+				double p = pr[k] * ur.getProbability();
+				if (!done[t] && p > pr[t]) {
+					pr[t] = p;
+					last[t] = us.get(i);
+					symbol[t] = ur.getTo(0);
+				}
+			}
+		}
+
+		return last;
+	}
+
+	/**
+	 * Knuth's generalization of Dijkstra's algorithm over the rules of the
+	 * binarised grammar that only contain erasable symbols, maximizing the
+	 * probability of deriving the empty string.
+	 */
+	private int[] getBestErasingRules() {
+
+		int n = al.getNoofNonTerminals();
+		double[] pr = new double[n];
+		int[] best = new int[n];
+		boolean[] done = new boolean[n];
+		for (int i = 0; i < n; i++) {
+			pr[i] = -1;
+			best[i] = -1;
+		}
+
+		while (true) {
+			// Relax the rules whose right-hand side symbols are all done
+			for (int i = 0; i < binarised.getNoofRules(); i++) {
+				Rule r = binarised.getRule(i);
+				int a = al.getIdx(r.getFrom());
+				if (done[a]) {
+					continue;
+				}
+				double p = r.getProbability();
+				for (int j = 0; j < r.getToLength() && p >= 0; j++) {
+					int id = r.getTo(j);
+					if (al.isEmptyStringSymbol(id)) {
+						continue;
+					}
+					p = !al.isTerminal(id) && done[al.getIdx(id)] ? p * pr[al.getIdx(id)] : -1;
+				}
+				if (p > pr[a]) {
+					pr[a] = p;
+					best[a] = i;
+				}
+			}
+
+			// The most probable pending non-terminal is done
+			int k = -1;
+			for (int i = 0; i < n; i++) {
+				if (!done[i] && pr[i] >= 0 && (k == -1 || pr[i] > pr[k])) {
+					k = i;
+				}
+			}
+			if (k == -1) {
+				break;
+			}
+			done[k] = true;
+		}
+
+		return best;
+	}
+
+	private Node getErasure(int id) {
+		int b = bestErasingRule[al.getIdx(id)];
+		Node node = new Node(id, b);
+		Rule r = binarised.getRule(b);
+		for (int j = 0; j < r.getToLength(); j++) {
+			if (!al.isEmptyStringSymbol(r.getTo(j))) {
+				node.children.add(getErasure(r.getTo(j)));
+			}
+		}
+		return node;
+	}
+
+	/**
+	 * Converts a node of the binarised grammar to a node of the source
+	 * grammar, replacing intermediate non-terminals by their children and the
+	 * start copy by the start symbol.
+	 */
+	private TreeNode toTreeNode(Node node) {
+
+		int symbol = node.symbol == provenance.getStartCopy() ? Alphabet.idStart : node.symbol;
+		int ruleId = node.rule == ParserInterface.noRuleId ? ParserInterface.noRuleId
+				: provenance.getBinarisedOrigin(node.rule);
+
+		TreeNode treeNode = new TreeNode();
+		treeNode.o = new DummyItem(nextId++, ruleId, symbol);
+		ArrayList<Node> children = new ArrayList<>();
+		addChildren(node, children);
+		for (int i = 0; i < children.size(); i++) {
+			treeNode.children.add(toTreeNode(children.get(i)));
+		}
+		return treeNode;
+	}
+
+	private void addChildren(Node node, ArrayList<Node> children) {
+		for (int i = 0; i < node.children.size(); i++) {
+			Node child = node.children.get(i);
+			if (child.rule != ParserInterface.noRuleId
+					&& provenance.getBinarisedOrigin(child.rule) == CNFProvenance.intermediateOrigin) {
+				addChildren(child, children);
+			} else {
+				children.add(child);
+			}
+		}
+	}
+
+	private int getKey(int id) {
+		return al.isTerminal(id) ? al.getNoofNonTerminals() + al.getIdx(id) : al.getIdx(id);
+	}
+
+	private int getNoofKeys() {
+		return al.getNoofNonTerminals() + al.getNoofTerminals();
+	}
+
+}
@@ -0,0 +1,267 @@
+package gr.auth.ee.mug.cfg.parsers.cnfparser;
+
+import java.util.Arrays;
+
+import gr.auth.ee.mug.cfg.parsers.ParseBudget;
+
+/**
+ * The buffers of the chart algorithms ({@code InsideOutside},
+ * {@code CNFRecognizer}, {@code ViterbiParser}), kept between strings so that
+ * parsing many strings of similar lengths allocates next to nothing. Each
+ * algorithm has buffers of its own, so a string can go through all of them in
+ * one workspace.<br>
+ * <br>
+ * The buffers grow to the longest string seen, but a workspace keeps no more
+ * than its maximum retained size (64 MB by default) between strings: once it
+ * holds more, the buffers are cut down to what the next string needs when it
+ * is parsed, and {@code trim()} releases them as soon as a chart is no longer
+ * needed. A chart computed in a workspace is only valid until the workspace
+ * is used for another string. A workspace must not be used by several threads
+ * at once; {@code local()} gives each thread its own.<br>
+ * <br>
+ * {@code CNFParser} and {@code EarleyParser} do not use workspaces: their
+ * charts are graphs of item objects with back pointers, which are the parse
+ * result that {@code getTreeRoot} and the DOT tools walk, so they are
+ * allocated per string. For allocation-free parsing, {@code ViterbiParser}
+ * gives the best tree and {@code InsideOutside} the probability of a string.
+ *
+ * @author Vasileios Papapanagiotou
+ */
+public class ChartWorkspace {
+
+	// Cell flags and chart buffers, by cell and then by key; cell (i, j) of a
+	// string is number j (j + 1) / 2 + i
+	boolean[] filled = new boolean[0];
+	boolean[] outsideFilled = new boolean[0];
+	boolean[] bitsFilled = new boolean[0];
+	long[] bits = new long[0];
+	double[] inside = new double[0];
+	double[] outside = new double[0];
+
+	// The keys of cell c are activeKeys[activeStart[c] .. activeEnd[c])
+	int[] activeStart = new int[0];
+	int[] activeEnd = new int[0];
+	int[] activeKeys = new int[0];
+
+	// Best scores with their rules and split points
+	boolean[] bestFilled = new boolean[0];
+	double[] best = new double[0];
+	int[] bestRule = new int[0];
+	int[] bestSplit = new int[0];
+
+	private long maxRetainedSize = defaultMaxRetainedSize;
+
+	/**
+	 * @return The workspace of the calling thread
+	 */
+	public static ChartWorkspace local() {
+		return local.get();
+	}
+
+	/**
+	 * @param maxRetainedSize
+	 *            The number of bytes that the buffers may keep between
+	 *            strings
+	 */
+	public void setMaxRetainedSize(long maxRetainedSize) {
+		this.maxRetainedSize = maxRetainedSize;
+	}
+
+	/**
+	 * @return The number of bytes that the buffers may keep between strings
+	 */
+	public long getMaxRetainedSize() {
+		return maxRetainedSize;
+	}
+
+	/**
+	 * Releases the buffers if they hold more than the maximum retained size;
+	 * this ends the validity of the chart in the workspace.
+	 */
+	public void trim() {
+		if (getSize() > maxRetainedSize) {
+			clear();
+		}
+	}
+
+	/**
+	 * Releases the buffers.
+	 */
+	public void clear() {
+		filled = new boolean[0];
+		outsideFilled = new boolean[0];
+		bitsFilled = new boolean[0];
+		bits = new long[0];
+		inside = new double[0];
+		outside = new double[0];
+		activeStart = new int[0];
+		activeEnd = new int[0];
+		activeKeys = new int[0];
+		bestFilled = new boolean[0];
+		best = new double[0];
+		bestRule = new int[0];
+		bestSplit = new int[0];
+	}
+
+	/**
+	 * @return The number of bytes held by the buffers
+	 */
+	public long getSize() {
+		long size = filled.length + outsideFilled.length + bitsFilled.length;
+		size += bestFilled.length;
+		size += 8L * (bits.length + inside.length + outside.length + best.length);
+		size += 4L * (activeStart.length + activeEnd.length + activeKeys.length);
+		size += 4L * (bestRule.length + bestSplit.length);
+		return size;
+	}
+
+	/**
+	 * Checks the size of a chart before its buffers are made room for, and
+	 * charges its entries to a budget.
+	 *
+	 * @param size
+	 *            The number of entries of the largest buffer of the chart
+	 * @param budget
+	 *            The budget of the parse, or {@code null} for none
+	 * @return {@code true} if the chart can be allocated, {@code false} if the
+	 *         budget is exceeded (its limit is {@code ITEMS} if the chart is
+	 *         larger than an array can hold)
+	 * @throws IllegalArgumentException
+	 *             If the chart is larger than an array can hold and there is
+	 *             no budget
+	 */
+	static boolean reserve(long size, ParseBudget budget) {
+		if (size > maxBufferSize) {
+			if (budget == null) {
+				throw new IllegalArgumentException("A chart of " + size + " entries is too large");
+			}
+			budget.exceedItems();
+			return false;
+		}
+		return budget == null || budget.charge(size);
+	}
+
+	/**
+	 * Makes room for the cell flags and active keys of an inside chart of
+	 * {@code noofCells} cells, and marks all of them empty.
+	 */
+	void resetInside(int noofCells) {
+		int length = resize(filled.length, noofCells);
+		if (length >= 0) {
+			filled = new boolean[length];
+			activeStart = new int[length];
+			activeEnd = new int[length];
+		} else {
+			Arrays.fill(filled, 0, noofCells, false);
+		}
+		if (getSize() > maxRetainedSize) {
+			// Only the keys of the new chart will be stored
+			activeKeys = new int[0];
+		}
+	}
+
+	/**
+	 * Makes room for the bitsets of {@code noofCells} cells of
+	 * {@code noofWords} words each, and marks all of them empty.
+	 */
+	void resetBits(int noofCells, int noofWords) {
+		int length = resize(bitsFilled.length, noofCells);
+		if (length >= 0) {
+			bitsFilled = new boolean[length];
+		} else {
+			Arrays.fill(bitsFilled, 0, noofCells, false);
+		}
+		length = resize(bits.length, noofCells * noofWords);
+		if (length >= 0) {
+			bits = new long[length];
+		}
+	}
+
+	void ensureInside(int size) {
+		int length = resize(inside.length, size);
+		if (length >= 0) {
+			inside = new double[length];
+		}
+	}
+
+	void ensureActiveKeys(int size) {
+		if (activeKeys.length < size) {
+			activeKeys = Arrays.copyOf(activeKeys, grow(activeKeys.length, size));
+		}
+	}
+
+	/**
+	 * Makes room for the outside probabilities of {@code noofCells} cells of
+	 * {@code noofKeys} keys each, and marks all of them empty.
+	 */
+	void resetOutside(int noofCells, int noofKeys) {
+		int length = resize(outsideFilled.length, noofCells);
+		if (length >= 0) {
+			outsideFilled = new boolean[length];
+		} else {
+			Arrays.fill(outsideFilled, 0, noofCells, false);
+		}
+		length = resize(outside.length, noofCells * noofKeys);
+		if (length >= 0) {
+			outside = new double[length];
+		}
+	}
+
+	/**
+	 * Makes room for the best scores of {@code noofCells} cells of
+	 * {@code noofKeys} keys each, and marks all of them empty.
+	 */
+	void resetBest(int noofCells, int noofKeys) {
+		int length = resize(bestFilled.length, noofCells);
+		if (length >= 0) {
+			bestFilled = new boolean[length];
+		} else {
+			Arrays.fill(bestFilled, 0, noofCells, false);
+		}
+		length = resize(best.length, noofCells * noofKeys);
+		if (length >= 0) {
+			best = new double[length];
+			bestRule = new int[length];
+			bestSplit = new int[length];
+		}
+	}
+
+	/**
+	 * @return The length to allocate a buffer of {@code length} elements with
+	 *         again, so that it holds {@code size}, or -1 to keep it: a short
+	 *         buffer grows, and a long one is cut down to size if the
+	 *         workspace holds more than its maximum retained size
+	 */
+	private int resize(int length, int size) {
+		if (length < size) {
+			return grow(length, size);
+		}
+		if (length > size && getSize() > maxRetainedSize) {
+			return size;
+		}
+		return -1;
+	}
+
+	private static int grow(int length, int size) {
+		return Math.max(size, length + (length >> 1));
+	}
+
+	/**
+	 * The largest number of entries of a buffer.
+	 */
+	static final long maxBufferSize = Integer.MAX_VALUE - 8;
+
+	/**
+	 * The default maximum number of bytes that the buffers keep between
+	 * strings.
+	 */
+	public static final long defaultMaxRetainedSize = 64L << 20;
+
+	private static final ThreadLocal<ChartWorkspace> local = new ThreadLocal<ChartWorkspace>() {
+		@Override
+		protected ChartWorkspace initialValue() {
+			return new ChartWorkspace();
+		}
+	};
+
+}
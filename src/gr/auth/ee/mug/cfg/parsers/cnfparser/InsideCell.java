@@ -0,0 +1,96 @@
+package gr.auth.ee.mug.cfg.parsers.cnfparser;
+
+import java.util.Arrays;
+
+/**
+ * The inside probabilities of a span, by key, with the keys whose probability
+ * is not zero: a cell of the charts that keep a cell per span instead of one
+ * array ({@code ParseSession}, {@code SpanDetector}), where most spans are
+ * derived by no symbol and have no cell.
+ *
+ * @author Vasileios Papapanagiotou
+ */
+class InsideCell {
+
+	final double[] inside;
+	final int[] active;
+
+	private InsideCell(double[] inside, int[] active) {
+		this.inside = inside;
+		this.active = active;
+	}
+
+	/**
+	 * @param g
+	 *            An indexed grammar in Chomsky normal form
+	 * @param id
+	 *            The id of a terminal
+	 * @return The cell of a span of one symbol, or {@code null} if the id is
+	 *         not a terminal of the grammar
+	 */
+	static InsideCell newFromTerminal(CNFGrammarIndex g, int id) {
+		int key = g.getKey(id);
+		if (key < g.noofNonTerminals || key >= g.noofKeys) {
+			return null;
+		}
+		double[] inside = new double[g.noofKeys];
+		inside[key] = 1;
+		return new InsideCell(inside, new int[] { key });
+	}
+
+	/**
+	 * @param in
+	 *            Inside probabilities, by key, or {@code null} for none
+	 * @return Their cell, or {@code null} if there are none
+	 */
+	static InsideCell newFromInside(double[] in) {
+		if (in == null) {
+			return null;
+		}
+		int noofActive = 0;
+		int[] active = new int[in.length];
+		for (int a = 0; a < in.length; a++) {
+			if (in[a] != 0) {
+				active[noofActive++] = a;
+			}
+		}
+		return new InsideCell(in, Arrays.copyOf(active, noofActive));
+	}
+
+	/**
+	 * Adds the probabilities of the binary rules over a split point to the
+	 * inside probabilities of a span.
+	 *
+	 * @param g
+	 *            An indexed grammar in Chomsky normal form
+	 * @param left
+	 *            The cell of the part before the split point, or {@code null}
+	 * @param right
+	 *            The cell of the part after it, or {@code null}
+	 * @param in
+	 *            The inside probabilities of the span so far, or {@code null}
+	 *            for none
+	 * @return The inside probabilities of the span, or {@code null} for none
+	 */
+	static double[] combine(CNFGrammarIndex g, InsideCell left, InsideCell right, double[] in) {
+		if (left == null || right == null) {
+			return in;
+		}
+		for (int a = 0; a < left.active.length; a++) {
+			int b = left.active[a];
+			double pb = left.inside[b];
+			for (int q = g.leftStart[b]; q < g.leftStart[b + 1]; q++) {
+				int r = g.byLeft[q];
+				double pc = right.inside[g.right[r]];
+				if (pc != 0) {
+					if (in == null) {
+						in = new double[g.noofKeys];
+					}
+					in[g.from[r]] += g.pr[r] * pb * pc;
+				}
+			}
+		}
+		return in;
+	}
+
+}
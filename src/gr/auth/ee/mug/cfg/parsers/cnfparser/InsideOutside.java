@@ -0,0 +1,313 @@
+package gr.auth.ee.mug.cfg.parsers.cnfparser;
+
+import java.util.Arrays;
+
+import gr.auth.ee.mug.cfg.grammar.Alphabet;
+import gr.auth.ee.mug.cfg.parsers.ParseBudget;
+
+/**
+ * The inside and outside probabilities of a string under a grammar in Chomsky
+ * normal form.<br>
+ * <br>
+ * Unlike {@code CNFParser}, whose chart holds one item per parse tree, the
+ * chart here is packed: cell (i, j) holds, for every symbol, the total
+ * probability of all the ways that the symbol derives symbols i..j of the
+ * string (the inside probability). The outside pass, run on demand, gives the
+ * probability of the rest of the string around each cell, and with both the
+ * expected number of times each rule is used in a parse of the string.<br>
+ * <br>
+ * The chart is kept in a {@code ChartWorkspace}. When one is passed to the
+ * constructor, the chart is only valid until the workspace is used for
+ * another string.
+ *
+ * @author Vasileios Papapanagiotou
+ */
+public class InsideOutside {
+
+	/**
+	 * The indexed grammar that was passed to the constructor.
+	 */
+	public final CNFGrammarIndex g;
+
+	/**
+	 * The string that was passed to the constructor.
+	 */
+	public final int[] stringIDs;
+
+	/**
+	 * The total probability of all the parse trees of the string; zero if the
+	 * grammar cannot generate it.
+	 */
+	public final double probability;
+
+	/**
+	 * A flag indicating if the inside pass was stopped because the budget
+	 * that was passed to the constructor was exceeded; if so, the probability
+	 * is zero.
+	 */
+	public final boolean budgetExceeded;
+
+	final ChartWorkspace ws;
+	private final ParseBudget budget;
+	private final int n;
+	private final int K;
+	private boolean outsideDone = false;
+
+	/**
+	 * Computes the inside probabilities of a string, in a chart of its own.
+	 *
+	 * @param g
+	 *            An indexed grammar in Chomsky normal form
+	 * @param stringIDs
+	 *            The ids of the terminals of the string
+	 */
+	public InsideOutside(CNFGrammarIndex g, int[] stringIDs) {
+		this(g, stringIDs, new ChartWorkspace());
+	}
+
+	/**
+	 * Computes the inside probabilities of a string, in the buffers of a
+	 * workspace.
+	 *
+	 * @param g
+	 *            An indexed grammar in Chomsky normal form
+	 * @param stringIDs
+	 *            The ids of the terminals of the string
+	 * @param ws
+	 *            The workspace that holds the chart
+	 */
+	public InsideOutside(CNFGrammarIndex g, int[] stringIDs, ChartWorkspace ws) {
+		this(g, stringIDs, ws, null);
+	}
+
+	/**
+	 * Computes the inside probabilities of a string, in the buffers of a
+	 * workspace and within a budget; the entries of the chart are charged to
+	 * it before it is allocated, and then every cell.
+	 *
+	 * @param g
+	 *            An indexed grammar in Chomsky normal form
+	 * @param stringIDs
+	 *            The ids of the terminals of the string
+	 * @param ws
+	 *            The workspace that holds the chart
+	 * @param budget
+	 *            The limits of the inside pass, or {@code null} for none
+	 */
+	public InsideOutside(CNFGrammarIndex g, int[] stringIDs, ChartWorkspace ws, ParseBudget budget) {
+		this.g = g;
+		this.stringIDs = stringIDs;
+		this.ws = ws;
+		this.budget = budget;
+		n = stringIDs.length;
+		K = g.noofKeys;
+		double p = n == 0 ? 0 : computeInside();
+		budgetExceeded = budget != null && budget.isExceeded();
+		probability = budgetExceeded ? 0 : p;
+	}
+
+	/**
+	 * @param i
+	 *            The index of the first symbol of the span
+	 * @param j
+	 *            The index of the last symbol of the span
+	 * @param id
+	 *            The id of a symbol
+	 * @return The probability that the symbol derives symbols i..j
+	 */
+	public double getInside(int i, int j, int id) {
+		int c = getCell(i, j);
+		return ws.filled[c] ? ws.inside[c * K + g.getKey(id)] : 0;
+	}
+
+	/**
+	 * @param i
+	 *            The index of the first symbol of the span
+	 * @param j
+	 *            The index of the last symbol of the span
+	 * @param id
+	 *            The id of a symbol
+	 * @return The probability of deriving, from the start symbol, symbols
+	 *         0..i-1, then the given symbol, then symbols j+1..n-1
+	 */
+	public double getOutside(int i, int j, int id) {
+		if (!outsideDone) {
+			computeOutside(null, 0);
+		}
+		int c = getCell(i, j);
+		return ws.outsideFilled[c] ? ws.outside[c * K + g.getKey(id)] : 0;
+	}
+
+	/**
+	 * Adds the expected number of times each rule is used in a parse tree of
+	 * the string, given the string, to {@code counts}. Nothing is added if the
+	 * grammar cannot generate the string.
+	 *
+	 * @param counts
+	 *            One count per rule of the grammar
+	 * @param weight
+	 *            A factor applied to the added counts
+	 */
+	public void addExpectedCounts(double[] counts, double weight) {
+		if (probability > 0) {
+			computeOutside(counts, weight / probability);
+		}
+	}
+
+	/**
+	 * @return The number of cell (i, j) in the buffers of the workspace
+	 */
+	static int getCell(int i, int j) {
+		return j * (j + 1) / 2 + i;
+	}
+
+	private double computeInside() {
+
+		long size = (long) n * (n + 1) / 2 * K;
+		if (!ChartWorkspace.reserve(size, budget)) {
+			return 0;
+		}
+		int noofCells = n * (n + 1) / 2;
+		ws.resetInside(noofCells);
+		ws.ensureInside((int) size);
+		boolean[] filled = ws.filled;
+		int noofActive = 0;
+
+		// Spans of length 1: the terminals
+		for (int i = 0; i < n; i++) {
+			int c = getCell(i, i);
+			int key = g.getKey(stringIDs[i]);
+			if (key < g.noofNonTerminals || key >= K) {
+				continue;
+			}
+			Arrays.fill(ws.inside, c * K, (c + 1) * K, 0);
+			ws.inside[c * K + key] = 1;
+			filled[c] = true;
+			ws.ensureActiveKeys(noofActive + 1);
+			ws.activeStart[c] = noofActive;
+			ws.activeKeys[noofActive++] = key;
+			ws.activeEnd[c] = noofActive;
+		}
+
+		double[] in = ws.inside;
+		for (int s = 1; s < n; s++) {
+			for (int i = 0; i < n - s; i++) {
+				int j = i + s;
+				int c = getCell(i, j);
+				int cell = c * K;
+				if (budget != null && !budget.charge(1)) {
+					return 0;
+				}
+				for (int k = i; k < j; k++) {
+					int lc = getCell(i, k);
+					int rc = getCell(k + 1, j);
+					if (!filled[lc] || !filled[rc]) {
+						continue;
+					}
+					int right = rc * K;
+					for (int l = ws.activeStart[lc]; l < ws.activeEnd[lc]; l++) {
+						int b = ws.activeKeys[l];
+						double pb = in[lc * K + b];
+						for (int q = g.leftStart[b]; q < g.leftStart[b + 1]; q++) {
+							int r = g.byLeft[q];
+							double pc = in[right + g.right[r]];
+							if (pc != 0) {
+								if (!filled[c]) {
+									Arrays.fill(in, cell, cell + K, 0);
+									filled[c] = true;
+								}
+								in[cell + g.from[r]] += g.pr[r] * pb * pc;
+							}
+						}
+					}
+				}
+				if (filled[c]) {
+					ws.ensureActiveKeys(noofActive + K);
+					ws.activeStart[c] = noofActive;
+					for (int a = 0; a < K; a++) {
+						if (in[cell + a] != 0) {
+							ws.activeKeys[noofActive++] = a;
+						}
+					}
+					ws.activeEnd[c] = noofActive;
+				}
+			}
+		}
+
+		int root = getCell(0, n - 1);
+		return filled[root] ? in[root * K + g.getKey(Alphabet.idStart)] : 0;
+	}
+
+	/**
+	 * The outside pass: cells are visited from the longest span to the
+	 * shortest, so that the outside probabilities of a cell are complete
+	 * before they are passed on to its children. If {@code counts} is not
+	 * {@code null}, the expected rule counts (scaled by {@code scale}) are
+	 * accumulated along the way.
+	 */
+	private void computeOutside(double[] counts, double scale) {
+
+		int noofCells = n * (n + 1) / 2;
+		ws.resetOutside(noofCells, K);
+		outsideDone = true;
+		if (probability == 0) {
+			return;
+		}
+		boolean[] filled = ws.filled;
+		boolean[] outFilled = ws.outsideFilled;
+		double[] in = ws.inside;
+		double[] out = ws.outside;
+		int root = getCell(0, n - 1);
+		Arrays.fill(out, root * K, (root + 1) * K, 0);
+		out[root * K + g.getKey(Alphabet.idStart)] = 1;
+		outFilled[root] = true;
+
+		for (int s = n - 1; s >= 1; s--) {
+			for (int i = 0; i < n - s; i++) {
+				int j = i + s;
+				int c = getCell(i, j);
+				if (!outFilled[c]) {
+					continue;
+				}
+				int cell = c * K;
+				for (int k = i; k < j; k++) {
+					int lc = getCell(i, k);
+					int rc = getCell(k + 1, j);
+					if (!filled[lc] || !filled[rc]) {
+						continue;
+					}
+					int left = lc * K;
+					int right = rc * K;
+					for (int l = ws.activeStart[lc]; l < ws.activeEnd[lc]; l++) {
+						int b = ws.activeKeys[l];
+						double pb = in[left + b];
+						for (int q = g.leftStart[b]; q < g.leftStart[b + 1]; q++) {
+							int r = g.byLeft[q];
+							int rk = g.right[r];
+							double pc = in[right + rk];
+							double pa = out[cell + g.from[r]];
+							if (pc == 0 || pa == 0) {
+								continue;
+							}
+							double w = g.pr[r] * pa;
+							if (!outFilled[lc]) {
+								Arrays.fill(out, left, left + K, 0);
+								outFilled[lc] = true;
+							}
+							if (!outFilled[rc]) {
+								Arrays.fill(out, right, right + K, 0);
+								outFilled[rc] = true;
+							}
+							out[left + b] += w * pc;
+							out[right + rk] += w * pb;
+							if (counts != null) {
+								counts[r] += scale * w * pb * pc;
+							}
+						}
+					}
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,306 @@
+package gr.auth.ee.mug.cfg.parsers.cnfparser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import gr.auth.ee.mug.cfg.dottools.DummyItem;
+import gr.auth.ee.mug.cfg.dottools.TreeNode;
+import gr.auth.ee.mug.cfg.grammar.Alphabet;
+import gr.auth.ee.mug.cfg.parsers.Lattice;
+import gr.auth.ee.mug.cfg.parsers.ParseBudget;
+import gr.auth.ee.mug.cfg.parsers.ParserInterface;
+
+/**
+ * Parses all the strings of a word lattice at once, under a grammar in
+ * Chomsky normal form.<br>
+ * <br>
+ * The chart of {@code InsideOutside} and {@code ViterbiParser} is indexed by
+ * pairs of lattice nodes instead of string positions: cell (i, j) holds, for
+ * every symbol, the total weighted probability and the best weighted
+ * probability with which the symbol derives the paths from node i to node j.
+ * The cells of terminals are filled from the edges, with their weights, and
+ * the rest as in {@code InsideOutside}, with the split points ranging over the
+ * nodes between i and j. One pass thus gives
+ * <ul>
+ * <li>the sum, over the paths of the lattice, of the weight of the path times
+ * the probability of its string, and</li>
+ * <li>the most probable parse tree over all the paths, with the weights of
+ * its edges included, and so its path.</li>
+ * </ul>
+ * For the lattice of a single string, these are the results of
+ * {@code InsideOutside} and {@code ViterbiParser}. As there, paths of one edge
+ * are not recognised, since the rules in Chomsky normal form are binary.
+ *
+ * @author Vasileios Papapanagiotou
+ */
+public class LatticeParser {
+
+	/**
+	 * The indexed grammar that was passed to the constructor.
+	 */
+	public final CNFGrammarIndex g;
+
+	/**
+	 * The lattice that was passed to the constructor.
+	 */
+	public final Lattice lattice;
+
+	/**
+	 * The total weighted probability of all the paths and parse trees; zero if
+	 * the grammar cannot generate the string of any path.
+	 */
+	public final double probability;
+
+	/**
+	 * The weighted probability of the most probable parse tree over all the
+	 * paths.
+	 */
+	public final double bestProbability;
+
+	/**
+	 * A flag indicating if parsing was stopped because the budget that was
+	 * passed to the constructor was exceeded; if so, the probabilities are
+	 * zero.
+	 */
+	public final boolean budgetExceeded;
+
+	private final ParseBudget budget;
+	private final int n;
+	private final int K;
+	private final double[] inside;
+	private final double[] best;
+	private final int[] bestRule;
+	private final int[] bestSplit;
+	private final boolean[] filled;
+
+	/**
+	 * Parses a lattice.
+	 *
+	 * @param g
+	 *            An indexed grammar in Chomsky normal form
+	 * @param lattice
+	 *            A lattice whose edges are labelled with terminals of the
+	 *            grammar
+	 */
+	public LatticeParser(CNFGrammarIndex g, Lattice lattice) {
+		this(g, lattice, null);
+	}
+
+	/**
+	 * Parses a lattice within a budget; the entries of the chart are charged
+	 * to it before it is allocated, and then every cell.
+	 *
+	 * @param g
+	 *            An indexed grammar in Chomsky normal form
+	 * @param lattice
+	 *            A lattice whose edges are labelled with terminals of the
+	 *            grammar
+	 * @param budget
+	 *            The limits of the parse, or {@code null} for none
+	 * @throws IllegalArgumentException
+	 *             If the chart is larger than an array can hold and there is
+	 *             no budget
+	 */
+	public LatticeParser(CNFGrammarIndex g, Lattice lattice, ParseBudget budget) {
+		this.g = g;
+		this.lattice = lattice;
+		this.budget = budget;
+		n = lattice.getNoofNodes();
+		K = g.noofKeys;
+		long size = (long) n * (n - 1) / 2 * K;
+		int noofCells = ChartWorkspace.reserve(size, budget) ? n * (n - 1) / 2 : 0;
+		inside = new double[noofCells * K];
+		best = new double[noofCells * K];
+		bestRule = new int[noofCells * K];
+		bestSplit = new int[noofCells * K];
+		filled = new boolean[noofCells];
+		if (noofCells > 0) {
+			parse();
+		}
+		budgetExceeded = budget != null && budget.isExceeded();
+		int root = n > 1 && !budgetExceeded ? getCell(0, n - 1) * K + g.getKey(Alphabet.idStart) : -1;
+		probability = root < 0 ? 0 : inside[root];
+		bestProbability = root < 0 ? 0 : best[root];
+	}
+
+	/**
+	 * @param i
+	 *            A node
+	 * @param j
+	 *            A later node
+	 * @param id
+	 *            The id of a symbol
+	 * @return The total weighted probability that the symbol derives the paths
+	 *         from node i to node j; zero if the budget was exceeded
+	 */
+	public double getInside(int i, int j, int id) {
+		if (budgetExceeded) {
+			return 0;
+		}
+		return inside[getCell(i, j) * K + g.getKey(id)];
+	}
+
+	/**
+	 * Builds the most probable parse tree over all the paths. Its nodes hold
+	 * {@code DummyItem}s with the rule ids and symbol ids of the grammar and
+	 * ids numbered in pre-order; its leaves are the terminals of the best
+	 * path.
+	 *
+	 * @return The root of the tree, or {@code null} if the grammar cannot
+	 *         generate the string of any path
+	 */
+	public TreeNode getTreeRoot() {
+
+		if (bestProbability == 0) {
+			return null;
+		}
+
+		// Pending nodes, with their spans and symbol keys
+		ArrayList<TreeNode> nodes = new ArrayList<>();
+		ArrayList<int[]> spans = new ArrayList<>();
+		long nextId = 0;
+
+		TreeNode root = new TreeNode();
+		nodes.add(root);
+		spans.add(new int[] { 0, n - 1, g.getKey(Alphabet.idStart) });
+
+		while (!nodes.isEmpty()) {
+			TreeNode node = nodes.remove(nodes.size() - 1);
+			int[] span = spans.remove(spans.size() - 1);
+			int x = getCell(span[0], span[1]) * K + span[2];
+			int r = bestRule[x];
+
+			if (r == ParserInterface.noRuleId) {
+				node.o = new DummyItem(nextId++, ParserInterface.noRuleId, g.getId(span[2]));
+				continue;
+			}
+
+			int k = bestSplit[x];
+			node.o = new DummyItem(nextId++, r, g.getId(span[2]));
+			TreeNode left = new TreeNode();
+			TreeNode right = new TreeNode();
+			node.children.add(left);
+			node.children.add(right);
+
+			// Push the right child first, so that ids are in pre-order
+			nodes.add(right);
+			spans.add(new int[] { k, span[1], g.right[r] });
+			nodes.add(left);
+			spans.add(new int[] { span[0], k, g.left[r] });
+		}
+
+		return root;
+	}
+
+	/**
+	 * @return The string of the path of the most probable parse tree, or
+	 *         {@code null} if the grammar cannot generate the string of any
+	 *         path
+	 */
+	public int[] getBestString() {
+		TreeNode root = getTreeRoot();
+		if (root == null) {
+			return null;
+		}
+		ArrayList<Integer> leaves = new ArrayList<>();
+		ArrayList<TreeNode> stack = new ArrayList<>();
+		stack.add(root);
+		while (!stack.isEmpty()) {
+			TreeNode node = stack.remove(stack.size() - 1);
+			if (node.children.isEmpty()) {
+				leaves.add(node.o.getSymbolId());
+			}
+			for (int c = node.children.size() - 1; c >= 0; c--) {
+				stack.add(node.children.get(c));
+			}
+		}
+		int[] s = new int[leaves.size()];
+		for (int i = 0; i < s.length; i++) {
+			s[i] = leaves.get(i);
+		}
+		return s;
+	}
+
+	/**
+	 * @return The number of cell (i, j), for nodes i &lt; j
+	 */
+	private static int getCell(int i, int j) {
+		return j * (j - 1) / 2 + i;
+	}
+
+	private void parse() {
+
+		// The terminals, from the edges
+		for (int e = 0; e < lattice.getNoofEdges(); e++) {
+			int key = g.getKey(lattice.getTerminal(e));
+			double w = lattice.getWeight(e);
+			if (key < g.noofNonTerminals || key >= K || w == 0) {
+				continue;
+			}
+			int c = getCell(lattice.getFrom(e), lattice.getTo(e));
+			int x = c * K + key;
+			filled[c] = true;
+			inside[x] += w;
+			if (w > best[x]) {
+				best[x] = w;
+				bestRule[x] = ParserInterface.noRuleId;
+			}
+		}
+
+		// The keys with non-zero probabilities of every cell filled so far
+		int[][] active = new int[filled.length][];
+
+		for (int s = 1; s < n; s++) {
+			for (int i = 0; i + s < n; i++) {
+				int j = i + s;
+				int c = getCell(i, j);
+				int cell = c * K;
+				if (budget != null && !budget.charge(1)) {
+					return;
+				}
+				for (int k = i + 1; k < j; k++) {
+					int lc = getCell(i, k);
+					int rc = getCell(k, j);
+					if (!filled[lc] || !filled[rc]) {
+						continue;
+					}
+					int left = lc * K;
+					int right = rc * K;
+					int[] keys = active[lc];
+					for (int l = 0; l < keys.length; l++) {
+						int b = keys[l];
+						double pb = inside[left + b];
+						double bb = best[left + b];
+						for (int q = g.leftStart[b]; q < g.leftStart[b + 1]; q++) {
+							int r = g.byLeft[q];
+							int x = cell + g.from[r];
+							double pc = inside[right + g.right[r]];
+							if (pc == 0) {
+								continue;
+							}
+							filled[c] = true;
+							inside[x] += g.pr[r] * pb * pc;
+							double p = g.pr[r] * bb * best[right + g.right[r]];
+							if (p > best[x]) {
+								best[x] = p;
+								bestRule[x] = r;
+								bestSplit[x] = k;
+							}
+						}
+					}
+				}
+				if (filled[c]) {
+					int noofActive = 0;
+					int[] keys = new int[K];
+					for (int a = 0; a < K; a++) {
+						if (inside[cell + a] != 0) {
+							keys[noofActive++] = a;
+						}
+					}
+					active[c] = Arrays.copyOf(keys, noofActive);
+				}
+			}
+		}
+	}
+
+}
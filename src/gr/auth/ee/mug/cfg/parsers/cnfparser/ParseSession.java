@@ -0,0 +1,202 @@
+package gr.auth.ee.mug.cfg.parsers.cnfparser;
+
+import java.util.ArrayList;
+
+import gr.auth.ee.mug.cfg.grammar.Alphabet;
+
+/**
+ * The inside chart of a string that can be edited: symbols can be replaced,
+ * inserted and deleted, and after each edit only the cells whose spans cover
+ * the edit are computed again.<br>
+ * <br>
+ * The chart is the packed chart of {@code InsideOutside}, kept in rows by the
+ * first symbol of the span, so row i holds the cells of spans i..i, i..i+1,
+ * and so on. A span that ends before the edit keeps its cell; a span that
+ * starts after it keeps its cell too, with its row moved along with the
+ * symbols. The cells of the spans that cross the edit are dropped from the
+ * ends of their rows and computed again; for an edit at position p of a string
+ * of n symbols there are about p (n - p) of them, instead of n (n + 1) / 2
+ * for a new parse.
+ *
+ * @author Vasileios Papapanagiotou
+ */
+public class ParseSession {
+
+	/**
+	 * The indexed grammar that was passed to the constructor.
+	 */
+	public final CNFGrammarIndex g;
+
+	private final ArrayList<Integer> stringIDs = new ArrayList<>();
+
+	// rows.get(i).get(l) is the cell of span i..i+l, or null if no symbol
+	// derives the span
+	private final ArrayList<ArrayList<InsideCell>> rows = new ArrayList<>();
+	private int noofComputedCells = 0;
+
+	/**
+	 * Parses a string.
+	 *
+	 * @param g
+	 *            An indexed grammar in Chomsky normal form
+	 * @param stringIDs
+	 *            The ids of the terminals of the string
+	 */
+	public ParseSession(CNFGrammarIndex g, int[] stringIDs) {
+		this.g = g;
+		for (int i = 0; i < stringIDs.length; i++) {
+			this.stringIDs.add(stringIDs[i]);
+			rows.add(new ArrayList<InsideCell>());
+		}
+		update();
+	}
+
+	/**
+	 * Replaces a symbol of the string.
+	 *
+	 * @param pos
+	 *            The position of the symbol
+	 * @param id
+	 *            The id of the new terminal
+	 */
+	public void replace(int pos, int id) {
+		stringIDs.set(pos, id);
+		truncate(pos, pos);
+		update();
+	}
+
+	/**
+	 * Inserts a symbol in the string.
+	 *
+	 * @param pos
+	 *            The position of the new symbol; the symbols from there on
+	 *            move one position to the right
+	 * @param id
+	 *            The id of the new terminal
+	 */
+	public void insert(int pos, int id) {
+		stringIDs.add(pos, id);
+		rows.add(pos, new ArrayList<InsideCell>());
+		truncate(pos - 1, pos);
+		update();
+	}
+
+	/**
+	 * Deletes a symbol of the string.
+	 *
+	 * @param pos
+	 *            The position of the symbol; the symbols after it move one
+	 *            position to the left
+	 */
+	public void delete(int pos) {
+		stringIDs.remove(pos);
+		rows.remove(pos);
+		truncate(pos - 1, pos);
+		update();
+	}
+
+	/**
+	 * @return The current string
+	 */
+	public int[] getStringIDs() {
+		int[] s = new int[stringIDs.size()];
+		for (int i = 0; i < s.length; i++) {
+			s[i] = stringIDs.get(i);
+		}
+		return s;
+	}
+
+	/**
+	 * @return The number of symbols of the current string
+	 */
+	public int getLength() {
+		return stringIDs.size();
+	}
+
+	/**
+	 * @return The total probability of all the parse trees of the current
+	 *         string; zero if the grammar cannot generate it
+	 */
+	public double getProbability() {
+		int n = stringIDs.size();
+		return n == 0 ? 0 : getInside(0, n - 1, Alphabet.idStart);
+	}
+
+	/**
+	 * @return If the grammar can generate the current string
+	 */
+	public boolean canGenerate() {
+		return getProbability() > 0;
+	}
+
+	/**
+	 * @param i
+	 *            The index of the first symbol of the span
+	 * @param j
+	 *            The index of the last symbol of the span
+	 * @param id
+	 *            The id of a symbol
+	 * @return The probability that the symbol derives symbols i..j of the
+	 *         current string
+	 */
+	public double getInside(int i, int j, int id) {
+		InsideCell c = rows.get(i).get(j - i);
+		return c == null ? 0 : c.inside[g.getKey(id)];
+	}
+
+	/**
+	 * @return The number of cells computed by the last edit (or by the
+	 *         constructor)
+	 */
+	public int getNoofComputedCells() {
+		return noofComputedCells;
+	}
+
+	/**
+	 * Drops the cells of the spans that start at or before {@code last} and
+	 * end at or after {@code first}.
+	 */
+	private void truncate(int last, int first) {
+		for (int i = 0; i <= last; i++) {
+			ArrayList<InsideCell> row = rows.get(i);
+			int keep = Math.max(first - i, 0);
+			while (row.size() > keep) {
+				row.remove(row.size() - 1);
+			}
+		}
+	}
+
+	/**
+	 * Computes the missing cells, from the shortest spans to the longest, so
+	 * the cells a cell is computed from are always there.
+	 */
+	private void update() {
+
+		int n = stringIDs.size();
+		noofComputedCells = 0;
+		for (int l = 0; l < n; l++) {
+			for (int i = 0; i < n - l; i++) {
+				ArrayList<InsideCell> row = rows.get(i);
+				if (row.size() > l) {
+					continue;
+				}
+				row.add(l == 0 ? InsideCell.newFromTerminal(g, stringIDs.get(i)) : compute(i, l));
+				noofComputedCells++;
+			}
+		}
+	}
+
+	/**
+	 * @return The cell of span i..i+l, from the cells of its two parts at every
+	 *         split point
+	 */
+	private InsideCell compute(int i, int l) {
+		double[] in = null;
+		ArrayList<InsideCell> row = rows.get(i);
+		for (int k = 0; k < l; k++) {
+			in = InsideCell.combine(g, row.get(k), rows.get(i + k + 1).get(l - k - 1), in);
+		}
+		return InsideCell.newFromInside(in);
+	}
+
+}
@@ -0,0 +1,176 @@
+package gr.auth.ee.mug.cfg.parsers.cnfparser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Random;
+
+import gr.auth.ee.mug.cfg.dottools.DummyItem;
+import gr.auth.ee.mug.cfg.dottools.TreeNode;
+import gr.auth.ee.mug.cfg.grammar.Alphabet;
+import gr.auth.ee.mug.cfg.parsers.ParserInterface;
+import gr.auth.ee.mug.cfg.sampling.AliasTable;
+
+/**
+ * Draws parse trees of a string from their posterior distribution, i.e. each
+ * tree with probability equal to its probability divided by the probability
+ * of the string, without enumerating the trees.<br>
+ * <br>
+ * Trees are drawn top-down over the inside probabilities of an
+ * {@code InsideOutside} chart: a symbol A over symbols i..j is expanded by
+ * rule A -> B C and split point k with probability proportional to
+ * {@code P(A -> B C) inside(B, i, k) inside(C, k + 1, j)}. The choices of each
+ * (cell, symbol) pair are gathered the first time the pair is expanded and
+ * kept in an {@code AliasTable}, so after the first samples a tree costs time
+ * linear in its size.<br>
+ * <br>
+ * A sampler is not thread-safe; threads should use separate samplers. The
+ * chart must not be reused for another string while it is sampled.
+ *
+ * @author Vasileios Papapanagiotou
+ */
+public class PosteriorSampler {
+
+	/**
+	 * The chart that was passed to the constructor.
+	 */
+	public final InsideOutside io;
+
+	private final CNFGrammarIndex g;
+	private final int n;
+	private final HashMap<Long, Choices> cache = new HashMap<>();
+
+	/**
+	 * @param io
+	 *            The inside probabilities of a string
+	 */
+	public PosteriorSampler(InsideOutside io) {
+		this.io = io;
+		g = io.g;
+		n = io.stringIDs.length;
+	}
+
+	/**
+	 * Draws a parse tree. Its nodes hold {@code DummyItem}s with the rule ids
+	 * and symbol ids of the grammar and ids numbered in pre-order.
+	 *
+	 * @param rnd
+	 *            The random number generator
+	 * @return The root of the tree, or {@code null} if the grammar cannot
+	 *         generate the string
+	 */
+	public TreeNode sample(Random rnd) {
+
+		if (io.probability == 0) {
+			return null;
+		}
+
+		// Pending nodes, with their spans and symbol keys
+		ArrayList<TreeNode> nodes = new ArrayList<>();
+		ArrayList<int[]> spans = new ArrayList<>();
+		long nextId = 0;
+
+		TreeNode root = new TreeNode();
+		nodes.add(root);
+		spans.add(new int[] { 0, n - 1, g.getKey(Alphabet.idStart) });
+
+		while (!nodes.isEmpty()) {
+			TreeNode node = nodes.remove(nodes.size() - 1);
+			int[] span = spans.remove(spans.size() - 1);
+			int i = span[0];
+			int j = span[1];
+			int a = span[2];
+
+			if (i == j) {
+				node.o = new DummyItem(nextId++, ParserInterface.noRuleId, io.stringIDs[i]);
+				continue;
+			}
+
+			Choices choices = getChoices(i, j, a);
+			int c = choices.table.sample(rnd);
+			int r = choices.rules[c];
+			int k = choices.splits[c];
+			node.o = new DummyItem(nextId++, r, g.getId(a));
+
+			TreeNode left = new TreeNode();
+			TreeNode right = new TreeNode();
+			node.children.add(left);
+			node.children.add(right);
+
+			// Push the right child first, so that ids are in pre-order
+			nodes.add(right);
+			spans.add(new int[] { k + 1, j, g.right[r] });
+			nodes.add(left);
+			spans.add(new int[] { i, k, g.left[r] });
+		}
+
+		return root;
+	}
+
+	/**
+	 * The ways to expand a symbol over a span, and a table to choose among
+	 * them.
+	 */
+	private static class Choices {
+
+		final int[] rules;
+		final int[] splits;
+		final AliasTable table;
+
+		Choices(int[] rules, int[] splits, double[] weights) {
+			this.rules = rules;
+			this.splits = splits;
+			table = new AliasTable(weights);
+		}
+
+	}
+
+	private Choices getChoices(int i, int j, int a) {
+
+		long key = ((long) i * n + j) * g.noofKeys + a;
+		Choices choices = cache.get(key);
+		if (choices != null) {
+			return choices;
+		}
+
+		ArrayList<Integer> rules = new ArrayList<>();
+		ArrayList<Integer> splits = new ArrayList<>();
+		ArrayList<Double> weights = new ArrayList<>();
+		ChartWorkspace ws = io.ws;
+		int K = g.noofKeys;
+		for (int k = i; k < j; k++) {
+			int lc = InsideOutside.getCell(i, k);
+			int rc = InsideOutside.getCell(k + 1, j);
+			if (!ws.filled[lc] || !ws.filled[rc]) {
+				continue;
+			}
+			for (int l = ws.activeStart[lc]; l < ws.activeEnd[lc]; l++) {
+				int b = ws.activeKeys[l];
+				for (int q = g.leftStart[b]; q < g.leftStart[b + 1]; q++) {
+					int r = g.byLeft[q];
+					if (g.from[r] != a) {
+						continue;
+					}
+					double w = g.pr[r] * ws.inside[lc * K + b] * ws.inside[rc * K + g.right[r]];
+					if (w > 0) {
+						rules.add(r);
+						splits.add(k);
+						weights.add(w);
+					}
+				}
+			}
+		}
+
+		int[] r = new int[rules.size()];
+		int[] s = new int[rules.size()];
+		double[] w = new double[rules.size()];
+		for (int c = 0; c < r.length; c++) {
+			r[c] = rules.get(c);
+			s[c] = splits.get(c);
+			w[c] = weights.get(c);
+		}
+		choices = new Choices(r, s, w);
+		cache.put(key, choices);
+		return choices;
+	}
+
+}
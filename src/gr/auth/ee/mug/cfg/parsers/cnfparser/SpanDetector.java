@@ -0,0 +1,257 @@
+package gr.auth.ee.mug.cfg.parsers.cnfparser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+
+import gr.auth.ee.mug.cfg.grammar.Alphabet;
+
+/**
+ * Finds the substrings of a stream of symbols that the start symbol derives,
+ * in one pass over the stream.<br>
+ * <br>
+ * The packed chart of {@code InsideOutside} is built column by column: when a
+ * symbol is appended, the cells of the spans that end with it are computed,
+ * from the shortest to the longest, and every span whose inside probability
+ * for the start symbol is at least a threshold is reported. With a maximum
+ * span length W, only the last W columns are kept, in a ring, so a stream of
+ * n symbols takes O(n W&sup2;) time and O(W&sup2;) memory; without one, the
+ * whole chart of the stream is kept, as in {@code InsideOutside}. The spans
+ * found are only kept if {@code setRetainSpans} asks for them.<br>
+ * <br>
+ * {@code getSegmentation()} gives non-overlapping spans among those found:
+ * the ones that cover the most symbols and, of those, have the greatest
+ * product of probabilities. The choice is updated as spans are found, with
+ * the best choice for each of the last W prefixes of the stream, so it costs
+ * nothing to ask for, and only the spans of those choices are kept. As with
+ * {@code CNFParser}, spans of one symbol are not derived, since the rules in
+ * Chomsky normal form are binary.
+ *
+ * @author Vasileios Papapanagiotou
+ */
+public class SpanDetector {
+
+	/**
+	 * A span of the stream that the start symbol derives.
+	 */
+	public static class Span {
+
+		/**
+		 * The position of the first symbol of the span.
+		 */
+		public final int start;
+
+		/**
+		 * The position of the last symbol of the span.
+		 */
+		public final int end;
+
+		/**
+		 * The total probability of the parse trees of the span.
+		 */
+		public final double probability;
+
+		/**
+		 * @param start
+		 *            The position of the first symbol
+		 * @param end
+		 *            The position of the last symbol
+		 * @param probability
+		 *            The total probability of the parse trees
+		 */
+		public Span(int start, int end, double probability) {
+			this.start = start;
+			this.end = end;
+			this.probability = probability;
+		}
+
+		@Override
+		public String toString() {
+			return "(" + start + ", " + end + "): " + probability;
+		}
+
+	}
+
+	/**
+	 * The indexed grammar that was passed to the constructor.
+	 */
+	public final CNFGrammarIndex g;
+
+	private final int maxLength;
+	private final double minProbability;
+	private final int startKey;
+	private boolean retainSpans = false;
+	private int length = 0;
+
+	// columns[j % columns.length][j - i] is the cell of span i..j, or null if
+	// no symbol derives it; the ring grows up to the maximum length of a span
+	private InsideCell[][] columns;
+	private final ArrayList<Span> spans = new ArrayList<>();
+
+	// The best choice of spans among the first j symbols, for the last
+	// maximum length + 1 values of j, at index j % best.length
+	private Choice[] best;
+
+	/**
+	 * Creates a detector for an empty stream.
+	 *
+	 * @param g
+	 *            An indexed grammar in Chomsky normal form
+	 * @param maxLength
+	 *            The maximum length of a span, or 0 for no maximum
+	 * @param minProbability
+	 *            The least probability of a reported span (above zero)
+	 */
+	public SpanDetector(CNFGrammarIndex g, int maxLength, double minProbability) {
+		this.g = g;
+		this.maxLength = maxLength > 0 ? maxLength : Integer.MAX_VALUE;
+		this.minProbability = minProbability;
+		startKey = g.getKey(Alphabet.idStart);
+		columns = new InsideCell[Math.min(16, this.maxLength)][];
+		best = new Choice[columns.length + 1];
+		best[0] = new Choice(null, null, 0, 0);
+	}
+
+	/**
+	 * @param retainSpans
+	 *            If the spans found from now on are kept for
+	 *            {@code getSpans()}; they are not by default, so that a long
+	 *            stream takes bounded memory
+	 */
+	public void setRetainSpans(boolean retainSpans) {
+		this.retainSpans = retainSpans;
+	}
+
+	/**
+	 * Appends a symbol to the stream.
+	 *
+	 * @param id
+	 *            The id of the terminal
+	 * @return The spans that end with the symbol, from the longest to the
+	 *         shortest
+	 */
+	public ArrayList<Span> append(int id) {
+
+		int j = length++;
+		int w = Math.min(j + 1, maxLength);
+		if (j == columns.length && j < maxLength) {
+			// The ring is full, but not yet of the maximum length
+			columns = Arrays.copyOf(columns, (int) Math.min(2L * j, maxLength));
+			best = Arrays.copyOf(best, columns.length + 1);
+		}
+		InsideCell[] column = new InsideCell[w];
+		columns[j % columns.length] = column;
+
+		column[0] = InsideCell.newFromTerminal(g, id);
+		ArrayList<Span> found = new ArrayList<>();
+		for (int l = 1; l < w; l++) {
+			int i = j - l;
+			column[l] = compute(i, j);
+			if (column[l] != null && column[l].inside[startKey] >= minProbability
+					&& column[l].inside[startKey] > 0) {
+				found.add(new Span(i, j, column[l].inside[startKey]));
+			}
+		}
+		Collections.reverse(found);
+		if (retainSpans) {
+			spans.addAll(found);
+		}
+
+		// The best choice among the first j + 1 symbols leaves symbol j out,
+		// or ends with a span found now
+		Choice c = best[j % best.length];
+		for (int s = 0; s < found.size(); s++) {
+			Span span = found.get(s);
+			Choice before = best[span.start % best.length];
+			int cover = before.cover + span.end - span.start + 1;
+			double logp = before.logp + Math.log(span.probability);
+			if (cover > c.cover || (cover == c.cover && logp > c.logp)) {
+				c = new Choice(span, before, cover, logp);
+			}
+		}
+		best[(j + 1) % best.length] = c;
+		return found;
+	}
+
+	/**
+	 * Appends symbols to the stream.
+	 *
+	 * @param stringIDs
+	 *            The ids of the terminals
+	 * @return The spans that end with the symbols, by end and then from the
+	 *         longest to the shortest
+	 */
+	public ArrayList<Span> append(int[] stringIDs) {
+		ArrayList<Span> found = new ArrayList<>();
+		for (int i = 0; i < stringIDs.length; i++) {
+			found.addAll(append(stringIDs[i]));
+		}
+		return found;
+	}
+
+	/**
+	 * @return The number of symbols of the stream so far
+	 */
+	public int getLength() {
+		return length;
+	}
+
+	/**
+	 * @return The spans found while {@code setRetainSpans} asked for them, by
+	 *         end and then from the longest to the shortest
+	 */
+	public ArrayList<Span> getSpans() {
+		return new ArrayList<>(spans);
+	}
+
+	/**
+	 * Gives non-overlapping spans among those found so far: the ones that
+	 * cover the most symbols and, of those, have the greatest product of
+	 * probabilities.
+	 *
+	 * @return The spans, in order
+	 */
+	public ArrayList<Span> getSegmentation() {
+		ArrayList<Span> segmentation = new ArrayList<>();
+		for (Choice c = best[length % best.length]; c.span != null; c = c.before) {
+			segmentation.add(c.span);
+		}
+		Collections.reverse(segmentation);
+		return segmentation;
+	}
+
+	/**
+	 * @return The cell of span i..j, from the cells of its two parts at every
+	 *         split point
+	 */
+	private InsideCell compute(int i, int j) {
+		double[] in = null;
+		InsideCell[] column = columns[j % columns.length];
+		for (int k = i; k < j; k++) {
+			in = InsideCell.combine(g, columns[k % columns.length][k - i], column[j - k - 1], in);
+		}
+		return InsideCell.newFromInside(in);
+	}
+
+	/**
+	 * A choice of non-overlapping spans among the first symbols of the
+	 * stream: its last span, the choice before that span, the number of
+	 * symbols covered and the logarithm of the product of probabilities.
+	 */
+	private static class Choice {
+
+		final Span span;
+		final Choice before;
+		final int cover;
+		final double logp;
+
+		Choice(Span span, Choice before, int cover, double logp) {
+			this.span = span;
+			this.before = before;
+			this.cover = cover;
+			this.logp = logp;
+		}
+
+	}
+
+}
@@ -0,0 +1,230 @@
+package gr.auth.ee.mug.cfg.parsers.cnfparser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import gr.auth.ee.mug.cfg.dottools.DummyItem;
+import gr.auth.ee.mug.cfg.dottools.TreeNode;
+import gr.auth.ee.mug.cfg.grammar.Alphabet;
+import gr.auth.ee.mug.cfg.parsers.ParseBudget;
+import gr.auth.ee.mug.cfg.parsers.ParserInterface;
+
+/**
+ * Finds the most probable parse tree of a string under a grammar in Chomsky
+ * normal form (the Viterbi parse), with the packed chart of
+ * {@code InsideOutside} where sums are replaced by maxima: cell (i, j) keeps,
+ * for every symbol, the probability of its best derivation of symbols i..j
+ * together with the rule and split point of that derivation. Of derivations
+ * with equal probabilities, the first found is kept.<br>
+ * <br>
+ * The chart is kept in a {@code ChartWorkspace}. When one is passed to the
+ * constructor, the chart is only valid until the workspace is used for
+ * another string.
+ *
+ * @author Vasileios Papapanagiotou
+ */
+public class ViterbiParser {
+
+	/**
+	 * The indexed grammar that was passed to the constructor.
+	 */
+	public final CNFGrammarIndex g;
+
+	/**
+	 * The string that was passed to the constructor.
+	 */
+	public final int[] stringIDs;
+
+	/**
+	 * The probability of the most probable parse tree; zero if the grammar
+	 * cannot generate the string.
+	 */
+	public final double probability;
+
+	/**
+	 * A flag indicating if parsing was stopped because the budget that was
+	 * passed to the constructor was exceeded; if so, the probability is zero.
+	 */
+	public final boolean budgetExceeded;
+
+	private final ChartWorkspace ws;
+	private final ParseBudget budget;
+	private final int n;
+	private final int K;
+
+	/**
+	 * Parses a string, in a chart of its own.
+	 *
+	 * @param g
+	 *            An indexed grammar in Chomsky normal form
+	 * @param stringIDs
+	 *            The ids of the terminals of the string
+	 */
+	public ViterbiParser(CNFGrammarIndex g, int[] stringIDs) {
+		this(g, stringIDs, new ChartWorkspace());
+	}
+
+	/**
+	 * Parses a string, in the buffers of a workspace.
+	 *
+	 * @param g
+	 *            An indexed grammar in Chomsky normal form
+	 * @param stringIDs
+	 *            The ids of the terminals of the string
+	 * @param ws
+	 *            The workspace that holds the chart
+	 */
+	public ViterbiParser(CNFGrammarIndex g, int[] stringIDs, ChartWorkspace ws) {
+		this(g, stringIDs, ws, null);
+	}
+
+	/**
+	 * Parses a string, in the buffers of a workspace and within a budget;
+	 * every cell is charged to it.
+	 *
+	 * @param g
+	 *            An indexed grammar in Chomsky normal form
+	 * @param stringIDs
+	 *            The ids of the terminals of the string
+	 * @param ws
+	 *            The workspace that holds the chart
+	 * @param budget
+	 *            The limits of the parse, or {@code null} for none
+	 */
+	public ViterbiParser(CNFGrammarIndex g, int[] stringIDs, ChartWorkspace ws, ParseBudget budget) {
+		this.g = g;
+		this.stringIDs = stringIDs;
+		this.ws = ws;
+		this.budget = budget;
+		n = stringIDs.length;
+		K = g.noofKeys;
+		double p = n == 0 ? 0 : parse();
+		budgetExceeded = budget != null && budget.isExceeded();
+		probability = budgetExceeded ? 0 : p;
+	}
+
+	/**
+	 * Builds the most probable parse tree. Its nodes hold {@code DummyItem}s
+	 * with the rule ids and symbol ids of the grammar and ids numbered in
+	 * pre-order.
+	 *
+	 * @return The root of the tree, or {@code null} if the grammar cannot
+	 *         generate the string
+	 */
+	public TreeNode getTreeRoot() {
+
+		if (probability == 0) {
+			return null;
+		}
+
+		// Pending nodes, with their spans and symbol keys
+		ArrayList<TreeNode> nodes = new ArrayList<>();
+		ArrayList<int[]> spans = new ArrayList<>();
+		long nextId = 0;
+
+		TreeNode root = new TreeNode();
+		nodes.add(root);
+		spans.add(new int[] { 0, n - 1, g.getKey(Alphabet.idStart) });
+
+		while (!nodes.isEmpty()) {
+			TreeNode node = nodes.remove(nodes.size() - 1);
+			int[] span = spans.remove(spans.size() - 1);
+			int i = span[0];
+			int j = span[1];
+			int a = span[2];
+
+			if (i == j) {
+				node.o = new DummyItem(nextId++, ParserInterface.noRuleId, stringIDs[i]);
+				continue;
+			}
+
+			int x = InsideOutside.getCell(i, j) * K + a;
+			int r = ws.bestRule[x];
+			int k = ws.bestSplit[x];
+			node.o = new DummyItem(nextId++, r, g.getId(a));
+
+			TreeNode left = new TreeNode();
+			TreeNode right = new TreeNode();
+			node.children.add(left);
+			node.children.add(right);
+
+			// Push the right child first, so that ids are in pre-order
+			nodes.add(right);
+			spans.add(new int[] { k + 1, j, g.right[r] });
+			nodes.add(left);
+			spans.add(new int[] { i, k, g.left[r] });
+		}
+
+		return root;
+	}
+
+	private double parse() {
+
+		if (!ChartWorkspace.reserve((long) n * (n + 1) / 2 * K, budget)) {
+			return 0;
+		}
+		int noofCells = n * (n + 1) / 2;
+		ws.resetBest(noofCells, K);
+		boolean[] filled = ws.bestFilled;
+		double[] best = ws.best;
+
+		// Spans of length 1: the terminals
+		for (int i = 0; i < n; i++) {
+			int c = InsideOutside.getCell(i, i);
+			int key = g.getKey(stringIDs[i]);
+			if (key < g.noofNonTerminals || key >= K) {
+				continue;
+			}
+			Arrays.fill(best, c * K, (c + 1) * K, 0);
+			best[c * K + key] = 1;
+			filled[c] = true;
+		}
+
+		for (int s = 1; s < n; s++) {
+			for (int i = 0; i < n - s; i++) {
+				int j = i + s;
+				int c = InsideOutside.getCell(i, j);
+				int cell = c * K;
+				if (budget != null && !budget.charge(1)) {
+					return 0;
+				}
+				for (int k = i; k < j; k++) {
+					int lc = InsideOutside.getCell(i, k);
+					int rc = InsideOutside.getCell(k + 1, j);
+					if (!filled[lc] || !filled[rc]) {
+						continue;
+					}
+					int left = lc * K;
+					int right = rc * K;
+					for (int b = 0; b < K; b++) {
+						double pb = best[left + b];
+						if (pb == 0) {
+							continue;
+						}
+						for (int q = g.leftStart[b]; q < g.leftStart[b + 1]; q++) {
+							int r = g.byLeft[q];
+							double p = g.pr[r] * pb * best[right + g.right[r]];
+							if (p == 0) {
+								continue;
+							}
+							if (!filled[c]) {
+								Arrays.fill(best, cell, cell + K, 0);
+								filled[c] = true;
+							}
+							int x = cell + g.from[r];
+							if (p > best[x]) {
+								best[x] = p;
+								ws.bestRule[x] = r;
+								ws.bestSplit[x] = k;
+							}
+						}
+					}
+				}
+			}
+		}
+
+		int root = InsideOutside.getCell(0, n - 1);
+		return filled[root] ? best[root * K + g.getKey(Alphabet.idStart)] : 0;
+	}
+
+}
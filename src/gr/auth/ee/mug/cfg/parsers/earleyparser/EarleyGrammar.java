@@ -0,0 +1,188 @@
+package gr.auth.ee.mug.cfg.parsers.earleyparser;
+
+import java.util.ArrayList;
+
+import gr.auth.ee.mug.cfg.grammar.Alphabet;
+import gr.auth.ee.mug.cfg.grammar.ContextFreeGrammar;
+import gr.auth.ee.mug.cfg.grammar.Rule;
+
+/**
+ * The rules of a grammar prepared for Earley recognizers whose items hold no
+ * back pointers: the right hand sides without 'e', the dotted rules numbered,
+ * the rules grouped by left hand side and the nullable non-terminals.
+ *
+ * @author Vasileios Papapanagiotou
+ */
+class EarleyGrammar {
+
+	// For every rule its left hand side (index of non-terminal) and right
+	// hand side (without 'e'), and the number of its first dotted rule;
+	// dotted rule d + k has the dot after k symbols
+	final int[] lhs;
+	final int[][] rhs;
+	final int[] firstDotted;
+	final int[] ruleOfDotted;
+	final int[][] rulesByLhs;
+	final boolean[] nullable;
+
+	/**
+	 * @param cfg
+	 *            A context-free grammar
+	 */
+	EarleyGrammar(ContextFreeGrammar cfg) {
+
+		Alphabet al = cfg.getAlphabet();
+		int noofRules = cfg.getNoofRules();
+		int noofNonTerminals = al.getNoofNonTerminals();
+
+		lhs = new int[noofRules];
+		rhs = new int[noofRules][];
+		firstDotted = new int[noofRules];
+		int noofDotted = 0;
+		int[] noofByLhs = new int[noofNonTerminals];
+		for (int r = 0; r < noofRules; r++) {
+			Rule rule = cfg.getRule(r);
+			lhs[r] = al.getIdx(rule.getFrom());
+			ArrayList<Integer> to = new ArrayList<>();
+			for (int i = 0; i < rule.getToLength(); i++) {
+				if (rule.getTo(i) != Alphabet.idEmptyString) {
+					to.add(rule.getTo(i));
+				}
+			}
+			rhs[r] = new int[to.size()];
+			for (int i = 0; i < rhs[r].length; i++) {
+				rhs[r][i] = to.get(i);
+			}
+			firstDotted[r] = noofDotted;
+			noofDotted += rhs[r].length + 1;
+			noofByLhs[lhs[r]]++;
+		}
+		ruleOfDotted = new int[noofDotted];
+		rulesByLhs = new int[noofNonTerminals][];
+		for (int a = 0; a < noofNonTerminals; a++) {
+			rulesByLhs[a] = new int[noofByLhs[a]];
+			noofByLhs[a] = 0;
+		}
+		for (int r = 0; r < noofRules; r++) {
+			for (int k = 0; k <= rhs[r].length; k++) {
+				ruleOfDotted[firstDotted[r] + k] = r;
+			}
+			rulesByLhs[lhs[r]][noofByLhs[lhs[r]]++] = r;
+		}
+		nullable = findNullable(noofNonTerminals);
+	}
+
+	/**
+	 * @return The state of position 0: the rules of the start symbol
+	 */
+	EarleyState initial() {
+		EarleyState state = new EarleyState(0);
+		int[] rules = rulesByLhs[-Alphabet.idStart - 1];
+		for (int i = 0; i < rules.length; i++) {
+			state.add(firstDotted[rules[i]], 0);
+		}
+		return state;
+	}
+
+	/**
+	 * Predicts and completes the items of a state, until no item is added.
+	 * {@code states} holds the states of the positions before it, by
+	 * position.
+	 */
+	void close(EarleyState state, ArrayList<EarleyState> states) {
+
+		for (int q = 0; q < state.size; q++) {
+			int d = state.dotted[q];
+			int start = state.start[q];
+			int r = ruleOfDotted[d];
+			int dot = d - firstDotted[r];
+
+			if (dot == rhs[r].length) {
+				// Complete: advance the items of the start state waiting for
+				// the left hand side
+				EarleyState past = start == state.position ? state : states.get(start);
+				ArrayList<Integer> waiting = past.waiting.get(-(lhs[r] + 1));
+				if (waiting != null) {
+					for (int i = 0; i < waiting.size(); i++) {
+						int w = waiting.get(i);
+						state.add(past.dotted[w] + 1, past.start[w]);
+					}
+				}
+				continue;
+			}
+
+			int next = rhs[r][dot];
+			state.addWaiting(next, q);
+			if (next < 0) {
+				// Predict, and step over the non-terminal if it is nullable
+				int a = -next - 1;
+				for (int i = 0; i < rulesByLhs[a].length; i++) {
+					state.add(firstDotted[rulesByLhs[a][i]], state.position);
+				}
+				if (nullable[a]) {
+					state.add(d + 1, start);
+				}
+			}
+		}
+	}
+
+	/**
+	 * @return If a state holds a completed rule of the start symbol that
+	 *         starts at the beginning of the string
+	 */
+	boolean isComplete(EarleyState state) {
+		int[] rules = rulesByLhs[-Alphabet.idStart - 1];
+		for (int i = 0; i < rules.length; i++) {
+			if (state.contains(firstDotted[rules[i]] + rhs[rules[i]].length, 0)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return If a dotted rule has the dot at its end
+	 */
+	boolean isCompleted(int dotted) {
+		int r = ruleOfDotted[dotted];
+		return dotted - firstDotted[r] == rhs[r].length;
+	}
+
+	/**
+	 * @return If some rule has only 'e' on its right hand side
+	 */
+	boolean hasErasingRules() {
+		for (int r = 0; r < rhs.length; r++) {
+			if (rhs[r].length == 0) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * @return For every non-terminal, if it derives the empty string
+	 */
+	private boolean[] findNullable(int noofNonTerminals) {
+		boolean[] b = new boolean[noofNonTerminals];
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			for (int r = 0; r < rhs.length; r++) {
+				if (b[lhs[r]]) {
+					continue;
+				}
+				boolean all = true;
+				for (int i = 0; i < rhs[r].length && all; i++) {
+					all = rhs[r][i] < 0 && b[-rhs[r][i] - 1];
+				}
+				if (all) {
+					b[lhs[r]] = true;
+					changed = true;
+				}
+			}
+		}
+		return b;
+	}
+
+}
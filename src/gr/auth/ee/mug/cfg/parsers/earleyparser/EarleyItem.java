@@ -20,17 +20,11 @@ public class EarleyItem implements ParserItemInterface {
 	public final int stateIdx;
 	public final ArrayList<Long> backId = new ArrayList<>();
 	public final String comment;
-	public EarleyItem(int ruleId, int symbolId, int startIdx, int nextIdx, int stateIdx, String comment) {
 
-		this.id = noof++;
-		this.ruleId = ruleId;
-		this.symbolId = symbolId;
-		this.startIdx = startIdx;
-		this.nextIdx = nextIdx;
-		this.stateIdx = stateIdx;
-		this.comment = comment;
-	}
-	
+	/**
+	 * Create a new item. The id is given by the parser, and is unique among
+	 * the items of the parse.
+	 */
 	public EarleyItem(long id, int ruleId, int symbolId, int startIdx, int nextIdx, int stateIdx, String comment) {
 
 		this.id = id;
@@ -93,6 +87,4 @@ public class EarleyItem implements ParserItemInterface {
 		return s;
 	}
 
-	private static long noof = 0;
-
 }
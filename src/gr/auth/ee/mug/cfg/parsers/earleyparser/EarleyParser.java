@@ -6,6 +6,7 @@ import gr.auth.ee.mug.cfg.dottools.TreeNode;
 import gr.auth.ee.mug.cfg.grammar.Alphabet;
 import gr.auth.ee.mug.cfg.grammar.ContextFreeGrammar;
 import gr.auth.ee.mug.cfg.grammar.Rule;
+import gr.auth.ee.mug.cfg.parsers.ParseBudget;
 import gr.auth.ee.mug.cfg.parsers.ParserInterface;
 import gr.auth.ee.mug.cfg.tools.Utilities;
 
@@ -16,12 +17,24 @@ import gr.auth.ee.mug.cfg.tools.Utilities;
  */
 public class EarleyParser implements ParserInterface {
 
+	/**
+	 * A flag indicating if parsing was stopped because the budget that was
+	 * passed to the constructor was exceeded; if so, the string is not
+	 * recognised and there are no trees.
+	 */
+	public final boolean budgetExceeded;
+
 	private final ContextFreeGrammar cfg;
 	private final Alphabet al;
 	private final int[] stringIds;
 	private final ArrayList<ArrayList<EarleyItem>> states;
 	private final ArrayList<Integer> validParses;
 
+	// The items of all states by id; the id of an item is its index here
+	private final ArrayList<EarleyItem> items = new ArrayList<>();
+
+	private final ParseBudget budget;
+
 	/**
 	 * Initializes a recognizer for a grammar and a string, and performs the
 	 * parsing.
@@ -38,6 +51,23 @@ public class EarleyParser implements ParserInterface {
 	 *            {@code max stringIDs[i] <= al.getNoofTerminals()}
 	 */
 	public EarleyParser(ContextFreeGrammar cfg, int[] stringIds) {
+		this(cfg, stringIds, null);
+	}
+
+	/**
+	 * Initializes a recognizer for a grammar and a string, and performs the
+	 * parsing within a budget; every item is charged to it. If the budget is
+	 * exceeded, parsing stops and the string is not recognised.
+	 * 
+	 * @param cfg
+	 *            A context-free grammar
+	 * @param stringIDs
+	 *            An array of integers, where the {@code stringIDs[i]}
+	 *            corresponds to the i-th symbols id
+	 * @param budget
+	 *            The limits of the parse, or {@code null} for none
+	 */
+	public EarleyParser(ContextFreeGrammar cfg, int[] stringIds, ParseBudget budget) {
 
 		// Set finals
 		this.cfg = modifyErasingRules(cfg);
@@ -45,8 +75,10 @@ public class EarleyParser implements ParserInterface {
 		this.stringIds = stringIds;
 		this.states = new ArrayList<>();
 		this.validParses = new ArrayList<>();
+		this.budget = budget;
 
 		parse();
+		budgetExceeded = budget != null && budget.isExceeded();
 	}
 
 	private ContextFreeGrammar modifyErasingRules(ContextFreeGrammar cfg) {
@@ -73,12 +105,20 @@ public class EarleyParser implements ParserInterface {
 		return validParses.size();
 	}
 
+	/**
+	 * @return The number of items in all states; if the budget was exceeded,
+	 *         the number created before parsing stopped
+	 */
+	public long getNoofItems() {
+		return items.size();
+	}
+
 	@Override
 	public TreeNode getTreeRoot(int i) {
 		TreeNode root = new TreeNode();
 		EarleyItem e = states.get(states.size() - 1).get(validParses.get(i));
 		root.o = e;
-		expandTreeNode(root, e);
+		expandTreeNode(root, e, e.startIdx);
 		return root;
 	}
 
@@ -164,7 +204,13 @@ public class EarleyParser implements ParserInterface {
 		return printEarleyStates(states, onlyCompleted);
 	}
 
-	private void expandTreeNode(TreeNode node, EarleyItem e) {
+	/**
+	 * Expand a node of a tree, whose item starts at symbol {@code pos} of the
+	 * string. Terminal leaves are not items of the parse; they are given the
+	 * ids that follow the items, by their position in the string, so the ids
+	 * of a tree are unique and the same for every call.
+	 */
+	private void expandTreeNode(TreeNode node, EarleyItem e, int pos) {
 
 		int iBackId = 0;
 
@@ -175,8 +221,9 @@ public class EarleyParser implements ParserInterface {
 				// no back pointer, and we need to manually create a new leaf in
 				// the tree
 				TreeNode leaf = new TreeNode();
-				leaf.o = new EarleyItem(noRuleId, r.getTo(i), e.startIdx + i, 0, e.stateIdx, "leaf");
+				leaf.o = new EarleyItem(items.size() + pos, noRuleId, r.getTo(i), pos, 0, pos + 1, "leaf");
 				node.children.add(leaf);
+				pos++;
 
 			} else {
 				// The i-th symbol substituted by the rule is a non-terminal; we
@@ -185,24 +232,16 @@ public class EarleyParser implements ParserInterface {
 				EarleyItem o = getEarleyItemById(e.backId.get(iBackId));
 				child.o = o;
 				iBackId++;
-				expandTreeNode(child, o);
+				expandTreeNode(child, o, pos);
 				node.children.add(child);
+				pos = o.stateIdx;
 
 			}
 		}
 	}
 
 	private EarleyItem getEarleyItemById(long id) {
-		for (int i = 0; i < states.size(); i++) {
-			ArrayList<EarleyItem> state = states.get(i);
-			for (int j = 0; j < state.size(); j++) {
-				EarleyItem e = state.get(j);
-				if (e.id == id) {
-					return e;
-				}
-			}
-		}
-		return null;
+		return items.get((int) id);
 	}
 
 	private void parse() {
@@ -216,12 +255,14 @@ public class EarleyParser implements ParserInterface {
 		for (int i = 0; i < cfg.getNoofRules(); i++) {
 			Rule r = cfg.getRule(i);
 			if (r.getFrom() == Alphabet.idStart) {
-				EarleyItem e = new EarleyItem(i, r.getFrom(), 0, 0, 0, "init");
+				EarleyItem e = new EarleyItem(items.size(), i, r.getFrom(), 0, 0, 0, "init");
 				states.get(0).add(e);
+				items.add(e);
 			}
 		}
 
 		// Main loop
+		int charged = 0;
 		for (int i = 0; i < states.size(); i++) {
 			ArrayList<EarleyItem> state = states.get(i);
 
@@ -246,6 +287,12 @@ public class EarleyParser implements ParserInterface {
 
 				}
 				j++;
+
+				// Charge the new items (and the time spent)
+				if (budget != null && !budget.charge(items.size() - charged)) {
+					return;
+				}
+				charged = items.size();
 			} // j
 		} // i
 
@@ -296,8 +343,8 @@ public class EarleyParser implements ParserInterface {
 
 					// Create the new item to add
 					int symbolId = cfg.getRule(pe.ruleId).getFrom();
-					EarleyItem ce = new EarleyItem(pe.ruleId, symbolId, pe.startIdx, pe.nextIdx + 1, e.stateIdx,
-							"complete");
+					EarleyItem ce = new EarleyItem(items.size(), pe.ruleId, symbolId, pe.startIdx, pe.nextIdx + 1,
+							e.stateIdx, "complete");
 					// Copy from pe to ce all of the back pointers
 					for (int k = 0; k < pe.backId.size(); k++) {
 						ce.backId.add(pe.backId.get(k));
@@ -329,7 +376,7 @@ public class EarleyParser implements ParserInterface {
 
 			// Check if the rule replaces the symbol with this id
 			if (id == r.getFrom()) {
-				EarleyItem toAdd = new EarleyItem(i, id, e.stateIdx, 0, e.stateIdx, "predict");
+				EarleyItem toAdd = new EarleyItem(items.size(), i, id, e.stateIdx, 0, e.stateIdx, "predict");
 				safeAdd(states.get(e.stateIdx), toAdd);
 			}
 		}
@@ -352,7 +399,8 @@ public class EarleyParser implements ParserInterface {
 			// This item will be added to the next state
 			int stateIdx = e.stateIdx + 1;
 			int symbolId = cfg.getRule(e.ruleId).getFrom();
-			EarleyItem toAdd = new EarleyItem(e.ruleId, symbolId, e.startIdx, e.nextIdx + 1, stateIdx, "scan");
+			EarleyItem toAdd = new EarleyItem(items.size(), e.ruleId, symbolId, e.startIdx, e.nextIdx + 1, stateIdx,
+					"scan");
 			for (int i = 0; i < e.backId.size(); i++) {
 				toAdd.backId.add(e.backId.get(i));
 			}
@@ -363,18 +411,19 @@ public class EarleyParser implements ParserInterface {
 	/**
 	 * Add an {@code EarleyItem} in a state. If the state already contains the
 	 * item, don't add it again, however append its back pointers (no
-	 * duplicates).
+	 * duplicates); its id is then left unused, and is given to the next item.
 	 * 
 	 * @param state
 	 *            A list of {@code EarleyItem}s
 	 * @param e
 	 *            An {@code EarleyItem}
 	 */
-	private static void safeAdd(ArrayList<EarleyItem> state, EarleyItem e) {
+	private void safeAdd(ArrayList<EarleyItem> state, EarleyItem e) {
 
 		if (!state.contains(e)) {
 			// If the state does not contain e, simply add it
 			state.add(e);
+			items.add(e);
 
 		} else {
 			// Find the index of the state that e is equal to
@@ -0,0 +1,399 @@
+package gr.auth.ee.mug.cfg.parsers.earleyparser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+
+import org.apache.commons.math3.linear.Array2DRowRealMatrix;
+import org.apache.commons.math3.linear.LUDecomposition;
+
+import gr.auth.ee.mug.cfg.grammar.Alphabet;
+import gr.auth.ee.mug.cfg.grammar.ContextFreeGrammar;
+
+/**
+ * The rule probabilities of a grammar without erasing rules, prepared for
+ * probabilistic Earley parsing (Stolcke): the closures {@code (I - P_L)^-1}
+ * and {@code (I - P_U)^-1} of the left-corner and unit rule probability
+ * matrices, the best chain of unit rules between two non-terminals, and the
+ * steps that carry the inner probabilities of the items of scored states
+ * (the total and the best probability of an item's span, given its rule)
+ * and, if the states keep them, their forward probabilities (of the prefix
+ * up to the item, with the item's rule in use). The forward probabilities of
+ * a state are kept divided by {@code exp(logScale)} of the state, so that a
+ * parser can keep them from underflowing.<br>
+ * <br>
+ * Completion goes over the items of a state by start position, latest first:
+ * without erasing rules, the inner probability of a completed item is final
+ * once the items that start after it have been completed. Completed unit
+ * rules are not completed themselves, since the unit closures already account
+ * for them. The positions only need to be numbered so that every item starts
+ * at a lower position than its state, so the states may be those of a string,
+ * of a path of a trie or of the nodes of a lattice.
+ *
+ * @author Vasileios Papapanagiotou
+ */
+class EarleyProbabilities {
+
+	final EarleyGrammar eg;
+	final double[] pr;
+	final boolean[] isUnit;
+
+	// The left-corner closure and, for every non-terminal Z, the non-terminals
+	// Y that can be a left corner of Z (Z included); the unit rule closures,
+	// total and best, and for every Y the non-terminals Z that can derive Y
+	// by unit rules (Y included)
+	final double[][] leftCorner;
+	final int[][] leftCorners;
+	final double[][] unitClosure;
+	final double[][] unitBest;
+	final int[][] unitParents;
+
+	private final int noofNonTerminals;
+
+	/**
+	 * @param cfg
+	 *            A context-free grammar without erasing rules
+	 * @param eg
+	 *            Its rules, prepared for Earley recognizers
+	 * @throws IllegalArgumentException
+	 *             If the grammar has erasing rules
+	 */
+	EarleyProbabilities(ContextFreeGrammar cfg, EarleyGrammar eg) {
+
+		this.eg = eg;
+		noofNonTerminals = cfg.getAlphabet().getNoofNonTerminals();
+		int n = noofNonTerminals;
+		int noofRules = cfg.getNoofRules();
+
+		pr = new double[noofRules];
+		isUnit = new boolean[noofRules];
+		double[][] pl = new double[n][n];
+		double[][] pu = new double[n][n];
+		double[][] bu = new double[n][n];
+		boolean[][] left = new boolean[n][n];
+		boolean[][] unit = new boolean[n][n];
+		for (int r = 0; r < noofRules; r++) {
+			int[] rhs = eg.rhs[r];
+			if (rhs.length == 0) {
+				throw new IllegalArgumentException("The grammar has erasing rules");
+			}
+			pr[r] = cfg.getRule(r).getProbability();
+			if (rhs[0] < 0) {
+				int y = -rhs[0] - 1;
+				pl[eg.lhs[r]][y] += pr[r];
+				left[eg.lhs[r]][y] = true;
+				if (rhs.length == 1) {
+					pu[eg.lhs[r]][y] += pr[r];
+					bu[eg.lhs[r]][y] = Math.max(bu[eg.lhs[r]][y], pr[r]);
+					unit[eg.lhs[r]][y] = true;
+					isUnit[r] = true;
+				}
+			}
+		}
+		boolean[][] leftReach = reach(left);
+		boolean[][] unitReach = reach(unit);
+		leftCorner = closure(pl, leftReach);
+		unitClosure = closure(pu, unitReach);
+		unitBest = bestClosure(bu, unitReach);
+
+		leftCorners = new int[n][];
+		unitParents = new int[n][];
+		int[] list = new int[n];
+		for (int a = 0; a < n; a++) {
+			int count = 0;
+			for (int b = 0; b < n; b++) {
+				if (leftReach[a][b]) {
+					list[count++] = b;
+				}
+			}
+			leftCorners[a] = Arrays.copyOf(list, count);
+			count = 0;
+			for (int b = 0; b < n; b++) {
+				if (unitReach[b][a]) {
+					list[count++] = b;
+				}
+			}
+			unitParents[a] = Arrays.copyOf(list, count);
+		}
+	}
+
+	/**
+	 * @param withForward
+	 *            If the state keeps forward probabilities
+	 * @return The scored state of position 0: the rules of the start symbol
+	 *         and of its left corners
+	 */
+	EarleyState initial(boolean withForward) {
+		EarleyState state = new EarleyState(0);
+		state.score(withForward);
+		double[] expected = new double[noofNonTerminals];
+		expected[-Alphabet.idStart - 1] = 1;
+		predict(state, expected);
+		return state;
+	}
+
+	/**
+	 * Adds the items of a scored state waiting for a terminal, advanced over
+	 * it, to the scored state of a later position, with their probabilities
+	 * times a weight (the forward ones moved to the scale of the later
+	 * state, whose {@code logScale} must be set).
+	 */
+	void scan(EarleyState state, int terminal, double weight, EarleyState next) {
+		ArrayList<Integer> waiting = state.waiting.get(terminal);
+		if (waiting == null) {
+			return;
+		}
+		double scale = Math.exp(state.logScale - next.logScale);
+		for (int i = 0; i < waiting.size(); i++) {
+			int w = waiting.get(i);
+			int x = add(next, state.dotted[w] + 1, state.start[w]);
+			next.inner[x] += state.inner[w] * weight;
+			next.best[x] = Math.max(next.best[x], state.best[w] * weight);
+			if (next.forward != null) {
+				next.forward[x] += state.forward[w] * weight * scale;
+			}
+		}
+	}
+
+	/**
+	 * Completes and then predicts the items of a scored state, which holds
+	 * the items scanned into it. {@code states} holds the scored states of the
+	 * positions before it, by position.
+	 */
+	void close(EarleyState state, ArrayList<EarleyState> states) {
+		complete(state, states);
+
+		// Everything in the state so far was scanned or completed; what these
+		// items expect is predicted, with their total forward probability
+		double[] expected = new double[noofNonTerminals];
+		for (Map.Entry<Integer, ArrayList<Integer>> entry : state.waiting.entrySet()) {
+			int symbol = entry.getKey();
+			if (symbol >= 0) {
+				continue;
+			}
+			ArrayList<Integer> waiting = entry.getValue();
+			for (int i = 0; i < waiting.size(); i++) {
+				expected[-symbol - 1] += state.forward == null ? 1 : state.forward[waiting.get(i)];
+			}
+		}
+		predict(state, expected);
+	}
+
+	/**
+	 * @return The total probability with which the start symbol derives the
+	 *         span from position 0 to a scored state
+	 */
+	double getProbability(EarleyState state) {
+		int s = -Alphabet.idStart - 1;
+		double p = 0;
+		for (int i = 0; i < state.size; i++) {
+			if (state.start[i] == 0 && isCompletedNonUnit(state.dotted[i])) {
+				p += unitClosure[s][eg.lhs[eg.ruleOfDotted[state.dotted[i]]]] * state.inner[i];
+			}
+		}
+		return p;
+	}
+
+	/**
+	 * @return The probability of the best derivation of the span from
+	 *         position 0 to a scored state from the start symbol
+	 */
+	double getBestProbability(EarleyState state) {
+		int s = -Alphabet.idStart - 1;
+		double p = 0;
+		for (int i = 0; i < state.size; i++) {
+			if (state.start[i] == 0 && isCompletedNonUnit(state.dotted[i])) {
+				p = Math.max(p, unitBest[s][eg.lhs[eg.ruleOfDotted[state.dotted[i]]]] * state.best[i]);
+			}
+		}
+		return p;
+	}
+
+	/**
+	 * Adds an item to a state, if it is not there, with zero probabilities
+	 * if the state is scored.
+	 *
+	 * @return The index of the item in the state
+	 */
+	int add(EarleyState state, int dotted, int start) {
+		int size = state.size;
+		int x = state.add(dotted, start);
+		if (state.size > size) {
+			int r = eg.ruleOfDotted[dotted];
+			int dot = dotted - eg.firstDotted[r];
+			if (dot < eg.rhs[r].length) {
+				state.addWaiting(eg.rhs[r][dot], x);
+			}
+		}
+		return x;
+	}
+
+	/**
+	 * Predicts the rules of every non-terminal that can be the left corner of
+	 * an expected one.
+	 *
+	 * @param expected
+	 *            For every non-terminal, the total forward probability of the
+	 *            items that expect it (or, if the state keeps no forward
+	 *            probabilities, any number other than zero if some item does)
+	 */
+	private void predict(EarleyState state, double[] expected) {
+		boolean[] predicted = new boolean[noofNonTerminals];
+		double[] f = new double[noofNonTerminals];
+		for (int z = 0; z < noofNonTerminals; z++) {
+			if (expected[z] == 0) {
+				continue;
+			}
+			for (int c = 0; c < leftCorners[z].length; c++) {
+				int y = leftCorners[z][c];
+				predicted[y] = true;
+				f[y] += expected[z] * leftCorner[z][y];
+			}
+		}
+		for (int y = 0; y < noofNonTerminals; y++) {
+			if (!predicted[y] || (state.forward != null && f[y] == 0)) {
+				continue;
+			}
+			int[] rules = eg.rulesByLhs[y];
+			for (int i = 0; i < rules.length; i++) {
+				int x = add(state, eg.firstDotted[rules[i]], state.position);
+				state.inner[x] = pr[rules[i]];
+				state.best[x] = pr[rules[i]];
+				if (state.forward != null) {
+					state.forward[x] += f[y] * pr[rules[i]];
+				}
+			}
+		}
+	}
+
+	private void complete(EarleyState state, ArrayList<EarleyState> states) {
+
+		int k = state.position;
+		ArrayList<ArrayList<Integer>> byStart = new ArrayList<>();
+		for (int j = 0; j < k; j++) {
+			byStart.add(new ArrayList<Integer>());
+		}
+		for (int i = 0; i < state.size; i++) {
+			if (isCompletedNonUnit(state.dotted[i])) {
+				byStart.get(state.start[i]).add(i);
+			}
+		}
+
+		for (int j = k - 1; j >= 0; j--) {
+			EarleyState past = states.get(j);
+			double scale = Math.exp(past.logScale - state.logScale);
+			ArrayList<Integer> completed = byStart.get(j);
+			for (int c = 0; c < completed.size(); c++) {
+				int y = eg.lhs[eg.ruleOfDotted[state.dotted[completed.get(c)]]];
+				double g = state.inner[completed.get(c)];
+				double b = state.best[completed.get(c)];
+				for (int u = 0; u < unitParents[y].length; u++) {
+					int z = unitParents[y][u];
+					ArrayList<Integer> waiting = past.waiting.get(-(z + 1));
+					if (waiting == null) {
+						continue;
+					}
+					double ru = unitClosure[z][y] * g;
+					double rb = unitBest[z][y] * b;
+					for (int i = 0; i < waiting.size(); i++) {
+						int w = waiting.get(i);
+						int size = state.size;
+						int x = add(state, past.dotted[w] + 1, past.start[w]);
+						state.inner[x] += past.inner[w] * ru;
+						state.best[x] = Math.max(state.best[x], past.best[w] * rb);
+						if (state.forward != null) {
+							state.forward[x] += past.forward[w] * ru * scale;
+						}
+						if (state.size > size && isCompletedNonUnit(state.dotted[x])) {
+							byStart.get(state.start[x]).add(x);
+						}
+					}
+				}
+			}
+		}
+	}
+
+	private boolean isCompletedNonUnit(int dotted) {
+		return eg.isCompleted(dotted) && !isUnit[eg.ruleOfDotted[dotted]];
+	}
+
+	/**
+	 * @return The reflexive and transitive closure of a relation
+	 */
+	private static boolean[][] reach(boolean[][] edge) {
+		int n = edge.length;
+		boolean[][] reach = new boolean[n][n];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				reach[i][j] = i == j || edge[i][j];
+			}
+		}
+		for (int m = 0; m < n; m++) {
+			for (int i = 0; i < n; i++) {
+				if (reach[i][m]) {
+					for (int j = 0; j < n; j++) {
+						reach[i][j] |= reach[m][j];
+					}
+				}
+			}
+		}
+		return reach;
+	}
+
+	/**
+	 * @return {@code (I - p)^-1}, with zeros where {@code reach} is false
+	 */
+	private static double[][] closure(double[][] p, boolean[][] reach) {
+
+		int n = p.length;
+		double[][] a = new double[n][n];
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				a[i][j] = (i == j ? 1 : 0) - p[i][j];
+			}
+		}
+
+		double[][] q = new LUDecomposition(new Array2DRowRealMatrix(a, false)).getSolver().getInverse().getData();
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				if (!reach[i][j] || q[i][j] < 0) {
+					q[i][j] = 0;
+				}
+			}
+		}
+		return q;
+	}
+
+	/**
+	 * @return For every pair of non-terminals, the largest product of the
+	 *         entries of {@code p} along a chain between them (1 for the
+	 *         empty chain); with entries at most 1, no cycle improves a chain
+	 */
+	private static double[][] bestClosure(double[][] p, boolean[][] reach) {
+
+		int n = p.length;
+		double[][] q = new double[n][n];
+		for (int i = 0; i < n; i++) {
+			q[i] = p[i].clone();
+			q[i][i] = 1;
+		}
+		for (int m = 0; m < n; m++) {
+			for (int i = 0; i < n; i++) {
+				if (q[i][m] != 0) {
+					for (int j = 0; j < n; j++) {
+						q[i][j] = Math.max(q[i][j], q[i][m] * q[m][j]);
+					}
+				}
+			}
+		}
+		for (int i = 0; i < n; i++) {
+			for (int j = 0; j < n; j++) {
+				if (!reach[i][j]) {
+					q[i][j] = 0;
+				}
+			}
+		}
+		return q;
+	}
+
+}
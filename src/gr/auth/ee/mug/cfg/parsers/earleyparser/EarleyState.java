@@ -0,0 +1,106 @@
+package gr.auth.ee.mug.cfg.parsers.earleyparser;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * The items of one position of an Earley recognizer: dotted rules (numbered
+ * by {@code EarleyGrammar}) with their start positions, the items waiting for
+ * each symbol and, if the state is scored, the total and best inner
+ * probabilities of the items and possibly their forward probabilities,
+ * divided by {@code exp(logScale)} (see {@code EarleyProbabilities}).
+ *
+ * @author Vasileios Papapanagiotou
+ */
+class EarleyState {
+
+	final int position;
+	int[] dotted = new int[16];
+	int[] start = new int[16];
+	int size = 0;
+	double[] inner;
+	double[] best;
+	double[] forward;
+	double logScale = 0;
+	final HashMap<Long, Integer> index = new HashMap<>();
+	final HashMap<Integer, ArrayList<Integer>> waiting = new HashMap<>();
+
+	EarleyState(int position) {
+		this.position = position;
+	}
+
+	/**
+	 * Makes room for the inner probabilities of the items; the state must be
+	 * empty.
+	 *
+	 * @param withForward
+	 *            If the forward probabilities are kept too
+	 */
+	void score(boolean withForward) {
+		inner = new double[dotted.length];
+		best = new double[dotted.length];
+		if (withForward) {
+			forward = new double[dotted.length];
+		}
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	boolean contains(int d, int s) {
+		return index.containsKey(((long) d << 32) | s);
+	}
+
+	/**
+	 * Adds an item, unless it is already in the state.
+	 *
+	 * @return The index of the item in the state
+	 */
+	int add(int d, int s) {
+		Integer i = index.get(((long) d << 32) | s);
+		if (i != null) {
+			return i;
+		}
+		index.put(((long) d << 32) | s, size);
+		if (size == dotted.length) {
+			dotted = Arrays.copyOf(dotted, size * 2);
+			start = Arrays.copyOf(start, size * 2);
+			if (inner != null) {
+				inner = Arrays.copyOf(inner, size * 2);
+				best = Arrays.copyOf(best, size * 2);
+			}
+			if (forward != null) {
+				forward = Arrays.copyOf(forward, size * 2);
+			}
+		}
+		dotted[size] = d;
+		start[size] = s;
+		return size++;
+	}
+
+	void addWaiting(int symbol, int item) {
+		ArrayList<Integer> list = waiting.get(symbol);
+		if (list == null) {
+			list = new ArrayList<>();
+			waiting.put(symbol, list);
+		}
+		list.add(item);
+	}
+
+	/**
+	 * Adds the items waiting for a terminal, advanced over it, to the
+	 * state of a later position.
+	 */
+	void scan(int terminal, EarleyState next) {
+		ArrayList<Integer> list = waiting.get(terminal);
+		if (list != null) {
+			for (int i = 0; i < list.size(); i++) {
+				int w = list.get(i);
+				next.add(dotted[w] + 1, start[w]);
+			}
+		}
+	}
+
+}
@@ -0,0 +1,140 @@
+package gr.auth.ee.mug.cfg.parsers.earleyparser;
+
+import java.util.ArrayList;
+
+import gr.auth.ee.mug.cfg.grammar.ContextFreeGrammar;
+import gr.auth.ee.mug.cfg.parsers.Lattice;
+
+/**
+ * An Earley recognizer for all the strings of a word lattice at once, for
+ * grammars in any form, which also scores them if the grammar has no erasing
+ * rules.<br>
+ * <br>
+ * There is one Earley state per node of the lattice, and the nodes are
+ * visited in order: the state of a node is completed and predicted as in
+ * {@code TrieEarleyRecognizer}, and then scanned along every edge that leaves
+ * the node into the state of the node the edge enters. A state thus holds the
+ * items of all the paths that reach its node, and the items of the last node
+ * tell if the grammar generates the string of any path.<br>
+ * <br>
+ * Without erasing rules ({@code ContextFreeGrammar.chomskyNormal} removes
+ * them), the items also carry Stolcke's inner probabilities, summed and
+ * maximised over derivations, and scanning along an edge multiplies them by
+ * its weight; the nodes are numbered in topological order, so an item always
+ * starts at a lower node than its state. One pass thus gives, as
+ * {@code LatticeParser} does for grammars in Chomsky normal form, the sum over
+ * the paths of the weight of the path times the probability of its string,
+ * and the weighted probability of the best derivation over all the paths
+ * (but not the derivation itself).
+ *
+ * @author Vasileios Papapanagiotou
+ */
+public class LatticeEarleyRecognizer {
+
+	/**
+	 * The grammar that was passed to the constructor.
+	 */
+	public final ContextFreeGrammar cfg;
+
+	/**
+	 * The lattice that was passed to the constructor.
+	 */
+	public final Lattice lattice;
+
+	/**
+	 * If the grammar can generate the string of a path of the lattice.
+	 */
+	public final boolean recognised;
+
+	/**
+	 * The total weighted probability of all the paths and derivations; zero
+	 * if the grammar cannot generate the string of any path, and
+	 * {@code Double.NaN} if the grammar has erasing rules.
+	 */
+	public final double probability;
+
+	/**
+	 * The weighted probability of the most probable derivation over all the
+	 * paths, or {@code Double.NaN} if the grammar has erasing rules.
+	 */
+	public final double bestProbability;
+
+	/**
+	 * The number of items in the states of all the nodes.
+	 */
+	public final long noofItems;
+
+	private final ArrayList<EarleyState> states = new ArrayList<>();
+
+	/**
+	 * Recognises and scores the strings of a lattice.
+	 *
+	 * @param cfg
+	 *            A context-free grammar
+	 * @param lattice
+	 *            A lattice whose edges are labelled with terminals of the
+	 *            grammar
+	 */
+	public LatticeEarleyRecognizer(ContextFreeGrammar cfg, Lattice lattice) {
+
+		this.cfg = cfg;
+		this.lattice = lattice;
+		EarleyGrammar eg = new EarleyGrammar(cfg);
+		EarleyProbabilities ep = eg.hasErasingRules() ? null : new EarleyProbabilities(cfg, eg);
+		int n = lattice.getNoofNodes();
+
+		// The edges that leave each node
+		ArrayList<ArrayList<Integer>> out = new ArrayList<>();
+		for (int i = 0; i < n; i++) {
+			out.add(new ArrayList<Integer>());
+		}
+		for (int e = 0; e < lattice.getNoofEdges(); e++) {
+			out.get(lattice.getFrom(e)).add(e);
+		}
+
+		states.add(ep == null ? eg.initial() : ep.initial(false));
+		for (int i = 1; i < n; i++) {
+			EarleyState state = new EarleyState(i);
+			if (ep != null) {
+				state.score(false);
+			}
+			states.add(state);
+		}
+
+		long count = 0;
+		for (int i = 0; i < n; i++) {
+			EarleyState state = states.get(i);
+			if (ep == null) {
+				eg.close(state, states);
+			} else if (i > 0) {
+				ep.close(state, states);
+			}
+			count += state.size;
+			for (int k = 0; k < out.get(i).size(); k++) {
+				int e = out.get(i).get(k);
+				if (ep == null) {
+					state.scan(lattice.getTerminal(e), states.get(lattice.getTo(e)));
+				} else {
+					ep.scan(state, lattice.getTerminal(e), lattice.getWeight(e), states.get(lattice.getTo(e)));
+				}
+			}
+		}
+		noofItems = count;
+		EarleyState last = states.get(n - 1);
+		recognised = eg.isComplete(last);
+		probability = ep == null ? Double.NaN : ep.getProbability(last);
+		bestProbability = ep == null ? Double.NaN : ep.getBestProbability(last);
+	}
+
+	/**
+	 * @param node
+	 *            A node of the lattice
+	 * @return If the string of some path from node 0 to the node is a prefix
+	 *         of a string of the grammar (if the grammar has no useless
+	 *         symbols)
+	 */
+	public boolean isViable(int node) {
+		return !states.get(node).isEmpty();
+	}
+
+}
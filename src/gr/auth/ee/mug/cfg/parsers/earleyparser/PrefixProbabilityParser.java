@@ -0,0 +1,198 @@
+package gr.auth.ee.mug.cfg.parsers.earleyparser;
+
+import java.util.ArrayList;
+import java.util.Map;
+
+import gr.auth.ee.mug.cfg.grammar.Alphabet;
+import gr.auth.ee.mug.cfg.grammar.ContextFreeGrammar;
+
+/**
+ * A probabilistic Earley parser (Stolcke) that reads a string one terminal at
+ * a time, and gives after each the probability of the prefix read so far and
+ * the distribution of the next terminal.<br>
+ * <br>
+ * Each item holds a forward probability (of the prefix up to the item, with
+ * the item's rule in use) and an inner probability (of the item's span, given
+ * its rule). Prediction over left-recursive chains and completion over chains
+ * of unit rules are done in one step each, with the closures
+ * {@code (I - P_L)^-1} and {@code (I - P_U)^-1} of the left-corner and unit
+ * rule probability matrices, by the steps of {@code EarleyProbabilities}. The probability of the prefix followed by a
+ * terminal is then the sum of the forward probabilities of the items that
+ * wait for that terminal, so the distribution of the next terminal takes time
+ * proportional to those items. The forward probabilities of each state are
+ * kept divided by the probability of its prefix, so long prefixes do not
+ * underflow.<br>
+ * <br>
+ * The grammar must not have erasing rules; {@code ContextFreeGrammar.chomskyNormal}
+ * removes them. If it is consistent (the probabilities of its strings sum to
+ * 1), the probabilities of the next terminals and of the end of the string
+ * sum to 1.
+ *
+ * @author Vasileios Papapanagiotou
+ */
+public class PrefixProbabilityParser {
+
+	/**
+	 * The grammar that was passed to the constructor.
+	 */
+	public final ContextFreeGrammar cfg;
+
+	private final EarleyProbabilities ep;
+	private final int noofTerminals;
+
+	// One state per position, with the forward probabilities of its items
+	// divided by the probability of its prefix (logScale is its logarithm)
+	private final ArrayList<EarleyState> states = new ArrayList<>();
+	private double endProbability;
+
+	/**
+	 * Prepares a parser for a grammar, with an empty prefix.
+	 *
+	 * @param cfg
+	 *            A context-free grammar without erasing rules
+	 * @throws IllegalArgumentException
+	 *             If the grammar has erasing rules
+	 */
+	public PrefixProbabilityParser(ContextFreeGrammar cfg) {
+		this.cfg = cfg;
+		ep = new EarleyProbabilities(cfg, new EarleyGrammar(cfg));
+		noofTerminals = cfg.getAlphabet().getNoofTerminals();
+		reset();
+	}
+
+	/**
+	 * Forgets the prefix read so far.
+	 */
+	public void reset() {
+		states.clear();
+		// The start symbol is expected with probability 1
+		states.add(ep.initial(true));
+		endProbability = 0;
+	}
+
+	/**
+	 * Reads the next terminal of the string.
+	 *
+	 * @param id
+	 *            The id of the terminal
+	 * @return The probability of the terminal given the prefix before it;
+	 *         zero if the grammar cannot generate a string that starts with
+	 *         the new prefix (and then it never will, whatever follows)
+	 */
+	public double scan(int id) {
+
+		int k = states.size() - 1;
+		EarleyState state = states.get(k);
+		double probability = getNextProbability(id);
+		EarleyState next = new EarleyState(k + 1);
+		next.score(true);
+		states.add(next);
+		if (probability == 0) {
+			next.logScale = Double.NEGATIVE_INFINITY;
+			endProbability = 0;
+			return 0;
+		}
+		next.logScale = state.logScale + Math.log(probability);
+
+		ep.scan(state, id, 1, next);
+		ep.close(next, states);
+		endProbability = ep.getProbability(next) * Math.exp(-next.logScale);
+		return probability;
+	}
+
+	/**
+	 * Reads the next terminals of the string.
+	 *
+	 * @param stringIDs
+	 *            The ids of the terminals
+	 * @return The probability of the terminals given the prefix before them
+	 */
+	public double scan(int[] stringIDs) {
+		double p = 1;
+		for (int i = 0; i < stringIDs.length; i++) {
+			p *= scan(stringIDs[i]);
+		}
+		return p;
+	}
+
+	/**
+	 * @return The number of terminals read
+	 */
+	public int getLength() {
+		return states.size() - 1;
+	}
+
+	/**
+	 * @return The natural logarithm of the probability that a string of the
+	 *         grammar starts with the prefix read so far
+	 */
+	public double getLogPrefixProbability() {
+		return states.get(states.size() - 1).logScale;
+	}
+
+	/**
+	 * @return The probability that a string of the grammar starts with the
+	 *         prefix read so far
+	 */
+	public double getPrefixProbability() {
+		return Math.exp(getLogPrefixProbability());
+	}
+
+	/**
+	 * @param id
+	 *            The id of a terminal, or {@code Alphabet.idEmptyString} for
+	 *            the end of the string
+	 * @return The probability that the terminal (or the end of the string)
+	 *         follows the prefix read so far, given the prefix
+	 */
+	public double getNextProbability(int id) {
+		if (id == Alphabet.idEmptyString) {
+			return endProbability;
+		}
+		int k = states.size() - 1;
+		ArrayList<Integer> waiting = states.get(k).waiting.get(id);
+		if (waiting == null) {
+			return 0;
+		}
+		double[] f = states.get(k).forward;
+		double p = 0;
+		for (int i = 0; i < waiting.size(); i++) {
+			p += f[waiting.get(i)];
+		}
+		return p;
+	}
+
+	/**
+	 * Finds the distribution of what follows the prefix read so far, from the
+	 * items that wait for a terminal.
+	 *
+	 * @return For every terminal (by index), the probability that it follows
+	 *         the prefix, given the prefix; index 0, the index of the empty
+	 *         string symbol, holds the probability that the string ends
+	 */
+	public double[] getNextDistribution() {
+		double[] p = new double[noofTerminals];
+		p[0] = endProbability;
+		int k = states.size() - 1;
+		double[] f = states.get(k).forward;
+		for (Map.Entry<Integer, ArrayList<Integer>> entry : states.get(k).waiting.entrySet()) {
+			int id = entry.getKey();
+			if (id <= 0) {
+				continue;
+			}
+			ArrayList<Integer> waiting = entry.getValue();
+			for (int i = 0; i < waiting.size(); i++) {
+				p[id] += f[waiting.get(i)];
+			}
+		}
+		return p;
+	}
+
+	/**
+	 * @return The number of items in the state of the current position
+	 */
+	public int getNoofActiveItems() {
+		return states.get(states.size() - 1).size;
+	}
+
+}
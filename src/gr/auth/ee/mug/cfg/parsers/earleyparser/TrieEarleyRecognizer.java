@@ -0,0 +1,190 @@
+package gr.auth.ee.mug.cfg.parsers.earleyparser;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import gr.auth.ee.mug.cfg.grammar.Alphabet;
+import gr.auth.ee.mug.cfg.grammar.ContextFreeGrammar;
+
+/**
+ * An Earley recognizer for many strings at once, which shares the work of
+ * their common prefixes.<br>
+ * <br>
+ * The strings are arranged in a trie, and the Earley state of each node of
+ * the trie (the state after reading the prefix the node stands for) is
+ * computed once, from the state of its parent, so the cost is proportional to
+ * the size of the trie rather than to the total length of the strings. The
+ * trie is walked depth-first, and only the states of the current path are
+ * kept.<br>
+ * <br>
+ * Unlike {@code EarleyParser}, items hold no back pointers (one item stands
+ * for all the derivations of a dotted rule over a span), so no trees are
+ * built. Erasing rules are handled by advancing over nullable non-terminals
+ * when they are predicted (Aycock and Horspool). Besides whether each string
+ * is generated, the length of its longest prefix that is a prefix of a
+ * generated string is found; for grammars with useless symbols (see
+ * {@code GrammarReduction}) it is an upper bound.<br>
+ * <br>
+ * If the grammar has no erasing rules ({@code ContextFreeGrammar.chomskyNormal}
+ * removes them), the items of the states also carry Stolcke's inner
+ * probabilities, as in {@code LatticeEarleyRecognizer}, so the probability of
+ * each string and of its best derivation are found in the same pass and
+ * shared by the strings with a common prefix.
+ *
+ * @author Vasileios Papapanagiotou
+ */
+public class TrieEarleyRecognizer {
+
+	/**
+	 * The grammar that was passed to the constructor.
+	 */
+	public final ContextFreeGrammar cfg;
+
+	/**
+	 * The strings that were passed to the constructor.
+	 */
+	public final int[][] strings;
+
+	/**
+	 * If the grammar can generate each string.
+	 */
+	public final boolean[] recognised;
+
+	/**
+	 * The length of the longest prefix of each string that the grammar can
+	 * continue into a string it generates.
+	 */
+	public final int[] viablePrefixLength;
+
+	/**
+	 * The probability of each string, or {@code Double.NaN} if the grammar
+	 * has erasing rules.
+	 */
+	public final double[] probability;
+
+	/**
+	 * The probability of the most probable derivation of each string, or
+	 * {@code Double.NaN} if the grammar has erasing rules.
+	 */
+	public final double[] bestProbability;
+
+	/**
+	 * The number of nodes of the trie, including the root (the empty prefix).
+	 */
+	public final int noofNodes;
+
+	/**
+	 * The number of items in the states of all the nodes.
+	 */
+	public final long noofItems;
+
+	private final EarleyGrammar eg;
+
+	/**
+	 * Recognises and scores a set of strings.
+	 *
+	 * @param cfg
+	 *            A context-free grammar
+	 * @param strings
+	 *            The strings (arrays of terminal ids); there may be
+	 *            duplicates, and strings that are prefixes of others
+	 */
+	public TrieEarleyRecognizer(ContextFreeGrammar cfg, int[][] strings) {
+
+		this.cfg = cfg;
+		this.strings = strings;
+		eg = new EarleyGrammar(cfg);
+		EarleyProbabilities ep = eg.hasErasingRules() ? null : new EarleyProbabilities(cfg, eg);
+
+		// Build the trie: node 0 is the root
+		ArrayList<HashMap<Integer, Integer>> children = new ArrayList<>();
+		ArrayList<Integer> symbols = new ArrayList<>();
+		ArrayList<ArrayList<Integer>> ends = new ArrayList<>();
+		children.add(new HashMap<Integer, Integer>());
+		symbols.add(Alphabet.idEmptyString);
+		ends.add(new ArrayList<Integer>());
+		for (int s = 0; s < strings.length; s++) {
+			int node = 0;
+			for (int i = 0; i < strings[s].length; i++) {
+				Integer child = children.get(node).get(strings[s][i]);
+				if (child == null) {
+					child = children.size();
+					children.get(node).put(strings[s][i], child);
+					children.add(new HashMap<Integer, Integer>());
+					symbols.add(strings[s][i]);
+					ends.add(new ArrayList<Integer>());
+				}
+				node = child;
+			}
+			ends.get(node).add(s);
+		}
+		noofNodes = children.size();
+
+		// Walk the trie depth-first; every entry is {node, depth, depth of the
+		// deepest node of its path with a non-empty state}
+		recognised = new boolean[strings.length];
+		viablePrefixLength = new int[strings.length];
+		probability = new double[strings.length];
+		bestProbability = new double[strings.length];
+		ArrayList<EarleyState> path = new ArrayList<>();
+		ArrayList<int[]> stack = new ArrayList<>();
+		stack.add(new int[] { 0, 0, -1 });
+		long count = 0;
+		while (!stack.isEmpty()) {
+			int[] top = stack.remove(stack.size() - 1);
+			int node = top[0];
+			int depth = top[1];
+			int viable = top[2];
+
+			// Only the states of the ancestors are kept
+			while (path.size() > depth) {
+				path.remove(path.size() - 1);
+			}
+			boolean alive = depth == 0 || (path.size() == depth && !path.get(depth - 1).isEmpty());
+			EarleyState state = null;
+			if (alive && ep == null) {
+				if (depth == 0) {
+					state = eg.initial();
+				} else {
+					state = new EarleyState(depth);
+					path.get(depth - 1).scan(symbols.get(node), state);
+				}
+				eg.close(state, path);
+			} else if (alive) {
+				if (depth == 0) {
+					state = ep.initial(false);
+				} else {
+					state = new EarleyState(depth);
+					state.score(false);
+					ep.scan(path.get(depth - 1), symbols.get(node), 1, state);
+					ep.close(state, path);
+				}
+			}
+			if (state != null) {
+				count += state.size;
+				path.add(state);
+				if (!state.isEmpty()) {
+					viable = depth;
+				}
+			}
+
+			ArrayList<Integer> e = ends.get(node);
+			for (int i = 0; i < e.size(); i++) {
+				recognised[e.get(i)] = state != null && eg.isComplete(state);
+				viablePrefixLength[e.get(i)] = Math.max(viable, 0);
+				if (ep == null) {
+					probability[e.get(i)] = Double.NaN;
+					bestProbability[e.get(i)] = Double.NaN;
+				} else if (state != null) {
+					probability[e.get(i)] = ep.getProbability(state);
+					bestProbability[e.get(i)] = ep.getBestProbability(state);
+				}
+			}
+			for (Integer child : children.get(node).values()) {
+				stack.add(new int[] { child, depth + 1, viable });
+			}
+		}
+		noofItems = count;
+	}
+
+}
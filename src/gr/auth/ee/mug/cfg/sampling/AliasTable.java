@@ -0,0 +1,102 @@
+package gr.auth.ee.mug.cfg.sampling;
+
+import java.util.Random;
+
+/**
+ * Walker's alias table (built with Vose's method): draws an index with
+ * probability proportional to its weight in constant time, using one random
+ * number per draw.
+ *
+ * @author Vasileios Papapanagiotou
+ */
+public class AliasTable {
+
+	private final double[] prob;
+	private final int[] alias;
+
+	/**
+	 * Builds the table in time linear in the number of weights.
+	 *
+	 * @param weights
+	 *            Non-negative weights, not all zero (they do not have to add up
+	 *            to 1)
+	 * @throws IllegalArgumentException
+	 *             If the weights are empty, negative or all zero
+	 */
+	public AliasTable(double[] weights) {
+		int n = weights.length;
+		double total = 0;
+		for (int i = 0; i < n; i++) {
+			if (weights[i] < 0) {
+				throw new IllegalArgumentException("Negative weight");
+			}
+			total += weights[i];
+		}
+		if (n == 0 || total <= 0) {
+			throw new IllegalArgumentException("No positive weight");
+		}
+
+		prob = new double[n];
+		alias = new int[n];
+
+		// Scaled weights, split into those below and above the average
+		double[] p = new double[n];
+		int[] small = new int[n];
+		int[] large = new int[n];
+		int ns = 0;
+		int nl = 0;
+		for (int i = 0; i < n; i++) {
+			p[i] = weights[i] * n / total;
+			if (p[i] < 1) {
+				small[ns++] = i;
+			} else {
+				large[nl++] = i;
+			}
+		}
+
+		// Fill each small column up to 1 with a large one
+		while (ns > 0 && nl > 0) {
+			int s = small[--ns];
+			int l = large[--nl];
+			prob[s] = p[s];
+			alias[s] = l;
+			p[l] = p[l] + p[s] - 1;
+			if (p[l] < 1) {
+				small[ns++] = l;
+			} else {
+				large[nl++] = l;
+			}
+		}
+
+		// What is left is 1, up to rounding
+		while (nl > 0) {
+			int l = large[--nl];
+			prob[l] = 1;
+			alias[l] = l;
+		}
+		while (ns > 0) {
+			int s = small[--ns];
+			prob[s] = 1;
+			alias[s] = s;
+		}
+	}
+
+	/**
+	 * @param rnd
+	 *            The random number generator
+	 * @return An index, drawn with probability proportional to its weight
+	 */
+	public int sample(Random rnd) {
+		double u = rnd.nextDouble() * prob.length;
+		int i = Math.min((int) u, prob.length - 1);
+		return u - i < prob[i] ? i : alias[i];
+	}
+
+	/**
+	 * @return The number of weights
+	 */
+	public int size() {
+		return prob.length;
+	}
+
+}
@@ -0,0 +1,348 @@
+package gr.auth.ee.mug.cfg.sampling;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import gr.auth.ee.mug.cfg.dottools.DummyItem;
+import gr.auth.ee.mug.cfg.dottools.TreeNode;
+import gr.auth.ee.mug.cfg.grammar.Alphabet;
+import gr.auth.ee.mug.cfg.grammar.ContextFreeGrammar;
+import gr.auth.ee.mug.cfg.grammar.Rule;
+import gr.auth.ee.mug.cfg.parsers.ParserInterface;
+
+/**
+ * Draws random derivations from a {@code ContextFreeGrammar}: starting from
+ * the start symbol, each non-terminal is replaced by one of its rules, chosen
+ * with probability proportional to the rule probability (in constant time,
+ * with one {@code AliasTable} per non-terminal). Derivations are expanded
+ * with an explicit stack, left to right, so deep trees do not overflow the
+ * call stack.<br>
+ * <br>
+ * Derivations longer than the length cap (in terminals) or deeper than the
+ * depth cap are abandoned and drawn again, so capped samples follow the
+ * distribution of the grammar conditioned on the caps. A sampler can be used
+ * by several threads at once, each with its own {@code Random}.
+ *
+ * @author Vasileios Papapanagiotou
+ */
+public class GrammarSampler {
+
+	/**
+	 * The grammar that was passed to the constructor.
+	 */
+	public final ContextFreeGrammar cfg;
+
+	private final Alphabet al;
+	private final AliasTable[] tables;
+	private final int[][] ruleIds;
+	private int maxLength = Integer.MAX_VALUE;
+	private int maxDepth = Integer.MAX_VALUE;
+	private int maxAttempts = defaultMaxAttempts;
+
+	/**
+	 * @param cfg
+	 *            A context-free grammar
+	 */
+	public GrammarSampler(ContextFreeGrammar cfg) {
+		this.cfg = cfg;
+		al = cfg.getAlphabet();
+		int n = al.getNoofNonTerminals();
+
+		// Rules grouped by left-hand side
+		int[] counts = new int[n];
+		for (int i = 0; i < cfg.getNoofRules(); i++) {
+			counts[al.getIdx(cfg.getRule(i).getFrom())]++;
+		}
+		ruleIds = new int[n][];
+		for (int a = 0; a < n; a++) {
+			ruleIds[a] = new int[counts[a]];
+			counts[a] = 0;
+		}
+		for (int i = 0; i < cfg.getNoofRules(); i++) {
+			int a = al.getIdx(cfg.getRule(i).getFrom());
+			ruleIds[a][counts[a]++] = i;
+		}
+
+		tables = new AliasTable[n];
+		for (int a = 0; a < n; a++) {
+			double[] weights = new double[ruleIds[a].length];
+			double total = 0;
+			for (int j = 0; j < weights.length; j++) {
+				weights[j] = cfg.getRule(ruleIds[a][j]).getProbability();
+				total += weights[j];
+			}
+			if (total > 0) {
+				tables[a] = new AliasTable(weights);
+			}
+		}
+	}
+
+	/**
+	 * @param maxLength
+	 *            The maximum number of terminals of a sample
+	 */
+	public void setMaxLength(int maxLength) {
+		this.maxLength = maxLength;
+	}
+
+	/**
+	 * @param maxDepth
+	 *            The maximum depth of a sample's tree (the root has depth 0)
+	 */
+	public void setMaxDepth(int maxDepth) {
+		this.maxDepth = maxDepth;
+	}
+
+	/**
+	 * @param maxAttempts
+	 *            The number of derivations drawn for one sample before giving
+	 *            up because of the caps
+	 */
+	public void setMaxAttempts(int maxAttempts) {
+		this.maxAttempts = maxAttempts;
+	}
+
+	/**
+	 * Draws a string.
+	 *
+	 * @param rnd
+	 *            The random number generator
+	 * @return The ids of the terminals of the string, or {@code null} if no
+	 *         derivation within the caps was drawn in {@code maxAttempts}
+	 *         attempts
+	 */
+	public int[] sampleString(Random rnd) {
+
+		int[] symbols = new int[16];
+		int[] depths = new int[16];
+		int[] string = new int[16];
+
+		for (int attempt = 0; attempt < maxAttempts; attempt++) {
+			int top = 0;
+			int len = 0;
+			boolean failed = false;
+			symbols[top] = Alphabet.idStart;
+			depths[top++] = 0;
+
+			while (top > 0 && !failed) {
+				int id = symbols[--top];
+				int depth = depths[top];
+
+				if (al.isTerminal(id)) {
+					if (len == maxLength) {
+						failed = true;
+						break;
+					}
+					if (len == string.length) {
+						string = Arrays.copyOf(string, 2 * len);
+					}
+					string[len++] = id;
+					continue;
+				}
+				if (al.isEmptyStringSymbol(id)) {
+					continue;
+				}
+				if (depth == maxDepth) {
+					failed = true;
+					break;
+				}
+
+				// Push the right-hand side in reverse, so the leftmost symbol
+				// is expanded first
+				Rule r = cfg.getRule(sampleRule(id, rnd));
+				int k = r.getToLength();
+				if (top + k > symbols.length) {
+					symbols = Arrays.copyOf(symbols, 2 * (top + k));
+					depths = Arrays.copyOf(depths, symbols.length);
+				}
+				for (int j = k - 1; j >= 0; j--) {
+					symbols[top] = r.getTo(j);
+					depths[top++] = depth + 1;
+				}
+			}
+
+			if (!failed) {
+				return Arrays.copyOf(string, len);
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Draws a parse tree. Its nodes hold {@code DummyItem}s with the rule ids
+	 * and symbol ids of the grammar and ids numbered in pre-order.
+	 *
+	 * @param rnd
+	 *            The random number generator
+	 * @return The root of the tree, or {@code null} if no derivation within
+	 *         the caps was drawn in {@code maxAttempts} attempts
+	 */
+	public TreeNode sampleTree(Random rnd) {
+
+		ArrayList<TreeNode> stack = new ArrayList<>();
+		ArrayList<Integer> depths = new ArrayList<>();
+
+		for (int attempt = 0; attempt < maxAttempts; attempt++) {
+			int len = 0;
+			boolean failed = false;
+
+			TreeNode root = new TreeNode();
+			stack.clear();
+			depths.clear();
+			stack.add(root);
+			depths.add(0);
+			int rootRule = sampleRule(Alphabet.idStart, rnd);
+			root.o = new DummyItem(-1, rootRule, Alphabet.idStart);
+
+			while (!stack.isEmpty() && !failed) {
+				TreeNode node = stack.remove(stack.size() - 1);
+				int depth = depths.remove(depths.size() - 1);
+				if (depth == maxDepth) {
+					failed = true;
+					break;
+				}
+
+				// Create the children, and push the non-terminals in reverse
+				Rule r = cfg.getRule(node.o.getRuleId());
+				for (int j = 0; j < r.getToLength(); j++) {
+					int id = r.getTo(j);
+					if (al.isEmptyStringSymbol(id)) {
+						continue;
+					}
+					TreeNode child = new TreeNode();
+					node.children.add(child);
+					if (al.isTerminal(id)) {
+						if (len++ == maxLength) {
+							failed = true;
+						}
+						child.o = new DummyItem(-1, ParserInterface.noRuleId, id);
+					} else {
+						child.o = new DummyItem(-1, sampleRule(id, rnd), id);
+					}
+				}
+				for (int j = node.children.size() - 1; j >= 0; j--) {
+					TreeNode child = node.children.get(j);
+					if (!al.isTerminal(child.o.getSymbolId())) {
+						stack.add(child);
+						depths.add(depth + 1);
+					}
+				}
+			}
+
+			if (!failed) {
+				renumber(root);
+				return root;
+			}
+		}
+
+		return null;
+	}
+
+	/**
+	 * Draws many strings in parallel. The strings are drawn in blocks, each
+	 * with its own generator seeded from {@code seed} and the block's index,
+	 * so the result only depends on {@code seed} and not on the number of
+	 * threads or their scheduling.
+	 *
+	 * @param count
+	 *            The number of strings
+	 * @param seed
+	 *            The seed of the sample
+	 * @param noofThreads
+	 *            The number of threads
+	 * @return The strings; an entry is {@code null} if no derivation within
+	 *         the caps was drawn for it
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 *             If sampling failed in one of the threads
+	 */
+	public int[][] sampleStrings(int count, final long seed, int noofThreads)
+			throws InterruptedException, ExecutionException {
+
+		final int[][] strings = new int[count][];
+		int noofBlocks = (count + blockSize - 1) / blockSize;
+
+		ExecutorService executor = Executors.newFixedThreadPool(noofThreads);
+		try {
+			ArrayList<Future<Void>> futures = new ArrayList<>();
+			for (int b = 0; b < noofBlocks; b++) {
+				final int block = b;
+				final int until = Math.min(count, (b + 1) * blockSize);
+				futures.add(executor.submit(new Callable<Void>() {
+					@Override
+					public Void call() {
+						Random rnd = newRandom(seed, block);
+						for (int i = block * blockSize; i < until; i++) {
+							strings[i] = sampleString(rnd);
+						}
+						return null;
+					}
+				}));
+			}
+			for (int b = 0; b < futures.size(); b++) {
+				futures.get(b).get();
+			}
+		} finally {
+			executor.shutdownNow();
+		}
+
+		return strings;
+	}
+
+	/**
+	 * Creates the generator of a stream, independent of the other streams of
+	 * the same seed (the stream index is mixed into the seed with the
+	 * finalizer of SplitMix64).
+	 *
+	 * @param seed
+	 *            The seed
+	 * @param stream
+	 *            The index of the stream
+	 * @return A new generator
+	 */
+	public static Random newRandom(long seed, long stream) {
+		long z = seed + (stream + 1) * 0x9E3779B97F4A7C15L;
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return new Random(z ^ (z >>> 31));
+	}
+
+	private int sampleRule(int id, Random rnd) {
+		AliasTable table = tables[al.getIdx(id)];
+		if (table == null) {
+			throw new IllegalStateException("Symbol " + al.getSymbol(id) + " has no rule with positive probability");
+		}
+		return ruleIds[al.getIdx(id)][table.sample(rnd)];
+	}
+
+	/**
+	 * Numbers the nodes in pre-order (iteratively).
+	 */
+	private static void renumber(TreeNode root) {
+		ArrayList<TreeNode> stack = new ArrayList<>();
+		stack.add(root);
+		long id = 0;
+		while (!stack.isEmpty()) {
+			TreeNode node = stack.remove(stack.size() - 1);
+			node.o = new DummyItem(id++, node.o.getRuleId(), node.o.getSymbolId());
+			for (int j = node.children.size() - 1; j >= 0; j--) {
+				stack.add(node.children.get(j));
+			}
+		}
+	}
+
+	/**
+	 * Default for {@code setMaxAttempts}.
+	 */
+	public static final int defaultMaxAttempts = 1000;
+
+	private static final int blockSize = 4096;
+
+}
@@ -0,0 +1,619 @@
+package gr.auth.ee.mug.cfg.server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import gr.auth.ee.mug.cfg.dottools.Tree2DOT;
+import gr.auth.ee.mug.cfg.grammar.Alphabet;
+import gr.auth.ee.mug.cfg.grammar.ContextFreeGrammar;
+import gr.auth.ee.mug.cfg.grammar.FriendlyReader;
+import gr.auth.ee.mug.cfg.parsers.BatchParser;
+import gr.auth.ee.mug.cfg.parsers.ParseBudget;
+import gr.auth.ee.mug.cfg.parsers.ParseResult;
+import gr.auth.ee.mug.cfg.parsers.ParseResultCache;
+
+/**
+ * A local parse server with a line protocol over TCP. Grammars are loaded and
+ * prepared once, when they are added. Each request is one line of
+ * space-separated words, and is answered with one line (or, for
+ * {@code DOT}, a header line and the lines of the DOT code):
+ * <ul>
+ * <li>{@code PROB grammar a b ...}: {@code OK probability}</li>
+ * <li>{@code TREE grammar a b ...}: {@code OK probability tree}, with the
+ * probability of the most probable tree</li>
+ * <li>{@code DOT grammar a b ...}: {@code OK n} and n lines of DOT code of the
+ * most probable tree</li>
+ * <li>{@code QUIT}: closes the connection</li>
+ * </ul>
+ * {@code TREE} and {@code DOT} answer {@code NONE} if the grammar cannot
+ * generate the string. Malformed requests are answered with
+ * {@code ERR message}, requests that do not fit in the queue with
+ * {@code BUSY}, requests that are not parsed in time with
+ * {@code ERR timeout} and requests whose charts would be larger than
+ * allowed with {@code ERR too large}.<br>
+ * <br>
+ * Each connection is served by a thread of its own, which puts its requests
+ * in a bounded queue. The queue is drained in micro-batches: whenever one of
+ * the fixed workers is free, the dispatcher takes all the waiting requests up
+ * to the batch size, so the batches grow with the load. The requests of a
+ * batch for the same string and grammar are merged into one parse, and the
+ * parses are handed out one at a time, each to the next free worker, so a
+ * batch is spread over the workers instead of queueing behind one of them.
+ * Every parse runs within a {@code ParseBudget} that ends at the latest
+ * deadline of its requests, and is cancelled once all of them have given up
+ * on it, so a worker never spends more on a parse than its timeout; requests
+ * that have timed out before a worker reaches them are skipped.
+ *
+ * @author Vasileios Papapanagiotou
+ */
+public class ParseServer {
+
+	private final int port;
+	private final int noofWorkers;
+	private final HashMap<String, Grammar> grammars = new HashMap<>();
+	private int queueSize = defaultQueueSize;
+	private int batchSize = defaultBatchSize;
+	private long timeout = defaultTimeout;
+	private int maxConnections = defaultMaxConnections;
+	private long maxChartSize = defaultMaxChartSize;
+	private ParseResultCache cache = null;
+
+	private ArrayBlockingQueue<Request> queue;
+	private Semaphore freeWorkers;
+	private Semaphore freeConnections;
+	private ServerSocket serverSocket = null;
+	private ExecutorService connections;
+	private ExecutorService workers;
+	private Thread acceptor;
+	private Thread dispatcher;
+
+	/**
+	 * @param port
+	 *            The port to listen to, on the loopback address (0 for any free
+	 *            port)
+	 * @param noofWorkers
+	 *            The number of threads that parse the strings
+	 */
+	public ParseServer(int port, int noofWorkers) {
+		this.port = port;
+		this.noofWorkers = noofWorkers;
+	}
+
+	/**
+	 * Adds a grammar, which is converted to Chomsky normal form (if it is not
+	 * already) and indexed now.
+	 *
+	 * @param name
+	 *            The name of the grammar in requests
+	 * @param cfg
+	 *            The grammar
+	 */
+	public synchronized void addGrammar(String name, ContextFreeGrammar cfg) {
+		Grammar grammar = new Grammar(cfg, noofWorkers);
+		grammar.parser.setCache(cache);
+		grammars.put(name, grammar);
+	}
+
+	/**
+	 * @param cache
+	 *            A cache of results, shared by all the grammars, or
+	 *            {@code null} for none (the default)
+	 */
+	public synchronized void setCache(ParseResultCache cache) {
+		this.cache = cache;
+		for (Grammar grammar : grammars.values()) {
+			grammar.parser.setCache(cache);
+		}
+	}
+
+	/**
+	 * @param queueSize
+	 *            The number of requests that can wait for a worker before
+	 *            requests are refused with {@code BUSY}
+	 */
+	public void setQueueSize(int queueSize) {
+		this.queueSize = queueSize;
+	}
+
+	/**
+	 * @param batchSize
+	 *            The maximum number of requests that are taken from the queue
+	 *            at once, and merged if they are for the same string
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @param timeout
+	 *            The time in milliseconds a request may take, from the moment
+	 *            it is read
+	 */
+	public void setTimeout(long timeout) {
+		this.timeout = timeout;
+	}
+
+	/**
+	 * @param maxConnections
+	 *            The maximum number of open connections; more are answered
+	 *            with {@code BUSY} and closed
+	 */
+	public void setMaxConnections(int maxConnections) {
+		this.maxConnections = maxConnections;
+	}
+
+	/**
+	 * @param maxChartSize
+	 *            The maximum number of chart entries (cells times symbols of
+	 *            the grammar) a request may use, over all its charts; it
+	 *            bounds the memory of a parse as well as its time
+	 */
+	public void setMaxChartSize(long maxChartSize) {
+		this.maxChartSize = maxChartSize;
+	}
+
+	/**
+	 * Opens the server socket and starts the threads.
+	 *
+	 * @throws IOException
+	 *             If the socket cannot be opened
+	 */
+	public synchronized void start() throws IOException {
+
+		if (serverSocket != null) {
+			throw new IllegalStateException("The server is running");
+		}
+		queue = new ArrayBlockingQueue<>(queueSize);
+		freeWorkers = new Semaphore(noofWorkers);
+		freeConnections = new Semaphore(maxConnections);
+		serverSocket = new ServerSocket(port, 50, InetAddress.getByName(null));
+		connections = Executors.newCachedThreadPool(newThreadFactory("ParseServer-connection"));
+		workers = Executors.newFixedThreadPool(noofWorkers, newThreadFactory("ParseServer-worker"));
+
+		acceptor = newThreadFactory("ParseServer-acceptor").newThread(new Runnable() {
+			@Override
+			public void run() {
+				accept();
+			}
+		});
+		dispatcher = newThreadFactory("ParseServer-dispatcher").newThread(new Runnable() {
+			@Override
+			public void run() {
+				dispatch();
+			}
+		});
+		acceptor.start();
+		dispatcher.start();
+	}
+
+	/**
+	 * @return The port the server listens to
+	 */
+	public synchronized int getPort() {
+		return serverSocket == null ? port : serverSocket.getLocalPort();
+	}
+
+	/**
+	 * Closes the server socket and the connections, and stops the threads.
+	 */
+	public synchronized void stop() {
+		if (serverSocket == null) {
+			return;
+		}
+		try {
+			serverSocket.close();
+		} catch (IOException e) {
+			// Closing anyway
+		}
+		serverSocket = null;
+		acceptor.interrupt();
+		dispatcher.interrupt();
+		connections.shutdownNow();
+		workers.shutdownNow();
+	}
+
+	/**
+	 * Runs a server until the process is stopped.
+	 *
+	 * @param args
+	 *            The port, the number of workers and one or more
+	 *            {@code name=file} pairs of grammar files (in the format of
+	 *            {@code FriendlyReader})
+	 * @throws Exception
+	 *             If a grammar cannot be read or the socket cannot be opened
+	 */
+	public static void main(String[] args) throws Exception {
+		if (args.length < 3) {
+			System.out.println("Usage: ParseServer port workers name=grammar-file ...");
+			return;
+		}
+		ParseServer server = new ParseServer(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+		for (int i = 2; i < args.length; i++) {
+			int k = args[i].indexOf('=');
+			server.addGrammar(args[i].substring(0, k), FriendlyReader.readGrammar(args[i].substring(k + 1)));
+		}
+		server.start();
+		System.out.println("Listening to port " + server.getPort());
+		Thread.currentThread().join();
+	}
+
+	/**
+	 * A grammar with its parser and the ids of its terminals by name.
+	 */
+	private static class Grammar {
+
+		final BatchParser parser;
+		final Alphabet al;
+		final HashMap<String, Integer> terminals = new HashMap<>();
+
+		Grammar(ContextFreeGrammar cfg, int noofThreads) {
+			parser = new BatchParser(cfg, noofThreads);
+			al = cfg.getAlphabet();
+			for (int i = 0; i < al.getNoofTerminals(); i++) {
+				int id = al.getIdTerminal(i);
+				if (!al.isEmptyStringSymbol(id)) {
+					terminals.put(al.getSymbol(id), id);
+				}
+			}
+		}
+
+	}
+
+	/**
+	 * A request waiting for a worker.
+	 */
+	private static class Request {
+
+		final Grammar grammar;
+		final int[] stringIDs;
+		final boolean bestTree;
+		final long deadline;
+		final CountDownLatch done = new CountDownLatch(1);
+		volatile ParseResult result = null;
+		private boolean abandoned = false;
+		private Parse parse = null;
+
+		Request(Grammar grammar, int[] stringIDs, boolean bestTree, long deadline) {
+			this.grammar = grammar;
+			this.stringIDs = stringIDs;
+			this.bestTree = bestTree;
+			this.deadline = deadline;
+		}
+
+		/**
+		 * Adds the request to a parse, unless it has been abandoned.
+		 */
+		synchronized boolean join(Parse p) {
+			if (abandoned) {
+				return false;
+			}
+			parse = p;
+			p.join(this);
+			return true;
+		}
+
+		/**
+		 * Gives up on the request; its parse is cancelled if no other request
+		 * waits for it.
+		 */
+		synchronized void abandon() {
+			abandoned = true;
+			if (parse != null) {
+				parse.leave();
+			}
+		}
+
+	}
+
+	/**
+	 * The requests of a micro-batch for the same string, parsed once.
+	 */
+	private class Parse implements Runnable {
+
+		final Grammar grammar;
+		final int[] stringIDs;
+		final ArrayList<Request> requests = new ArrayList<>();
+		boolean bestTree = false;
+		long deadline = Long.MIN_VALUE;
+		ParseBudget budget;
+		private int noofWaiting = 0;
+
+		Parse(Grammar grammar, int[] stringIDs) {
+			this.grammar = grammar;
+			this.stringIDs = stringIDs;
+		}
+
+		synchronized void join(Request r) {
+			requests.add(r);
+			bestTree |= r.bestTree;
+			deadline = Math.max(deadline, r.deadline);
+			noofWaiting++;
+		}
+
+		synchronized void leave() {
+			if (--noofWaiting == 0 && budget != null) {
+				budget.cancel();
+			}
+		}
+
+		@Override
+		public void run() {
+			try {
+				ParseResult result = null;
+				if (budget.check()) {
+					result = grammar.parser.parse(stringIDs, bestTree, budget);
+				}
+				done(result);
+			} finally {
+				freeWorkers.release();
+			}
+		}
+
+		void done(ParseResult result) {
+			for (int i = 0; i < requests.size(); i++) {
+				requests.get(i).result = result;
+				requests.get(i).done.countDown();
+			}
+		}
+
+	}
+
+	private void accept() {
+		ServerSocket ss;
+		synchronized (this) {
+			ss = serverSocket;
+		}
+		while (!Thread.currentThread().isInterrupted()) {
+			final Socket socket;
+			try {
+				socket = ss.accept();
+			} catch (IOException e) {
+				// The socket was closed by stop()
+				return;
+			}
+			if (!freeConnections.tryAcquire()) {
+				try {
+					reply(socket, "BUSY\n");
+				} catch (IOException e) {
+					// The client is gone
+				}
+				close(socket);
+				continue;
+			}
+			connections.execute(new Runnable() {
+				@Override
+				public void run() {
+					try {
+						serve(socket);
+					} finally {
+						freeConnections.release();
+						close(socket);
+					}
+				}
+			});
+		}
+	}
+
+	/**
+	 * Takes micro-batches from the queue, whenever a worker is free, and hands
+	 * their parses to the workers as they become free.
+	 */
+	private void dispatch() {
+		try {
+			while (true) {
+				freeWorkers.acquire();
+				ArrayList<Request> batch = new ArrayList<>();
+				batch.add(queue.take());
+				queue.drainTo(batch, batchSize - 1);
+				ArrayList<Parse> parses = merge(batch);
+				if (parses.isEmpty()) {
+					freeWorkers.release();
+				}
+				for (int i = 0; i < parses.size(); i++) {
+					if (i > 0) {
+						freeWorkers.acquire();
+					}
+					workers.execute(parses.get(i));
+				}
+			}
+		} catch (InterruptedException e) {
+			// Stopped
+		}
+	}
+
+	/**
+	 * Merges the requests of a batch for the same string and grammar.
+	 *
+	 * @return The parses that some request still waits for; the requests of
+	 *         the others are completed without a result
+	 */
+	private ArrayList<Parse> merge(ArrayList<Request> batch) {
+
+		ArrayList<Parse> parses = new ArrayList<>();
+		for (int i = 0; i < batch.size(); i++) {
+			Request r = batch.get(i);
+			Parse p = null;
+			for (int j = 0; j < parses.size() && p == null; j++) {
+				Parse q = parses.get(j);
+				if (q.grammar == r.grammar && Arrays.equals(q.stringIDs, r.stringIDs)) {
+					p = q;
+				}
+			}
+			if (p == null) {
+				p = new Parse(r.grammar, r.stringIDs);
+				parses.add(p);
+			}
+			if (!r.join(p)) {
+				r.done.countDown();
+			}
+		}
+
+		ArrayList<Parse> live = new ArrayList<>();
+		for (int i = 0; i < parses.size(); i++) {
+			Parse p = parses.get(i);
+			synchronized (p) {
+				p.budget = new ParseBudget(maxChartSize, p.deadline);
+				if (p.noofWaiting == 0) {
+					p.budget.cancel();
+				}
+			}
+			if (!p.budget.check()) {
+				p.done(null);
+			} else {
+				live.add(p);
+			}
+		}
+		return live;
+	}
+
+	private void serve(Socket socket) {
+		try {
+			BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), "UTF-8"));
+			Writer out = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+			String line;
+			while ((line = in.readLine()) != null) {
+				line = line.trim();
+				if (line.isEmpty()) {
+					continue;
+				}
+				if (line.equals("QUIT")) {
+					break;
+				}
+				out.write(answer(line));
+				out.flush();
+			}
+		} catch (SocketException e) {
+			// The connection was closed
+		} catch (IOException e) {
+			// The client is gone
+		} catch (InterruptedException e) {
+			// Stopped
+		}
+	}
+
+	private String answer(String line) throws InterruptedException {
+
+		long deadline = System.currentTimeMillis() + timeout;
+		String[] words = line.split("\\s+");
+		String command = words[0];
+		if (!command.equals("PROB") && !command.equals("TREE") && !command.equals("DOT")) {
+			return "ERR unknown command " + command + "\n";
+		}
+		if (words.length < 2) {
+			return "ERR no grammar\n";
+		}
+		Grammar grammar;
+		synchronized (this) {
+			grammar = grammars.get(words[1]);
+		}
+		if (grammar == null) {
+			return "ERR unknown grammar " + words[1] + "\n";
+		}
+		int[] stringIDs = new int[words.length - 2];
+		for (int i = 0; i < stringIDs.length; i++) {
+			Integer id = grammar.terminals.get(words[i + 2]);
+			if (id == null) {
+				return "ERR unknown symbol " + words[i + 2] + "\n";
+			}
+			stringIDs[i] = id;
+		}
+
+		Request r = new Request(grammar, stringIDs, !command.equals("PROB"), deadline);
+		if (!queue.offer(r)) {
+			return "BUSY\n";
+		}
+		long wait = deadline - System.currentTimeMillis();
+		if (!r.done.await(Math.max(wait, 0), TimeUnit.MILLISECONDS) || r.result == null) {
+			r.abandon();
+			return "ERR timeout\n";
+		}
+
+		ParseResult result = r.result;
+		if (result.exceeded == ParseBudget.Limit.ITEMS) {
+			return "ERR too large\n";
+		}
+		if (result.exceeded != null) {
+			return "ERR timeout\n";
+		}
+		if (command.equals("PROB")) {
+			return "OK " + result.probability + "\n";
+		}
+		if (result.bestTree == null) {
+			return "NONE\n";
+		}
+		if (command.equals("TREE")) {
+			return "OK " + result.bestProbability + " " + result.bestTree.toString(grammar.al) + "\n";
+		}
+		String dot = new Tree2DOT(result.bestTree, grammar.parser.cfg, "tree").dotCode;
+		return "OK " + dot.split("\n").length + "\n" + dot;
+	}
+
+	private static void reply(Socket socket, String s) throws IOException {
+		Writer out = new OutputStreamWriter(socket.getOutputStream(), "UTF-8");
+		out.write(s);
+		out.flush();
+	}
+
+	private static void close(Socket socket) {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			// Closed anyway
+		}
+	}
+
+	private static ThreadFactory newThreadFactory(final String name) {
+		return new ThreadFactory() {
+			@Override
+			public Thread newThread(Runnable r) {
+				Thread t = new Thread(r, name);
+				t.setDaemon(true);
+				return t;
+			}
+		};
+	}
+
+	/**
+	 * Default for {@code setQueueSize}.
+	 */
+	public static final int defaultQueueSize = 1024;
+
+	/**
+	 * Default for {@code setBatchSize}.
+	 */
+	public static final int defaultBatchSize = 32;
+
+	/**
+	 * Default for {@code setTimeout}, in milliseconds.
+	 */
+	public static final long defaultTimeout = 10000;
+
+	/**
+	 * Default for {@code setMaxConnections}.
+	 */
+	public static final int defaultMaxConnections = 256;
+
+	/**
+	 * Default for {@code setMaxChartSize}; with 8 to 16 bytes per entry, a
+	 * request uses at most a few tens of MB.
+	 */
+	public static final long defaultMaxChartSize = 1L << 22;
+
+}
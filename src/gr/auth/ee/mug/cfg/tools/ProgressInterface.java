@@ -0,0 +1,23 @@
+package gr.auth.ee.mug.cfg.tools;
+
+/**
+ * An interface for reporting the progress of long-running tasks.
+ * 
+ * @author Vasileios Papapanagiotou
+ */
+public interface ProgressInterface {
+
+	/**
+	 * Called periodically while a task is running, and once more when it
+	 * finishes (with {@code done == total}).
+	 * 
+	 * @param task
+	 *            A short description of the current task
+	 * @param done
+	 *            The number of work units done so far
+	 * @param total
+	 *            The total number of work units, or {@code -1} if unknown
+	 */
+	public void progress(String task, long done, long total);
+
+}
@@ -0,0 +1,56 @@
+package gr.auth.ee.mug.cfg.training;
+
+import java.util.HashMap;
+
+import gr.auth.ee.mug.cfg.grammar.ContextFreeGrammar;
+import gr.auth.ee.mug.cfg.grammar.Rule;
+
+/**
+ * Additive (Lidstone) smoothing: a constant is added to the count of every
+ * observed rule and, optionally, of every rule of a given grammar, so that
+ * rules of that grammar that were never observed keep a non-zero probability.
+ *
+ * @author Vasileios Papapanagiotou
+ */
+public class AdditiveSmoothing implements SmoothingInterface {
+
+	private final double alpha;
+	private final ContextFreeGrammar support;
+
+	/**
+	 * @param alpha
+	 *            The count added to each observed rule
+	 */
+	public AdditiveSmoothing(double alpha) {
+		this(alpha, null);
+	}
+
+	/**
+	 * @param alpha
+	 *            The count added to each rule
+	 * @param support
+	 *            A grammar over the same alphabet whose rules are added with
+	 *            count {@code alpha} if they were not observed (can be
+	 *            {@code null})
+	 */
+	public AdditiveSmoothing(double alpha, ContextFreeGrammar support) {
+		this.alpha = alpha;
+		this.support = support;
+	}
+
+	@Override
+	public void smooth(HashMap<Rule, Double> counts) {
+		for (Rule r : counts.keySet()) {
+			counts.put(r, counts.get(r) + alpha);
+		}
+		if (support != null) {
+			for (int i = 0; i < support.getNoofRules(); i++) {
+				Rule r = support.getRule(i);
+				if (!counts.containsKey(r)) {
+					counts.put(r, alpha);
+				}
+			}
+		}
+	}
+
+}
@@ -0,0 +1,26 @@
+package gr.auth.ee.mug.cfg.training;
+
+/**
+ * A constant step size: the statistics are an exponential moving average of
+ * the mini-batches, so the grammar keeps tracking the most recent data.
+ *
+ * @author Vasileios Papapanagiotou
+ */
+public class ConstantStepSize implements StepSizeInterface {
+
+	private final double eta;
+
+	/**
+	 * @param eta
+	 *            The step size, in (0, 1]
+	 */
+	public ConstantStepSize(double eta) {
+		this.eta = eta;
+	}
+
+	@Override
+	public double getStepSize(long k) {
+		return eta;
+	}
+
+}
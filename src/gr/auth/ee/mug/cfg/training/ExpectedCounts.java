@@ -0,0 +1,179 @@
+package gr.auth.ee.mug.cfg.training;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+import gr.auth.ee.mug.cfg.grammar.Alphabet;
+import gr.auth.ee.mug.cfg.grammar.ContextFreeGrammar;
+import gr.auth.ee.mug.cfg.parsers.cnfparser.CNFGrammarIndex;
+import gr.auth.ee.mug.cfg.parsers.cnfparser.ChartWorkspace;
+import gr.auth.ee.mug.cfg.parsers.cnfparser.InsideOutside;
+
+/**
+ * The expected rule counts of a set of strings under a grammar in Chomsky
+ * normal form (the E-step of the inside-outside algorithm), together with the
+ * log-likelihood of the strings.
+ *
+ * @author Vasileios Papapanagiotou
+ */
+public class ExpectedCounts {
+
+	/**
+	 * The expected number of uses of each rule, summed over the strings.
+	 */
+	public final double[] counts;
+
+	private double logLikelihood = 0;
+	private int noofParsed = 0;
+	private int noofUnparsed = 0;
+
+	/**
+	 * Creates zero counts.
+	 *
+	 * @param noofRules
+	 *            The number of rules of the grammar
+	 */
+	public ExpectedCounts(int noofRules) {
+		counts = new double[noofRules];
+	}
+
+	/**
+	 * Adds the expected counts of a string.
+	 *
+	 * @param g
+	 *            The indexed grammar
+	 * @param stringIDs
+	 *            The ids of the terminals of the string
+	 */
+	public void add(CNFGrammarIndex g, int[] stringIDs) {
+		ChartWorkspace ws = ChartWorkspace.local();
+		InsideOutside io = new InsideOutside(g, stringIDs, ws);
+		if (io.probability > 0) {
+			io.addExpectedCounts(counts, 1);
+			logLikelihood += Math.log(io.probability);
+			noofParsed++;
+		} else {
+			noofUnparsed++;
+		}
+		ws.trim();
+	}
+
+	/**
+	 * Adds other counts to these.
+	 *
+	 * @param other
+	 *            Counts of the same grammar
+	 */
+	public void add(ExpectedCounts other) {
+		for (int i = 0; i < counts.length; i++) {
+			counts[i] += other.counts[i];
+		}
+		logLikelihood += other.logLikelihood;
+		noofParsed += other.noofParsed;
+		noofUnparsed += other.noofUnparsed;
+	}
+
+	/**
+	 * @return The sum of the natural logarithms of the probabilities of the
+	 *         strings that the grammar can generate
+	 */
+	public double getLogLikelihood() {
+		return logLikelihood;
+	}
+
+	/**
+	 * @return The number of strings that the grammar can generate
+	 */
+	public int getNoofParsed() {
+		return noofParsed;
+	}
+
+	/**
+	 * @return The number of strings that the grammar cannot generate (they
+	 *         add nothing to the counts)
+	 */
+	public int getNoofUnparsed() {
+		return noofUnparsed;
+	}
+
+	/**
+	 * Computes the expected counts of a set of strings in parallel: the
+	 * strings are split recursively into ranges, each range is counted
+	 * separately, and the partial counts are merged pairwise.
+	 *
+	 * @param g
+	 *            The indexed grammar
+	 * @param strings
+	 *            The strings
+	 * @param pool
+	 *            The pool that runs the tasks
+	 * @return The counts
+	 */
+	public static ExpectedCounts compute(CNFGrammarIndex g, List<int[]> strings, ForkJoinPool pool) {
+		return pool.invoke(new CountTask(g, strings, 0, strings.size()));
+	}
+
+	/**
+	 * The M-step: rule probabilities proportional to the counts, normalised
+	 * over the rules with the same left-hand side. Non-terminals whose rules
+	 * have no counts keep their probabilities.
+	 *
+	 * @param cfg
+	 *            The grammar
+	 * @param counts
+	 *            One count per rule
+	 * @return A copy of {@code cfg} with the new probabilities
+	 */
+	public static ContextFreeGrammar normalise(ContextFreeGrammar cfg, double[] counts) {
+		Alphabet al = cfg.getAlphabet();
+		double[] totals = new double[al.getNoofNonTerminals()];
+		for (int i = 0; i < counts.length; i++) {
+			totals[al.getIdx(cfg.getRule(i).getFrom())] += counts[i];
+		}
+		double[] pr = new double[counts.length];
+		for (int i = 0; i < counts.length; i++) {
+			double total = totals[al.getIdx(cfg.getRule(i).getFrom())];
+			pr[i] = total > 0 ? counts[i] / total : cfg.getRule(i).getProbability();
+		}
+		return cfg.withProbabilities(pr);
+	}
+
+	private static class CountTask extends RecursiveTask<ExpectedCounts> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final CNFGrammarIndex g;
+		private final List<int[]> strings;
+		private final int from;
+		private final int until;
+
+		public CountTask(CNFGrammarIndex g, List<int[]> strings, int from, int until) {
+			this.g = g;
+			this.strings = strings;
+			this.from = from;
+			this.until = until;
+		}
+
+		@Override
+		protected ExpectedCounts compute() {
+			if (until - from <= taskSize) {
+				ExpectedCounts c = new ExpectedCounts(g.getNoofRules());
+				for (int i = from; i < until; i++) {
+					c.add(g, strings.get(i));
+				}
+				return c;
+			}
+			int middle = (from + until) >>> 1;
+			CountTask right = new CountTask(g, strings, middle, until);
+			right.fork();
+			ExpectedCounts c = new CountTask(g, strings, from, middle).compute();
+			c.add(right.join());
+			return c;
+		}
+
+	}
+
+	private static final int taskSize = 16;
+
+}
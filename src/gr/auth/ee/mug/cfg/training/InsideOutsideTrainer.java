@@ -0,0 +1,181 @@
+package gr.auth.ee.mug.cfg.training;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import gr.auth.ee.mug.cfg.grammar.ContextFreeGrammar;
+import gr.auth.ee.mug.cfg.parsers.cnfparser.CNFGrammarIndex;
+import gr.auth.ee.mug.cfg.tools.ProgressInterface;
+
+/**
+ * Re-estimates the rule probabilities of a grammar in Chomsky normal form
+ * from unannotated strings with the inside-outside (EM) algorithm. Each
+ * iteration computes the expected rule counts of the whole corpus in parallel
+ * (see {@code ExpectedCounts.compute}) and normalises them into new
+ * probabilities; the log-likelihood of the corpus never decreases from one
+ * iteration to the next.<br>
+ * <br>
+ * Rules that are never used get probability zero and stay at zero. Strings
+ * that the grammar cannot generate are ignored.
+ *
+ * @author Vasileios Papapanagiotou
+ */
+public class InsideOutsideTrainer {
+
+	private final List<int[]> corpus;
+	private ContextFreeGrammar cfg;
+	private ForkJoinPool pool = null;
+	private int maxIterations = defaultMaxIterations;
+	private double tolerance = defaultTolerance;
+	private String checkpointFilename = null;
+	private ProgressInterface progress = null;
+	private final ArrayList<Double> logLikelihoods = new ArrayList<>();
+	private int noofUnparsed = 0;
+
+	/**
+	 * @param cfg
+	 *            The initial grammar, in Chomsky normal form
+	 * @param corpus
+	 *            The strings (arrays of terminal ids)
+	 */
+	public InsideOutsideTrainer(ContextFreeGrammar cfg, List<int[]> corpus) {
+		this.cfg = cfg;
+		this.corpus = corpus;
+	}
+
+	/**
+	 * @param pool
+	 *            The pool that computes the expected counts (by default, a
+	 *            pool with one thread per processor)
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * @param maxIterations
+	 *            The maximum number of iterations
+	 */
+	public void setMaxIterations(int maxIterations) {
+		this.maxIterations = maxIterations;
+	}
+
+	/**
+	 * @param tolerance
+	 *            Training stops when an iteration improves the log-likelihood
+	 *            by less than {@code tolerance} times its absolute value
+	 */
+	public void setTolerance(double tolerance) {
+		this.tolerance = tolerance;
+	}
+
+	/**
+	 * @param filename
+	 *            If not {@code null}, the grammar is saved to this file (with
+	 *            {@code saveToBinaryFile}) after every iteration, so that an
+	 *            interrupted training can be resumed from it
+	 */
+	public void setCheckpoint(String filename) {
+		checkpointFilename = filename;
+	}
+
+	/**
+	 * @param progress
+	 *            Receives the number of iterations done (can be {@code null})
+	 */
+	public void setProgress(ProgressInterface progress) {
+		this.progress = progress;
+	}
+
+	/**
+	 * Runs EM until convergence or until the maximum number of iterations.
+	 *
+	 * @return The trained grammar
+	 * @throws IOException
+	 *             If a checkpoint cannot be written
+	 */
+	public ContextFreeGrammar train() throws IOException {
+
+		ForkJoinPool p = pool != null ? pool : new ForkJoinPool();
+		try {
+			for (int k = 0; k < maxIterations; k++) {
+				ExpectedCounts counts = ExpectedCounts.compute(new CNFGrammarIndex(cfg), corpus, p);
+				noofUnparsed = counts.getNoofUnparsed();
+
+				// The log-likelihood is that of the grammar before this update
+				double ll = counts.getLogLikelihood();
+				boolean converged = !logLikelihoods.isEmpty()
+						&& ll - logLikelihoods.get(logLikelihoods.size() - 1) < tolerance * Math.abs(ll);
+				logLikelihoods.add(ll);
+				if (converged) {
+					break;
+				}
+
+				cfg = ExpectedCounts.normalise(cfg, counts.counts);
+				saveCheckpoint();
+				if (progress != null) {
+					progress.progress(taskIterations, k + 1, maxIterations);
+				}
+			}
+		} finally {
+			if (pool == null) {
+				p.shutdown();
+			}
+		}
+
+		return cfg;
+	}
+
+	/**
+	 * @return The current grammar
+	 */
+	public ContextFreeGrammar getGrammar() {
+		return cfg;
+	}
+
+	/**
+	 * @return The log-likelihood of the corpus before each iteration
+	 */
+	public ArrayList<Double> getLogLikelihoods() {
+		return logLikelihoods;
+	}
+
+	/**
+	 * @return The number of strings that the grammar could not generate in
+	 *         the last iteration
+	 */
+	public int getNoofUnparsed() {
+		return noofUnparsed;
+	}
+
+	private void saveCheckpoint() throws IOException {
+		if (checkpointFilename == null) {
+			return;
+		}
+		// Write a temporary file first, so that a crash never leaves a
+		// partially written checkpoint
+		File file = new File(checkpointFilename);
+		File tmp = new File(checkpointFilename + ".tmp");
+		cfg.saveToBinaryFile(tmp.getPath());
+		file.delete();
+		if (!tmp.renameTo(file)) {
+			throw new IOException("Cannot write checkpoint '" + checkpointFilename + "'");
+		}
+	}
+
+	/**
+	 * Default for {@code setMaxIterations}.
+	 */
+	public static final int defaultMaxIterations = 100;
+
+	/**
+	 * Default for {@code setTolerance}.
+	 */
+	public static final double defaultTolerance = 1e-6;
+
+	private static final String taskIterations = "iterations";
+
+}
@@ -0,0 +1,171 @@
+package gr.auth.ee.mug.cfg.training;
+
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+
+import gr.auth.ee.mug.cfg.grammar.Alphabet;
+import gr.auth.ee.mug.cfg.grammar.ContextFreeGrammar;
+import gr.auth.ee.mug.cfg.parsers.cnfparser.CNFGrammarIndex;
+
+/**
+ * Stepwise (online) EM for a grammar in Chomsky normal form: the rule
+ * probabilities are updated after every mini-batch of strings, so the grammar
+ * follows a stream of strings without keeping or revisiting them.<br>
+ * <br>
+ * The trainer keeps one statistic per rule, {@code mu}. The k-th mini-batch
+ * contributes its expected rule counts per string, {@code s}, as
+ * {@code mu = (1 - eta_k) mu + eta_k s}, where {@code eta_k} is given by the
+ * step-size schedule, and the rule probabilities become {@code mu} normalised
+ * over the rules with the same left-hand side. Memory does not depend on the
+ * number of strings seen.<br>
+ * <br>
+ * {@code mu} has to be on the scale of the counts, which per left-hand side
+ * sum to the expected number of times it is expanded per string, not to 1.
+ * So the statistics of a left-hand side start as the initial rule
+ * probabilities times that number, taken from the first mini-batch whose
+ * counts use the left-hand side: the initial grammar then weighs like one
+ * mini-batch of the same strings, whatever the length of the strings.
+ *
+ * @author Vasileios Papapanagiotou
+ */
+public class OnlineEMTrainer {
+
+	private ContextFreeGrammar cfg;
+	private CNFGrammarIndex index;
+	private final double[] mu;
+
+	// Left-hand side (index) of every rule, and whether the statistics of
+	// each left-hand side have been brought to the scale of the counts
+	private final int[] lhs;
+	private final boolean[] scaled;
+	private StepSizeInterface stepSize = new PowerStepSize(defaultAlpha, 2);
+	private ForkJoinPool pool = null;
+	private long noofUpdates = 0;
+	private long noofSeen = 0;
+	private double logLikelihood = 0;
+
+	/**
+	 * @param cfg
+	 *            The initial grammar, in Chomsky normal form
+	 */
+	public OnlineEMTrainer(ContextFreeGrammar cfg) {
+		this.cfg = cfg;
+		index = new CNFGrammarIndex(cfg);
+		Alphabet al = cfg.getAlphabet();
+		mu = new double[cfg.getNoofRules()];
+		lhs = new int[mu.length];
+		for (int i = 0; i < mu.length; i++) {
+			mu[i] = cfg.getRule(i).getProbability();
+			lhs[i] = al.getIdx(cfg.getRule(i).getFrom());
+		}
+		scaled = new boolean[al.getNoofNonTerminals()];
+	}
+
+	/**
+	 * @param stepSize
+	 *            The step-size schedule (by default, {@code (k + 2)^-0.7})
+	 */
+	public void setStepSize(StepSizeInterface stepSize) {
+		this.stepSize = stepSize;
+	}
+
+	/**
+	 * @param pool
+	 *            The pool that computes the expected counts of a mini-batch
+	 *            (by default, the counts are computed in the calling thread)
+	 */
+	public void setPool(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Updates the grammar with a mini-batch of strings. Strings that the
+	 * grammar cannot generate are ignored, and a mini-batch without any other
+	 * string leaves the grammar unchanged.
+	 *
+	 * @param batch
+	 *            The strings (arrays of terminal ids)
+	 * @return The updated grammar
+	 */
+	public ContextFreeGrammar update(List<int[]> batch) {
+
+		ExpectedCounts counts;
+		if (pool != null) {
+			counts = ExpectedCounts.compute(index, batch, pool);
+		} else {
+			counts = new ExpectedCounts(mu.length);
+			for (int i = 0; i < batch.size(); i++) {
+				counts.add(index, batch.get(i));
+			}
+		}
+		noofSeen += batch.size();
+		logLikelihood = counts.getLogLikelihood();
+		if (counts.getNoofParsed() == 0) {
+			return cfg;
+		}
+
+		// The counts per string, and the initial statistics of left-hand
+		// sides used for the first time, on the same scale
+		double[] s = new double[mu.length];
+		double[] totals = new double[scaled.length];
+		for (int i = 0; i < mu.length; i++) {
+			s[i] = counts.counts[i] / counts.getNoofParsed();
+			totals[lhs[i]] += s[i];
+		}
+		for (int i = 0; i < mu.length; i++) {
+			if (!scaled[lhs[i]] && totals[lhs[i]] > 0) {
+				mu[i] *= totals[lhs[i]];
+			}
+		}
+		for (int a = 0; a < scaled.length; a++) {
+			scaled[a] |= totals[a] > 0;
+		}
+
+		double eta = stepSize.getStepSize(noofUpdates++);
+		for (int i = 0; i < mu.length; i++) {
+			if (scaled[lhs[i]]) {
+				mu[i] = (1 - eta) * mu[i] + eta * s[i];
+			}
+		}
+
+		cfg = ExpectedCounts.normalise(cfg, mu);
+		index = new CNFGrammarIndex(cfg);
+		return cfg;
+	}
+
+	/**
+	 * @return The current grammar
+	 */
+	public ContextFreeGrammar getGrammar() {
+		return cfg;
+	}
+
+	/**
+	 * @return The log-likelihood of the last mini-batch, under the grammar
+	 *         before the update
+	 */
+	public double getLogLikelihood() {
+		return logLikelihood;
+	}
+
+	/**
+	 * @return The number of updates (mini-batches with at least one string
+	 *         that could be parsed)
+	 */
+	public long getNoofUpdates() {
+		return noofUpdates;
+	}
+
+	/**
+	 * @return The number of strings seen so far
+	 */
+	public long getNoofSeen() {
+		return noofSeen;
+	}
+
+	/**
+	 * Default decay exponent of the step-size schedule.
+	 */
+	public static final double defaultAlpha = 0.7;
+
+}
@@ -0,0 +1,31 @@
+package gr.auth.ee.mug.cfg.training;
+
+/**
+ * The step size {@code (k + tau)^-alpha} for update k. With
+ * {@code 0.5 < alpha <= 1} the statistics converge as for batch EM; smaller
+ * values of {@code alpha} forget old mini-batches faster.
+ *
+ * @author Vasileios Papapanagiotou
+ */
+public class PowerStepSize implements StepSizeInterface {
+
+	private final double alpha;
+	private final double tau;
+
+	/**
+	 * @param alpha
+	 *            The decay exponent
+	 * @param tau
+	 *            The offset ({@code tau >= 1}, so that no step exceeds 1)
+	 */
+	public PowerStepSize(double alpha, double tau) {
+		this.alpha = alpha;
+		this.tau = tau;
+	}
+
+	@Override
+	public double getStepSize(long k) {
+		return Math.pow(k + tau, -alpha);
+	}
+
+}
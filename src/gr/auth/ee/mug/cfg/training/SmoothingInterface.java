@@ -0,0 +1,26 @@
+package gr.auth.ee.mug.cfg.training;
+
+import java.util.HashMap;
+
+import gr.auth.ee.mug.cfg.grammar.Rule;
+
+/**
+ * A hook that adjusts the rule counts collected by {@code TreebankEstimator}
+ * before they are normalised into probabilities.
+ *
+ * @author Vasileios Papapanagiotou
+ */
+public interface SmoothingInterface {
+
+	/**
+	 * Adjusts rule counts in place. Counts can be changed, and rules that
+	 * were never observed can be added; rules whose count ends up zero or
+	 * negative are left out of the grammar.
+	 *
+	 * @param counts
+	 *            The (possibly fractional) number of times each rule was
+	 *            observed; the probabilities of the keys are meaningless
+	 */
+	public void smooth(HashMap<Rule, Double> counts);
+
+}
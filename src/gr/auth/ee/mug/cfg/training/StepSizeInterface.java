@@ -0,0 +1,18 @@
+package gr.auth.ee.mug.cfg.training;
+
+/**
+ * A step-size schedule for {@code OnlineEMTrainer}.
+ *
+ * @author Vasileios Papapanagiotou
+ */
+public interface StepSizeInterface {
+
+	/**
+	 * @param k
+	 *            The number of updates done so far
+	 * @return The weight, in (0, 1], of the k-th mini-batch against the
+	 *         statistics accumulated before it
+	 */
+	public double getStepSize(long k);
+
+}
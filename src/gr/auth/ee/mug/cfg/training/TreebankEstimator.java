@@ -0,0 +1,263 @@
+package gr.auth.ee.mug.cfg.training;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import gr.auth.ee.mug.cfg.dottools.TreeNode;
+import gr.auth.ee.mug.cfg.grammar.Alphabet;
+import gr.auth.ee.mug.cfg.grammar.ContextFreeGrammar;
+import gr.auth.ee.mug.cfg.grammar.Rule;
+
+/**
+ * Estimates the rule probabilities of a grammar from a treebank by relative
+ * frequency (maximum likelihood): each node of a tree is one use of the rule
+ * that replaces its symbol by the symbols of its children, and the
+ * probability of a rule is its count divided by the count of all the rules
+ * with the same left-hand side.<br>
+ * <br>
+ * Rules are read from the symbol ids of the nodes ({@code getSymbolId}), so
+ * trees from any source can be used, as long as their ids refer to the
+ * alphabet of the estimator; terminal nodes are leaves, and a non-terminal
+ * without children stands for a rule to the empty string symbol.<br>
+ * <br>
+ * Trees are counted in parallel: each thread takes batches of trees from the
+ * iterator and counts into its own table, and the tables are merged when the
+ * iterator is exhausted.
+ *
+ * @author Vasileios Papapanagiotou
+ */
+public class TreebankEstimator {
+
+	private final Alphabet al;
+	private final int noofThreads;
+	private SmoothingInterface smoothing = null;
+	private long noofTrees = 0;
+	private long noofNodes = 0;
+
+	/**
+	 * @param al
+	 *            The alphabet of the trees and of the estimated grammar
+	 * @param noofThreads
+	 *            The number of threads that count trees
+	 */
+	public TreebankEstimator(Alphabet al, int noofThreads) {
+		this.al = al.clone();
+		this.noofThreads = noofThreads;
+	}
+
+	/**
+	 * @param smoothing
+	 *            Adjusts the counts before normalisation (can be {@code null}
+	 *            for none, the default)
+	 */
+	public void setSmoothing(SmoothingInterface smoothing) {
+		this.smoothing = smoothing;
+	}
+
+	/**
+	 * Counts the rules used in a collection of trees and creates a grammar
+	 * with their relative frequencies.
+	 *
+	 * @param trees
+	 *            The trees (the iterator is only accessed by one thread at a
+	 *            time)
+	 * @return A new grammar whose rules are sorted by left-hand side
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 *             If counting failed in one of the threads
+	 */
+	public ContextFreeGrammar estimate(Iterator<TreeNode> trees) throws InterruptedException, ExecutionException {
+		return normalise(count(trees));
+	}
+
+	/**
+	 * Counts the rules used in a collection of trees.
+	 *
+	 * @param trees
+	 *            The trees (the iterator is only accessed by one thread at a
+	 *            time)
+	 * @return The number of times each rule was used
+	 * @throws InterruptedException
+	 * @throws ExecutionException
+	 *             If counting failed in one of the threads
+	 */
+	public HashMap<Rule, Double> count(final Iterator<TreeNode> trees)
+			throws InterruptedException, ExecutionException {
+
+		ExecutorService executor = Executors.newFixedThreadPool(noofThreads);
+		ArrayList<Future<Counts>> futures = new ArrayList<>();
+		try {
+			for (int i = 0; i < noofThreads; i++) {
+				futures.add(executor.submit(new Callable<Counts>() {
+					@Override
+					public Counts call() {
+						return countBatches(trees);
+					}
+				}));
+			}
+
+			// Merge
+			HashMap<Rule, Double> counts = new HashMap<>();
+			for (int i = 0; i < futures.size(); i++) {
+				Counts c = futures.get(i).get();
+				for (Map.Entry<Rule, double[]> entry : c.counts.entrySet()) {
+					Double old = counts.get(entry.getKey());
+					counts.put(entry.getKey(), (old == null ? 0 : old) + entry.getValue()[0]);
+				}
+				noofTrees += c.noofTrees;
+				noofNodes += c.noofNodes;
+			}
+			return counts;
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	/**
+	 * Applies the smoothing, if any, and normalises counts into probabilities.
+	 *
+	 * @param counts
+	 *            The number of times each rule was used (it is modified by
+	 *            the smoothing)
+	 * @return A new grammar whose rules are sorted by left-hand side
+	 */
+	public ContextFreeGrammar normalise(HashMap<Rule, Double> counts) {
+
+		if (smoothing != null) {
+			smoothing.smooth(counts);
+		}
+
+		// Sort, so that the grammar does not depend on the order of the trees
+		ArrayList<Rule> rules = new ArrayList<>();
+		for (Map.Entry<Rule, Double> entry : counts.entrySet()) {
+			if (entry.getValue() > 0) {
+				rules.add(entry.getKey());
+			}
+		}
+		Collections.sort(rules, ruleComparator);
+
+		// Totals per left-hand side
+		double[] totals = new double[al.getNoofNonTerminals()];
+		for (int i = 0; i < rules.size(); i++) {
+			totals[al.getIdx(rules.get(i).getFrom())] += counts.get(rules.get(i));
+		}
+
+		ContextFreeGrammar cfg = new ContextFreeGrammar(al);
+		for (int i = 0; i < rules.size(); i++) {
+			Rule r = rules.get(i);
+			int[] to = new int[r.getToLength()];
+			for (int j = 0; j < to.length; j++) {
+				to[j] = r.getTo(j);
+			}
+			cfg.addRule(new Rule(r.getFrom(), to, counts.get(r) / totals[al.getIdx(r.getFrom())]));
+		}
+		return cfg;
+	}
+
+	/**
+	 * @return The number of trees counted so far
+	 */
+	public long getNoofTrees() {
+		return noofTrees;
+	}
+
+	/**
+	 * @return The number of non-terminal nodes (rule uses) counted so far
+	 */
+	public long getNoofNodes() {
+		return noofNodes;
+	}
+
+	/**
+	 * The counts of a single thread.
+	 */
+	private static class Counts {
+
+		final HashMap<Rule, double[]> counts = new HashMap<>();
+		long noofTrees = 0;
+		long noofNodes = 0;
+
+	}
+
+	private Counts countBatches(Iterator<TreeNode> trees) {
+
+		Counts c = new Counts();
+		TreeNode[] batch = new TreeNode[batchSize];
+		ArrayList<TreeNode> stack = new ArrayList<>();
+
+		while (true) {
+			int len = 0;
+			synchronized (trees) {
+				while (len < batchSize && trees.hasNext()) {
+					batch[len++] = trees.next();
+				}
+			}
+			if (len == 0) {
+				return c;
+			}
+
+			for (int i = 0; i < len; i++) {
+				stack.add(batch[i]);
+				while (!stack.isEmpty()) {
+					TreeNode node = stack.remove(stack.size() - 1);
+					int from = node.o.getSymbolId();
+					if (al.isTerminal(from) || al.isEmptyStringSymbol(from)) {
+						continue;
+					}
+
+					int[] to;
+					if (node.children.isEmpty()) {
+						to = new int[] { Alphabet.idEmptyString };
+					} else {
+						to = new int[node.children.size()];
+						for (int j = 0; j < to.length; j++) {
+							TreeNode child = node.children.get(j);
+							to[j] = child.o.getSymbolId();
+							stack.add(child);
+						}
+					}
+
+					Rule r = new Rule(from, to);
+					double[] n = c.counts.get(r);
+					if (n == null) {
+						c.counts.put(r, new double[] { 1 });
+					} else {
+						n[0]++;
+					}
+					c.noofNodes++;
+				}
+				c.noofTrees++;
+			}
+			Arrays.fill(batch, 0, len, null);
+		}
+	}
+
+	private static final int batchSize = 256;
+
+	private static final Comparator<Rule> ruleComparator = new Comparator<Rule>() {
+		@Override
+		public int compare(Rule r1, Rule r2) {
+			if (r1.getFrom() != r2.getFrom()) {
+				return r1.getFrom() > r2.getFrom() ? -1 : 1;
+			}
+			int len = Math.min(r1.getToLength(), r2.getToLength());
+			for (int i = 0; i < len; i++) {
+				if (r1.getTo(i) != r2.getTo(i)) {
+					return r1.getTo(i) < r2.getTo(i) ? -1 : 1;
+				}
+			}
+			return r1.getToLength() - r2.getToLength();
+		}
+	};
+
+}